@@ -0,0 +1,301 @@
+package es.uned.nlp.cem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class calculates the agreement between N annotations of the same items: the CEM-Ord of every annotation evaluated with every other
+ * annotation as gold standard. CEM-Ord is not symmetric, so the N x (N-1) ordered pairs are calculated. Each annotation is parsed once and
+ * encoded once in a table of items shared by all the annotations, with the class of each item as the number of its spelling. Each annotation
+ * is also indexed once as gold standard (GoldIndex), so its proximities and denominators are shared by the N-1 pairs in which it is the gold
+ * standard, and the items and classes of the shared table are translated once to those of the index. The pairs are then scored with numbers
+ * only, without reading the tables of the annotations again. The annotations used as gold standard are distributed among the threads, each of
+ * them with its own PredictionEvaluator.</p>
+ *
+ * <p>The result of a pair is the same as the result of the CEMOrd class with the first annotation as gold standard and the second as output.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class AgreementMatrix
+{
+	private final List<OrdinalClassificationFormat> annotations;
+	/**
+	 * Items of all the annotations: test case (number in topics) and id of each item.
+	 */
+	private final String[] topics;
+	private final int[] itemTopics;
+	private final String[] ids;
+	/**
+	 * Spellings of the classes of all the annotations, and their values.
+	 */
+	private final String[] classNames;
+	private final double[] classValues;
+	/**
+	 * classes[annotation][item]: class (number in classNames) of each item of the shared table in an annotation, or -1 if the annotation does
+	 * not contain the item (the items added after the annotation are not in its array).
+	 */
+	private final int[][] classes;
+	/**
+	 * results[gold][output]: aggregated CEM-Ord of the annotation output with the annotation gold as gold standard (NaN in the diagonal).
+	 */
+	private final double[][] results;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param annotations	Annotations of the items, parsed as gold standards
+	 */
+	public AgreementMatrix(List<OrdinalClassificationFormat> annotations)
+	{
+		this.annotations = new ArrayList<OrdinalClassificationFormat>(annotations);
+		int n = annotations.size();
+		this.results = new double[n][n];
+		this.classes = new int[n][];
+
+		HashMap<String, Integer> topicCodes = new HashMap<String, Integer>();
+		List<String> topics = new ArrayList<String>();
+		List<HashMap<String, Integer>> itemCodes = new ArrayList<HashMap<String, Integer>>();
+		List<Integer> itemTopics = new ArrayList<Integer>();
+		List<String> ids = new ArrayList<String>();
+		HashMap<String, Integer> classCodes = new HashMap<String, Integer>();
+		List<String> classNames = new ArrayList<String>();
+		for(int a=0;a<n;a++)
+		{
+			int numItems = 0;
+			for (HashMap<String, String> values : annotations.get(a).getTableOfTopics().values())
+			{
+				numItems+= values.size();
+			}
+			int[] items = new int[numItems];
+			int[] codes = new int[numItems];
+			int i = 0;
+			for (Map.Entry<String, HashMap<String, String>> entry : annotations.get(a).getTableOfTopics().entrySet())
+			{
+				Integer topic = topicCodes.get(entry.getKey());
+				if(topic==null)
+				{
+					topic = topics.size();
+					topicCodes.put(entry.getKey(), topic);
+					topics.add(entry.getKey());
+					itemCodes.add(new HashMap<String, Integer>());
+				}
+				HashMap<String, Integer> topicItems = itemCodes.get(topic);
+				for (Map.Entry<String, String> entry2 : entry.getValue().entrySet())
+				{
+					Integer item = topicItems.get(entry2.getKey());
+					if(item==null)
+					{
+						item = ids.size();
+						topicItems.put(entry2.getKey(), item);
+						ids.add(entry2.getKey());
+						itemTopics.add(topic);
+					}
+					Integer code = classCodes.get(entry2.getValue());
+					if(code==null)
+					{
+						code = classNames.size();
+						classCodes.put(entry2.getValue(), code);
+						classNames.add(entry2.getValue());
+					}
+					items[i] = item;
+					codes[i] = code;
+					i++;
+				}
+			}
+			this.classes[a] = new int[ids.size()];
+			Arrays.fill(this.classes[a], -1);
+			for(int j=0;j<i;j++)
+			{
+				this.classes[a][items[j]] = codes[j];
+			}
+		}
+		this.topics = topics.toArray(new String[topics.size()]);
+		this.ids = ids.toArray(new String[ids.size()]);
+		this.itemTopics = new int[ids.size()];
+		for(int i=0;i<this.itemTopics.length;i++)
+		{
+			this.itemTopics[i] = itemTopics.get(i);
+		}
+		this.classNames = classNames.toArray(new String[classNames.size()]);
+		this.classValues = new double[classNames.size()];
+		for(int c=0;c<this.classValues.length;c++)
+		{
+			this.classValues[c] = Double.parseDouble(this.classNames[c]);
+		}
+	}
+
+	/**
+	 * Method that calculates the results of every ordered pair of annotations.
+	 *
+	 * @throws InterruptedException	If the thread is interrupted before every pair is calculated (the results are not complete)
+	 */
+	public void compute() throws InterruptedException
+	{
+		final int n = this.annotations.size();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(this.threads, n)));
+		try
+		{
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int i=0;i<n;i++)
+			{
+				final int gold = i;
+				futures.add(pool.submit(new Callable<Void>()
+				{
+					public Void call()
+					{
+						computeAsGold(gold);
+						return null;
+					}
+				}));
+			}
+			for(Future<?> future: futures)
+			{
+				future.get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException(e.getCause());
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Method that calculates the results of the other annotations with the given one as gold standard.
+	 */
+	private void computeAsGold(int gold)
+	{
+		GoldIndex index = new GoldIndex(this.annotations.get(gold));
+		//Item of the index and test case of each item of the shared table (-1 if it is not in the gold)
+		int[] topics = new int[this.topics.length];
+		for(int topic=0;topic<topics.length;topic++)
+		{
+			topics[topic] = index.getTopic(this.topics[topic]);
+		}
+		int[] goldItems = new int[this.ids.length];
+		int[] goldTopics = new int[this.ids.length];
+		for(int i=0;i<goldItems.length;i++)
+		{
+			int t = topics[this.itemTopics[i]];
+			goldTopics[i] = t;
+			goldItems[i] = t!=-1 ? index.getItem(t, this.ids[i]) : -1;
+		}
+		//Class of the gold of each test case with the spelling of each class (-1 if there is none)
+		int[][] goldClasses = new int[index.getNumTopics()][this.classNames.length];
+		for(int t=0;t<goldClasses.length;t++)
+		{
+			for(int c=0;c<this.classNames.length;c++)
+			{
+				goldClasses[t][c] = index.getClass(t, this.classNames[c]);
+			}
+		}
+
+		PredictionEvaluator evaluator = new PredictionEvaluator(index);
+		for(int output=0;output<this.classes.length;output++)
+		{
+			if(output==gold)
+			{
+				this.results[gold][output] = Double.NaN;
+				continue;
+			}
+			evaluator.reset();
+			int[] codes = this.classes[output];
+			for(int i=0;i<codes.length;i++)
+			{
+				if(codes[i]!=-1 && goldItems[i]!=-1)
+				{
+					evaluator.add(goldItems[i], goldClasses[goldTopics[i]][codes[i]], this.classValues[codes[i]]);
+				}
+			}
+			this.results[gold][output] = evaluator.scores().getAggregatedResult();
+		}
+	}
+
+	/**
+	 * Method that returns the result of an annotation with another one as gold standard (NaN if they are the same or the gold standard has no
+	 * test cases).
+	 */
+	public double getResult(int gold, int output)
+	{
+		return this.results[gold][output];
+	}
+
+	/**
+	 * Mean of the results of the other annotations with the given one as gold standard.
+	 */
+	public double getMeanAsGold(int gold)
+	{
+		double total = 0.0d;
+		for(int output=0;output<this.results.length;output++)
+		{
+			if(output!=gold)
+			{
+				total+= this.results[gold][output];
+			}
+		}
+		return total/(this.results.length-1);
+	}
+
+	/**
+	 * Mean of the results of the given annotation with the other ones as gold standard.
+	 */
+	public double getMeanAsOutput(int output)
+	{
+		double total = 0.0d;
+		for(int gold=0;gold<this.results.length;gold++)
+		{
+			if(output!=gold)
+			{
+				total+= this.results[gold][output];
+			}
+		}
+		return total/(this.results.length-1);
+	}
+
+	/**
+	 * Mean of the results of every ordered pair.
+	 */
+	public double getMean()
+	{
+		double total = 0.0d;
+		for(int gold=0;gold<this.results.length;gold++)
+		{
+			total+= getMeanAsGold(gold);
+		}
+		return total/this.results.length;
+	}
+
+	public int size()
+	{
+		return this.results.length;
+	}
+
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+}
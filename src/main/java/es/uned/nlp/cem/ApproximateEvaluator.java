@@ -0,0 +1,476 @@
+package es.uned.nlp.cem;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class estimates CEM-Ord from a sample of the items, for outputs too large to be evaluated while the result is needed. The denominator of
+ * each test case only depends on the gold, so it is exact; the numerator is estimated with a stratified sample without replacement, with a stratum
+ * per class of the gold of each test case (the frequencies of the classes are the sizes of the strata). The sample grows in rounds, allocated to
+ * the strata that contribute more to the variance (Neyman allocation), until the half width of the confidence interval of the aggregated result
+ * is lower than the requested precision, the time budget is exhausted or every item has been evaluated.</p>
+ *
+ * <p>The system output can be read from its file record by record (see ExecutionPlanner.readOutput), without building an
+ * OrdinalClassificationFormat: only the class of the prediction of each item of the gold is kept, as a number.</p>
+ *
+ * <p>The confidence interval is the normal approximation at 95%, with the finite population correction, so it is exact (zero width) when every
+ * item of the strata has been evaluated. Test cases that are not in the output are exact too, with CEM-Ord 0.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class ApproximateEvaluator
+{
+	/**
+	 * Quantile of the normal distribution for a confidence of 95%.
+	 */
+	public static final double Z = 1.959963984540054d;
+	/**
+	 * Items of each stratum evaluated in the first round, to estimate its variance.
+	 */
+	private static final int PILOT = 8;
+	private static final int MIN_ROUND = 1000;
+	/**
+	 * Codes of the predictions of the items that are not a class of the gold: no prediction, or a value not in the gold (kept in otherValues).
+	 */
+	private static final int NOT_PREDICTED = -1;
+	private static final int OTHER_VALUE = -2;
+
+	private GoldIndex gold;
+	private Random random;
+
+	/**
+	 * Strata of the test case t: from firstStratum[t] to firstStratum[t+1]-1, one per class of the gold. The items of the stratum s are
+	 * items[firstItem[s]] to items[firstItem[s+1]-1]; the first sampled[s] items are the sample (a partial shuffle).
+	 */
+	private int[] firstStratum;
+	private int[] stratumTopic;
+	private int[] firstItem;
+	private int[] items;
+	private int[] sampled;
+	private double[] sum;
+	private double[] sumOfSquares;
+	private double[] range;
+
+	/**
+	 * Prediction of each item of the gold: the class of the gold of its test case, NOT_PREDICTED or OTHER_VALUE; and whether each test case of
+	 * the gold is in the output.
+	 */
+	private int[] outputClasses;
+	private HashMap<Integer, Double> otherValues = new HashMap<Integer, Double>();
+	private boolean[] inOutput;
+	private int sampledItems;
+	private int totalItems;
+	private double estimate = Double.NaN;
+	private double halfWidth = Double.NaN;
+	private double[] topicEstimates;
+	private double[] topicHalfWidths;
+
+	public ApproximateEvaluator(GoldIndex gold, long seed)
+	{
+		this.gold = gold;
+		this.random = new Random(seed);
+		int numTopics = gold.getNumTopics();
+		int numStrata = 0;
+		for(int t=0;t<numTopics;t++)
+		{
+			numStrata+= gold.getNumClasses(t);
+		}
+		this.firstStratum = new int[numTopics+1];
+		this.stratumTopic = new int[numStrata];
+		this.firstItem = new int[numStrata+1];
+		this.items = new int[gold.getNumItems()];
+		this.sampled = new int[numStrata];
+		this.sum = new double[numStrata];
+		this.sumOfSquares = new double[numStrata];
+		this.range = new double[numStrata];
+		this.topicEstimates = new double[numTopics];
+		this.topicHalfWidths = new double[numTopics];
+		this.outputClasses = new int[gold.getNumItems()];
+		this.inOutput = new boolean[numTopics];
+
+		int s = 0;
+		int position = 0;
+		for(int t=0;t<numTopics;t++)
+		{
+			this.firstStratum[t] = s;
+			for(int k=0;k<gold.getNumClasses(t);k++)
+			{
+				this.stratumTopic[s] = t;
+				this.firstItem[s] = position;
+				this.range[s] = gold.getProximity(t, k, 0.0d, k);
+				for(int item=gold.getFirstItem(t);item<gold.getFirstItem(t+1);item++)
+				{
+					if(gold.getGoldClass(item)==k)
+					{
+						this.items[position++] = item;
+					}
+				}
+				s++;
+			}
+		}
+		this.firstStratum[numTopics] = s;
+		this.firstItem[numStrata] = position;
+	}
+
+	/**
+	 * Method that estimates CEM-Ord of a system output.
+	 *
+	 * @param output		System output
+	 * @param precision		Half width of the confidence interval of the aggregated result at which the sampling stops (0 evaluates every item)
+	 * @param maxMillis		Time budget in milliseconds (0 or negative for no limit), without the construction of this object
+	 * @return				Estimate of the aggregated result
+	 */
+	public double evaluate(OrdinalClassificationFormat output, double precision, long maxMillis)
+	{
+		long deadline = maxMillis>0 ? System.nanoTime() + maxMillis*1000000L : Long.MAX_VALUE;
+		read(output);
+		return evaluate(precision, deadline);
+	}
+
+	/**
+	 * Method that keeps the predictions of a system output, for the next evaluations.
+	 */
+	public void read(OrdinalClassificationFormat output)
+	{
+		clear();
+		for(int t=0;t<this.gold.getNumTopics();t++)
+		{
+			HashMap<String, String> values = output.getTableOfTopics().get(this.gold.getTopic(t));
+			if(values!=null)
+			{
+				this.inOutput[t] = true;
+				for(int item=this.gold.getFirstItem(t);item<this.gold.getFirstItem(t+1);item++)
+				{
+					String value = values.get(this.gold.getId(item));
+					if(value!=null)
+					{
+						predict(t, item, value);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method that reads the predictions of a system output from its file, record by record, and keeps them for the next evaluations.
+	 *
+	 * @param pathOutput	Path of the system output
+	 * @return				false if the output is not valid (the errors are shown in the console)
+	 */
+	public boolean read(String pathOutput)
+	{
+		clear();
+		HashMap<String, Boolean> topics = ExecutionPlanner.readOutput(this.gold, pathOutput, new ExecutionPlanner.PredictionHandler()
+		{
+			public void add(String topic, String id, String value)
+			{
+				int t = gold.getTopic(topic);
+				if(t!=-1)
+				{
+					predict(t, gold.getItem(t, id), value);
+				}
+			}
+
+			public void add(int item, String value)
+			{
+				if(item!=-1)
+				{
+					predict(gold.getTopicOfItem(item), item, value);
+				}
+			}
+		});
+		if(topics==null)
+		{
+			return false;
+		}
+		for(Map.Entry<String, Boolean> topic: topics.entrySet())
+		{
+			if(!topic.getValue())
+			{
+				this.inOutput[this.gold.getTopic(topic.getKey())] = true;
+			}
+		}
+		return true;
+	}
+
+	private void clear()
+	{
+		Arrays.fill(this.outputClasses, NOT_PREDICTED);
+		Arrays.fill(this.inOutput, false);
+		this.otherValues.clear();
+	}
+
+	/**
+	 * Method that keeps the prediction of an item, unless the item is not in the gold (-1) or it is already predicted (the first instance is
+	 * considered).
+	 */
+	private void predict(int t, int item, String value)
+	{
+		if(item==-1 || this.outputClasses[item]!=NOT_PREDICTED)
+		{
+			return;
+		}
+		int classOutput = this.gold.getClass(t, value);
+		if(classOutput!=-1)
+		{
+			this.outputClasses[item] = classOutput;
+			return;
+		}
+		try
+		{
+			this.otherValues.put(item, Double.parseDouble(value));
+			this.outputClasses[item] = OTHER_VALUE;
+		}
+		catch (NumberFormatException nfe) {}
+	}
+
+	/**
+	 * Method that estimates CEM-Ord of the system output read last.
+	 *
+	 * @param precision		Half width of the confidence interval of the aggregated result at which the sampling stops (0 evaluates every item)
+	 * @param deadline		Value of System.nanoTime at which the sampling stops (Long.MAX_VALUE for no limit); the first round, with a few
+	 * 						items of each stratum, is always evaluated
+	 * @return				Estimate of the aggregated result
+	 */
+	public double evaluate(double precision, long deadline)
+	{
+		int numTopics = this.gold.getNumTopics();
+		int numStrata = this.sampled.length;
+		this.sampledItems = 0;
+		this.totalItems = 0;
+		for(int t=0;t<numTopics;t++)
+		{
+			if(this.inOutput[t])
+			{
+				this.totalItems+= this.gold.getItemsInGold(t);
+			}
+		}
+		for(int s=0;s<numStrata;s++)
+		{
+			this.sampled[s] = 0;
+			this.sum[s] = 0.0d;
+			this.sumOfSquares[s] = 0.0d;
+			if(this.inOutput[this.stratumTopic[s]])
+			{
+				sample(s, Math.min(PILOT, size(s)));
+			}
+		}
+		estimate();
+
+		double[] weights = new double[numStrata];
+		while((this.halfWidth>precision || precision<=0.0d) && this.sampledItems<this.totalItems && System.nanoTime()<deadline)
+		{
+			int round = Math.max(MIN_ROUND, this.sampledItems);
+			double totalWeight = 0.0d;
+			for(int s=0;s<numStrata;s++)
+			{
+				weights[s] = 0.0d;
+				if(this.inOutput[this.stratumTopic[s]] && this.sampled[s]<size(s))
+				{
+					//Contribution of the stratum to the standard deviation of the aggregated result
+					weights[s] = size(s)*Math.sqrt(variance(s))/this.gold.getDenominator(this.stratumTopic[s]);
+					totalWeight+= weights[s];
+				}
+			}
+			for(int s=0;s<numStrata;s++)
+			{
+				if(!this.inOutput[this.stratumTopic[s]] || this.sampled[s]==size(s))
+				{
+					continue;
+				}
+				//When no stratum shows variance yet, the round is allocated in proportion to the size of the strata
+				double share = totalWeight>0.0d ? weights[s]/totalWeight : (double) size(s)/this.totalItems;
+				int n = (int) Math.ceil(round*share);
+				sample(s, Math.min(n, size(s)-this.sampled[s]));
+			}
+			estimate();
+		}
+		return this.estimate;
+	}
+
+	private int size(int s)
+	{
+		return this.firstItem[s+1] - this.firstItem[s];
+	}
+
+	/**
+	 * Method that evaluates n more items of a stratum, chosen at random among the items not evaluated.
+	 */
+	private void sample(int s, int n)
+	{
+		int t = this.stratumTopic[s];
+		int k = s - this.firstStratum[t];
+		int from = this.firstItem[s];
+		int to = this.firstItem[s+1];
+		for(int i=0;i<n;i++)
+		{
+			int position = from + this.sampled[s];
+			int chosen = position + this.random.nextInt(to - position);
+			int item = this.items[chosen];
+			this.items[chosen] = this.items[position];
+			this.items[position] = item;
+
+			int classOutput = this.outputClasses[item];
+			double proximity = 0.0d;
+			if(classOutput>=0)
+			{
+				proximity = this.gold.getProximity(t, classOutput, 0.0d, k);
+			}
+			else if(classOutput==OTHER_VALUE)
+			{
+				proximity = this.gold.getProximity(t, -1, this.otherValues.get(item), k);
+			}
+			this.sum[s]+= proximity;
+			this.sumOfSquares[s]+= proximity*proximity;
+			this.sampled[s]++;
+		}
+		this.sampledItems+= n;
+	}
+
+	/**
+	 * Variance of the proximities of a stratum. The sample variance is 0 when every item of the sample has the same proximity, which does not
+	 * mean that the stratum is constant, so it is never lower than the variance of a sample with one more item at the other end of the range of
+	 * the proximities (from 0 to the proximity of the class with itself).
+	 */
+	private double variance(int s)
+	{
+		int n = this.sampled[s];
+		if(n<2)
+		{
+			return 0.0d;
+		}
+		double mean = this.sum[s]/n;
+		double variance = Math.max(0.0d, (this.sumOfSquares[s] - n*mean*mean)/(n-1));
+		double p = 1.0d/(n+1);
+		return Math.max(variance, this.range[s]*this.range[s]*p*(1.0d-p));
+	}
+
+	/**
+	 * Method that calculates the estimates of the test cases and the aggregated result from the sample.
+	 */
+	private void estimate()
+	{
+		int numTopics = this.gold.getNumTopics();
+		if(numTopics==0)
+		{
+			this.estimate = Double.NaN;
+			this.halfWidth = 0.0d;
+			return;
+		}
+		double total = 0.0d;
+		double totalVariance = 0.0d;
+		for(int t=0;t<numTopics;t++)
+		{
+			double numerator = 0.0d;
+			double variance = 0.0d;
+			if(this.inOutput[t])
+			{
+				for(int s=this.firstStratum[t];s<this.firstStratum[t+1];s++)
+				{
+					int size = size(s);
+					int n = this.sampled[s];
+					if(n==size)
+					{
+						numerator+= this.sum[s];
+					}
+					else if(n>0)
+					{
+						numerator+= size*(this.sum[s]/n);
+						variance+= (double) size*size*(1.0d - (double) n/size)*variance(s)/n;
+					}
+				}
+			}
+			double denominator = this.gold.getDenominator(t);
+			this.topicEstimates[t] = denominator!=0.0d ? numerator/denominator : 0.0d;
+			double topicVariance = denominator!=0.0d ? variance/(denominator*denominator) : 0.0d;
+			this.topicHalfWidths[t] = Z*Math.sqrt(topicVariance);
+			total+= this.topicEstimates[t];
+			totalVariance+= topicVariance;
+		}
+		this.estimate = total/numTopics;
+		this.halfWidth = Z*Math.sqrt(totalVariance)/numTopics;
+	}
+
+	/**
+	 * Method that copies the estimates of the test cases in an EvALLResult.
+	 */
+	public EvALLResult toEvALLResult()
+	{
+		EvALLResult result = new EvALLResult();
+		for(int t=0;t<this.topicEstimates.length;t++)
+		{
+			result.getResults().put(this.gold.getTopic(t), this.topicEstimates[t]);
+		}
+		return result;
+	}
+
+	public double getEstimate()
+	{
+		return estimate;
+	}
+
+	/**
+	 * Half width of the confidence interval of the aggregated result.
+	 */
+	public double getHalfWidth()
+	{
+		return halfWidth;
+	}
+
+	public double getLowerBound()
+	{
+		return estimate - halfWidth;
+	}
+
+	public double getUpperBound()
+	{
+		return estimate + halfWidth;
+	}
+
+	public double getEstimate(int t)
+	{
+		return this.topicEstimates[t];
+	}
+
+	public double getHalfWidth(int t)
+	{
+		return this.topicHalfWidths[t];
+	}
+
+	/**
+	 * Number of items evaluated in the last evaluation.
+	 */
+	public int getSampledItems()
+	{
+		return sampledItems;
+	}
+
+	/**
+	 * Fraction of the items of the gold in the test cases of the output that were evaluated in the last evaluation.
+	 */
+	public double getFraction()
+	{
+		return this.totalItems>0 ? (double) this.sampledItems/this.totalItems : 1.0d;
+	}
+
+	public GoldIndex getGold()
+	{
+		return gold;
+	}
+}
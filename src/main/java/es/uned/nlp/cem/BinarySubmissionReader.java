@@ -0,0 +1,352 @@
+package es.uned.nlp.cem;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class reads a file in the binary submission format, a compact alternative to the tsv format for system outputs generated by programs
+ * (the files are written with BinarySubmissionWriter). The file is mapped in memory and the records are decoded from the mapping, so the file is
+ * not copied: the classes and the test cases are decoded once, from their dictionaries, and only the ids are decoded for each record. The
+ * records are given to a RecordHandler, with their position in the file (from 1) as line, so the restrictions of the tsv files are applied with
+ * the same messages when they are given to OrdinalClassificationFormat.addRecord. The files are recognized by their first bytes, so they can be
+ * used instead of the tsv files in every option of Evaluate.</p>
+ *
+ * <p>The format is (the integers are big endian, the varints are unsigned LEB128 and the strings are a varint with the number of bytes followed
+ * by the bytes in UTF-8):</p>
+ *
+ * <pre>
+ *     int          magic number 0x43454D42 ("CEMB")
+ *     byte         version (1)
+ *     byte         ids: 0 for numbers, 1 for strings
+ *     varint       number of records
+ *     varint K     number of classes, followed by K strings (dictionary of classes)
+ *     varint T     number of test cases, followed by T strings (dictionary of test cases)
+ *     blocks, until the end of the file:
+ *         varint   index of the test case in the dictionary
+ *         varint n number of records of the block
+ *         n ids    numbers: varint with the difference with the previous id of the block (the first with 0), zigzag encoded
+ *                  strings: string
+ *         n varints index of the class of each record in the dictionary
+ * </pre>
+ *
+ * <p>The numeric ids are given to a RecordHandler as their decimal representation. A NumericRecordHandler receives instead the ids as numbers
+ * and the test cases and the classes as their indices in the dictionaries, so nothing is decoded or created for each record (the streaming
+ * evaluation finds the items of the GoldIndex by their numeric ids this way). The files cannot be larger than 2 GB.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class BinarySubmissionReader
+{
+	public static final int MAGIC = 0x43454D42;
+	public static final int VERSION = 1;
+	public static final int NUMERIC_IDS = 0;
+	public static final int STRING_IDS = 1;
+
+	private String path;
+	private ByteBuffer buffer;
+	private int firstBlock;
+	private boolean numericIds;
+	private long numRecords;
+	private String[] classes;
+	private String[] topics;
+	private byte[] bytes = new byte[64];
+
+	/**
+	 * Receives the records of the file.
+	 */
+	public interface RecordHandler
+	{
+		/**
+		 * @param position	Position of the record in the file, from 1
+		 * @return			false to stop reading
+		 */
+		boolean record(String topic, String id, String value, int position) throws IOException;
+	}
+
+	/**
+	 * Receives the records of a file with numeric ids.
+	 */
+	public interface NumericRecordHandler
+	{
+		/**
+		 * @param topic		Index of the test case in the dictionary (see getTopic)
+		 * @param value		Index of the class in the dictionary (see getClassName)
+		 * @param position	Position of the record in the file, from 1
+		 * @return			false to stop reading
+		 */
+		boolean record(int topic, long id, int value, int position) throws IOException;
+	}
+
+	/**
+	 * Method that maps a file and reads its dictionaries.
+	 *
+	 * @throws IOException	If the file cannot be read or it is not well formed
+	 */
+	public BinarySubmissionReader(String path) throws IOException
+	{
+		this.path = path;
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			if(channel.size()>Integer.MAX_VALUE)
+			{
+				throw new IOException("The file is larger than 2 GB: " + path);
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			file.close();
+		}
+
+		try
+		{
+			if(this.buffer.getInt()!=MAGIC)
+			{
+				throw new IOException("Not a binary submission: " + path);
+			}
+			if(this.buffer.get()!=VERSION)
+			{
+				throw new IOException("Version not supported: " + path);
+			}
+			int ids = this.buffer.get();
+			if(ids!=NUMERIC_IDS && ids!=STRING_IDS)
+			{
+				throw new IOException("Not well formed: " + path);
+			}
+			this.numericIds = ids==NUMERIC_IDS;
+			this.numRecords = readVarint(this.buffer);
+			this.classes = new String[readSize(this.buffer)];
+			for(int k=0;k<this.classes.length;k++)
+			{
+				this.classes[k] = readString(this.buffer);
+			}
+			this.topics = new String[readSize(this.buffer)];
+			for(int t=0;t<this.topics.length;t++)
+			{
+				this.topics[t] = readString(this.buffer);
+			}
+			this.firstBlock = this.buffer.position();
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("Not well formed: " + path);
+		}
+	}
+
+	/**
+	 * Method that checks if a file is in the binary submission format, from its magic number.
+	 */
+	public static boolean isBinary(String path)
+	{
+		try
+		{
+			DataInputStream input = new DataInputStream(new FileInputStream(path));
+			try
+			{
+				return input.readInt()==MAGIC;
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Method that gives the records of the file to a handler, in the order of the file.
+	 *
+	 * @throws IOException	If the file is not well formed (the records before the error have been given to the handler), or thrown by the handler
+	 */
+	public void read(RecordHandler handler) throws IOException
+	{
+		read(handler, null);
+	}
+
+	/**
+	 * Method that gives the records of a file with numeric ids to a handler, in the order of the file.
+	 *
+	 * @throws IOException	If the file is not well formed (the records before the error have been given to the handler), or thrown by the handler
+	 * @throws IllegalStateException	If the ids of the file are not numeric
+	 */
+	public void read(NumericRecordHandler handler) throws IOException
+	{
+		if(!this.numericIds)
+		{
+			throw new IllegalStateException("The ids are not numeric: " + this.path);
+		}
+		read(null, handler);
+	}
+
+	private void read(RecordHandler handler, NumericRecordHandler numericHandler) throws IOException
+	{
+		ByteBuffer buffer = this.buffer.duplicate();
+		buffer.position(this.firstBlock);
+		int position = 0;
+		try
+		{
+			while(buffer.hasRemaining())
+			{
+				int topic = readSize(buffer);
+				int n = readSize(buffer);
+				if(topic>=this.topics.length || position + (long) n>this.numRecords)
+				{
+					throw new IOException("Not well formed: " + this.path);
+				}
+				//The ids go before the classes, so the classes of the block are read with a second buffer
+				ByteBuffer ids = buffer.duplicate();
+				long previous = 0;
+				for(int i=0;i<n;i++)
+				{
+					if(this.numericIds)
+					{
+						readVarint(buffer);
+					}
+					else
+					{
+						int length = readSize(buffer);
+						buffer.position(buffer.position() + length);
+					}
+				}
+				for(int i=0;i<n;i++)
+				{
+					if(this.numericIds)
+					{
+						long zigzag = readVarint(ids);
+						previous+= (zigzag >>> 1) ^ -(zigzag & 1);
+					}
+					int k = readSize(buffer);
+					if(k>=this.classes.length)
+					{
+						throw new IOException("Not well formed: " + this.path);
+					}
+					position++;
+					boolean next;
+					if(numericHandler!=null)
+					{
+						next = numericHandler.record(topic, previous, k, position);
+					}
+					else
+					{
+						next = handler.record(this.topics[topic], this.numericIds ? Long.toString(previous) : readString(ids), this.classes[k], position);
+					}
+					if(!next)
+					{
+						return;
+					}
+				}
+			}
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("Not well formed: " + this.path);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Not well formed: " + this.path);
+		}
+		if(position!=this.numRecords)
+		{
+			throw new IOException("Not well formed: " + this.path);
+		}
+	}
+
+	private static long readVarint(ByteBuffer buffer) throws IOException
+	{
+		long value = 0;
+		for(int shift=0;shift<64;shift+= 7)
+		{
+			byte b = buffer.get();
+			value|= (long) (b & 0x7F) << shift;
+			if((b & 0x80)==0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Not well formed varint");
+	}
+
+	private static int readSize(ByteBuffer buffer) throws IOException
+	{
+		long value = readVarint(buffer);
+		if(value>Integer.MAX_VALUE)
+		{
+			throw new IOException("Not well formed size");
+		}
+		return (int) value;
+	}
+
+	private String readString(ByteBuffer buffer) throws IOException
+	{
+		int length = readSize(buffer);
+		if(length>this.bytes.length)
+		{
+			this.bytes = new byte[Math.max(length, this.bytes.length*2)];
+		}
+		buffer.get(this.bytes, 0, length);
+		return new String(this.bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+
+	public boolean isNumericIds()
+	{
+		return numericIds;
+	}
+
+	/**
+	 * Number of records of the file, from its header.
+	 */
+	public long getNumRecords()
+	{
+		return numRecords;
+	}
+
+	public int getNumClasses()
+	{
+		return this.classes.length;
+	}
+
+	public int getNumTopics()
+	{
+		return this.topics.length;
+	}
+
+	public String getClassName(int k)
+	{
+		return this.classes[k];
+	}
+
+	public String getTopic(int t)
+	{
+		return this.topics[t];
+	}
+}
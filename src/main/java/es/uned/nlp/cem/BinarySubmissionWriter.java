@@ -0,0 +1,205 @@
+package es.uned.nlp.cem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class writes a system output in the binary submission format (see BinarySubmissionReader). The records are kept in memory, grouped by
+ * test case, and the file is written when the writer is closed, since the dictionaries of classes and test cases go before the records. The records
+ * are not checked: the reader applies the same restrictions as to the tsv files.</p>
+ *
+ * <pre>
+ *     BinarySubmissionWriter writer = new BinarySubmissionWriter(new FileOutputStream("SYS.cemb"), true);
+ *     writer.add("topic1", 1234L, "2");
+ *     writer.close();
+ * </pre>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class BinarySubmissionWriter
+{
+	private OutputStream stream;
+	private boolean numericIds;
+	private HashMap<String, Integer> classes = new LinkedHashMap<String, Integer>();
+	private LinkedHashMap<String, Block> blocks = new LinkedHashMap<String, Block>();
+	private long numRecords = 0;
+
+	/**
+	 * @param stream		Stream where the file is written when the writer is closed
+	 * @param numericIds	true if the ids are numbers (written as varints), false if they are strings
+	 */
+	public BinarySubmissionWriter(OutputStream stream, boolean numericIds)
+	{
+		this.stream = stream;
+		this.numericIds = numericIds;
+	}
+
+	/**
+	 * Method that adds a record with a numeric id.
+	 */
+	public void add(String topic, long id, String value)
+	{
+		if(!this.numericIds)
+		{
+			throw new IllegalStateException("The ids of this submission are strings");
+		}
+		Block block = block(topic);
+		if(block.numRecords==block.numericIds.length)
+		{
+			long[] ids = new long[block.numRecords*2];
+			System.arraycopy(block.numericIds, 0, ids, 0, block.numRecords);
+			block.numericIds = ids;
+		}
+		block.numericIds[block.numRecords] = id;
+		addClass(block, value);
+	}
+
+	/**
+	 * Method that adds a record with a string id.
+	 */
+	public void add(String topic, String id, String value)
+	{
+		if(this.numericIds)
+		{
+			throw new IllegalStateException("The ids of this submission are numbers");
+		}
+		Block block = block(topic);
+		block.ids.add(id);
+		addClass(block, value);
+	}
+
+	private Block block(String topic)
+	{
+		Block block = this.blocks.get(topic);
+		if(block==null)
+		{
+			block = new Block();
+			block.topic = this.blocks.size();
+			this.blocks.put(topic, block);
+		}
+		return block;
+	}
+
+	private void addClass(Block block, String value)
+	{
+		Integer code = this.classes.get(value);
+		if(code==null)
+		{
+			code = this.classes.size();
+			this.classes.put(value, code);
+		}
+		if(block.numRecords==block.classes.length)
+		{
+			int[] classes = new int[block.numRecords*2];
+			System.arraycopy(block.classes, 0, classes, 0, block.numRecords);
+			block.classes = classes;
+		}
+		block.classes[block.numRecords++] = code;
+		this.numRecords++;
+	}
+
+	/**
+	 * Method that writes the file and closes the stream.
+	 */
+	public void close() throws IOException
+	{
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(this.stream));
+		try
+		{
+			output.writeInt(BinarySubmissionReader.MAGIC);
+			output.writeByte(BinarySubmissionReader.VERSION);
+			output.writeByte(this.numericIds ? BinarySubmissionReader.NUMERIC_IDS : BinarySubmissionReader.STRING_IDS);
+			writeVarint(output, this.numRecords);
+			writeVarint(output, this.classes.size());
+			for(String value: this.classes.keySet())
+			{
+				writeString(output, value);
+			}
+			writeVarint(output, this.blocks.size());
+			for(String topic: this.blocks.keySet())
+			{
+				writeString(output, topic);
+			}
+			for(Map.Entry<String, Block> entry: this.blocks.entrySet())
+			{
+				Block block = entry.getValue();
+				writeVarint(output, block.topic);
+				writeVarint(output, block.numRecords);
+				long previous = 0;
+				for(int i=0;i<block.numRecords;i++)
+				{
+					if(this.numericIds)
+					{
+						//Differences with the previous id, zigzag encoded so negative differences are short too
+						long difference = block.numericIds[i] - previous;
+						writeVarint(output, (difference << 1) ^ (difference >> 63));
+						previous = block.numericIds[i];
+					}
+					else
+					{
+						writeString(output, block.ids.get(i));
+					}
+				}
+				for(int i=0;i<block.numRecords;i++)
+				{
+					writeVarint(output, block.classes[i]);
+				}
+			}
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+
+	private static void writeVarint(DataOutputStream output, long value) throws IOException
+	{
+		while((value & ~0x7FL)!=0)
+		{
+			output.writeByte((int) ((value & 0x7F) | 0x80));
+			value>>>= 7;
+		}
+		output.writeByte((int) value);
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(output, bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * Records of a test case.
+	 */
+	private static class Block
+	{
+		private int topic;
+		private int numRecords = 0;
+		private long[] numericIds = new long[16];
+		private List<String> ids = new ArrayList<String>();
+		private int[] classes = new int[16];
+	}
+}
@@ -1,7 +1,9 @@
 package es.uned.nlp.cem;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 /**
  * 
  * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
@@ -27,13 +29,28 @@ public class CEMOrd
 	private OrdinalClassificationFormat output;
 	private String name = "CEM-Ord";
 	private EvALLResult result = new EvALLResult();
+	private Set<String> topics = null;
+	private ErrorAnalysis errorAnalysis = null;
 	
 	public  CEMOrd(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		this(gold, output, null);
+	}
+
+	/**
+	 * Constructor that only evaluates some test cases of the gold.
+	 * 
+	 * @param gold		Gold standard
+	 * @param output	System output
+	 * @param topics	Test cases to evaluate, or null to evaluate all the test cases of the gold
+	 */
+	public  CEMOrd(OrdinalClassificationFormat gold, OrdinalClassificationFormat output, Set<String> topics)
 	{
 		this.goldStandard = gold;
 		this.output = output;
+		this.topics = topics;
 		this.confusionMatrix = new ConfusionMatrix();
-		this.confusionMatrix.generateConfusionMatrix(this.output, this.goldStandard);
+		this.confusionMatrix.generateConfusionMatrix(this.output, this.goldStandard, this.topics);
 	}
 
 	/**
@@ -43,45 +60,81 @@ public class CEMOrd
 	{
 		/**
 		 * Evaluate according to the test case present in the gold. Calculate each result, and average over them.
+		 * The partial sums are kept in arrays, and only converted to maps if they are requested (see EvALLResult.setSums).
 		 * */
+		int numTopics = this.goldStandard.getTableOfTopics().size();
+		String[] evaluated = new String[numTopics];
+		double[] numerators = new double[numTopics];
+		double[] denominators = new double[numTopics];
+		int n = 0;
 		for (Map.Entry<String, HashMap<String, String>> entry : this.goldStandard.getTableOfTopics().entrySet()) 
 		{ 
 			String topic = entry.getKey();
+			if(this.topics!=null && !this.topics.contains(topic))
+			{
+				continue;
+			}
 			HashMap<String, String> valuesGold = entry.getValue();
 			HashMap<String, String> valuesOutput = this.output.getTableOfTopics().get(topic);
 			
-			Double cemOrd = 0.0d;
+			double cemOrd = 0.0d;
 			double sumNumerator = 0.0d;
 			double sumDenominator = 0.0d;
 			/**
-			 * For each test case in the gold check it in output.
+			 * The proximities of the test case are calculated once by the confusion matrix, so the loop over the items does not allocate objects.
+			 * */
+			HashMap<String, Integer> rows = this.confusionMatrix.getProximityRows(topic);
+			double[][] proximities = this.confusionMatrix.getProximityTable(topic);
+			if(this.errorAnalysis!=null)
+			{
+				this.errorAnalysis.startTopic(topic, rows, proximities.length==0 ? 0 : proximities[0].length);
+			}
+			/**
+			 * For each itme calculate the proximity for each element in the gold. If the test case does not exist in the output
+			 * only the denominator is accumulated, so the result is 0.
 			 * */
-			if(valuesOutput!=null)
+			for(Map.Entry<String, String> entry2: valuesGold.entrySet())
 			{
+				String idGold = entry2.getKey();
+				int posGold = rows.get(entry2.getValue());
 				/**
-				 * For each itme calculate the proximity for each element in the gold.
+				 * If the item does not exist in the output the proximity is 0. 
 				 * */
-				for(Map.Entry<String, String> entry2: valuesGold.entrySet())
+				int posOutput = -1;
+				if(valuesOutput!=null && valuesOutput.get(idGold)!=null)
 				{
-					String idGold = entry2.getKey();
-					String classGold = entry2.getValue();
-					/**
-					 * If the item does not exist in the output the proximity is 0. 
-					 * */
-					if(valuesOutput.get(idGold)!=null)
-					{
-						String classOutput = valuesOutput.get(idGold);
-						sumNumerator+= this.confusionMatrix.proximityCEM(topic, classOutput, classGold);						
-					}
-					sumDenominator+= this.confusionMatrix.proximityCEM(topic, classGold, classGold);
-				}	
-				if(sumDenominator!=0.0d)
+					String classOutput = valuesOutput.get(idGold);
+					posOutput = rows.get(classOutput);
+					sumNumerator+= proximities[posOutput][posGold];						
+				}
+				sumDenominator+= proximities[posGold][posGold];
+				if(this.errorAnalysis!=null)
 				{
-					cemOrd = sumNumerator/sumDenominator;	
+					double proximity = posOutput==-1 ? 0.0d : proximities[posOutput][posGold];
+					this.errorAnalysis.add(idGold, posGold, posOutput, proximities[posGold][posGold] - proximity);
 				}
+			}	
+			if(sumDenominator!=0.0d)
+			{
+				cemOrd = sumNumerator/sumDenominator;	
+			}
+			if(this.errorAnalysis!=null)
+			{
+				this.errorAnalysis.endTopic(sumNumerator, sumDenominator);
 			}
 			this.getResult().getResults().put(topic, cemOrd);
+			evaluated[n] = topic;
+			numerators[n] = sumNumerator;
+			denominators[n] = sumDenominator;
+			n++;
 		}		
+		if(n<numTopics)
+		{
+			evaluated = Arrays.copyOf(evaluated, n);
+			numerators = Arrays.copyOf(numerators, n);
+			denominators = Arrays.copyOf(denominators, n);
+		}
+		this.getResult().setSums(evaluated, numerators, denominators);
 	}
 	
 	public EvALLResult getResult() 
@@ -89,8 +142,22 @@ public class CEMOrd
 		return result;
 	}
 
+	public ConfusionMatrix getConfusionMatrix() 
+	{
+		return confusionMatrix;
+	}
+
 	public String getName() 
 	{
 		return name;
 	}
+
+	/**
+	 * Method that sets an analysis of the errors that is fed with the loss of each item while the output is evaluated, or null to not
+	 * analyse the errors (the default).
+	 */
+	public void setErrorAnalysis(ErrorAnalysis errorAnalysis) 
+	{
+		this.errorAnalysis = errorAnalysis;
+	}
 }
@@ -1,11 +1,11 @@
 package es.uned.nlp.cem;
 
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.Set;
 import java.util.TreeSet;
 
 /**
@@ -50,18 +50,47 @@ public class ConfusionMatrix
 	private HashMap<String, HashMap<String, Integer>> indexClass = new HashMap<String, HashMap<String, Integer>>();	
 	private HashMap<String, HashMap<String, Integer>> frecuencyClassesInGoldPerTopic = new HashMap<String, HashMap<String,Integer>>();
 	private HashMap<String, HashMap<String, Integer>> frecuencyClassesInOutputPerTopic = new HashMap<String, HashMap<String,Integer>>();	
+	/**
+	 * Items classified as an output class that does not exist in the gold, for each class of the gold:
+	 * 				Topic			outputClass		itemsPerClassInGold
+	 * */
+	private HashMap<String, HashMap<String, int[]>> jointCountsNotInGoldPerTopic = new HashMap<String, HashMap<String, int[]>>();
+	/**
+	 * Proximities of each test case, calculated once with proximityCEM: the rows are the classes of the gold (with their index in the confusion 
+	 * matrix) followed by the output classes not in the gold, and the columns the classes of the gold. Only the pairs with items are calculated.
+	 * 				Topic			class			row
+	 * */
+	private HashMap<String, HashMap<String, Integer>> proximityRowsPerTopic = new HashMap<String, HashMap<String, Integer>>();
+	private HashMap<String, double[][]> proximityTablePerTopic = new HashMap<String, double[][]>();
 	
 	public void generateConfusionMatrix(OrdinalClassificationFormat output, OrdinalClassificationFormat gold)
+	{
+		generateConfusionMatrix(output, gold, null);
+	}
+	
+	/**
+	 * Method that generates the confusion matrix only for some test cases of the gold.
+	 * 
+	 * @param output	System output
+	 * @param gold		Gold standard
+	 * @param topics	Test cases to include, or null to include all the test cases of the gold
+	 */
+	public void generateConfusionMatrix(OrdinalClassificationFormat output, OrdinalClassificationFormat gold, Set<String> topics)
 	{
 		for (Map.Entry<String, HashMap<String, String>> entry : gold.getTableOfTopics().entrySet()) 
 		{ 
 			String topic = entry.getKey();
+			if(topics!=null && !topics.contains(topic))
+			{
+				continue;
+			}
 			HashMap<String, String> goldValues = entry.getValue();
 			HashMap<String, String> outputValues = output.getTableOfTopics().get(topic);
 			
 			this.indexClass.put(topic, new HashMap<String, Integer>());
 			this.frecuencyClassesInGoldPerTopic.put(topic, new HashMap<String, Integer>());
 			this.frecuencyClassesInOutputPerTopic.put(topic, new HashMap<String, Integer>());
+			this.jointCountsNotInGoldPerTopic.put(topic, new HashMap<String, int[]>());
 			
 			parseConfusionMatrixForTopic(topic, goldValues, outputValues);
 		}
@@ -84,17 +113,60 @@ public class ConfusionMatrix
 					String outputValue = outputValues.get(id);
 					
 					int posGold = this.indexClass.get(topic).get(goldValue);
-					//If the output value does not exist in the gold we ignore it for the confusion matrix.
+					//If the output value does not exist in the gold we ignore it for the confusion matrix, but keep the count apart.
 					if(this.indexClass.get(topic).get(outputValue)!=null)
 					{
 						int posOutput = this.indexClass.get(topic).get(outputValue);
 						int occurrences = confMat[posGold][posOutput] +1;
 						confMat[posGold][posOutput]= occurrences;
 					}
+					else
+					{
+						int[] counts = this.jointCountsNotInGoldPerTopic.get(topic).get(outputValue);
+						if(counts==null)
+						{
+							counts = new int[confMat.length];
+							this.jointCountsNotInGoldPerTopic.get(topic).put(outputValue, counts);
+						}
+						counts[posGold]++;
+					}
 				}
 			}
 		}
 		this.confusionMatrix.put(topic, confMat);
+		generateProximityTable(topic, confMat);
+	}
+	
+	private void generateProximityTable(String topic, int[][] confMat)
+	{
+		HashMap<String, Integer> rows = new HashMap<String, Integer>(this.indexClass.get(topic));
+		for (String outputClass : this.jointCountsNotInGoldPerTopic.get(topic).keySet()) 
+		{
+			rows.put(outputClass, rows.size());
+		}
+		String[] goldClasses = new String[confMat.length];
+		for(int j=0;j<goldClasses.length;j++)
+		{
+			goldClasses[j] = this.getClassName(topic, j);
+		}
+		
+		double[][] table = new double[rows.size()][goldClasses.length];
+		for (Map.Entry<String, Integer> entry : rows.entrySet()) 
+		{
+			int row = entry.getValue();
+			int[] counts = row<goldClasses.length ? null : this.jointCountsNotInGoldPerTopic.get(topic).get(entry.getKey());
+			for(int j=0;j<goldClasses.length;j++)
+			{
+				int occurrences = counts==null ? confMat[j][row] : counts[j];
+				//The proximity of a class of the gold with itself is needed for the denominator
+				if(occurrences>0 || row==j)
+				{
+					table[row][j] = this.proximityCEM(topic, entry.getKey(), goldClasses[j]);
+				}
+			}
+		}
+		this.proximityRowsPerTopic.put(topic, rows);
+		this.proximityTablePerTopic.put(topic, table);
 	}
 	
 	private int[][] identifyGoldClassesAndCalculateTheirFrequency(String topic, HashMap<String, String> goldValues)
@@ -143,6 +215,135 @@ public class ConfusionMatrix
 		}
 	}
 
+	public int[][] getConfusionMatrix(String topic)
+	{
+		return this.confusionMatrix.get(topic);
+	}
+	
+	/**
+	 * Method that returns, for each output class of a test case that does not exist in its gold, the number of items of each class of the gold 
+	 * (in the order of the confusion matrix) classified as it. 
+	 */
+	public HashMap<String, int[]> getJointCountsNotInGold(String topic)
+	{
+		return this.jointCountsNotInGoldPerTopic.get(topic);
+	}
+	
+	/**
+	 * Method that generates the confusion matrix that would be obtained if the classes of the gold and the output were replaced as in the mapping, 
+	 * from the counts of this one, without the items.
+	 * 
+	 * @param mapping	New class of each value (values not in the mapping keep their class)
+	 * @return			Confusion matrix of the same test cases with the classes replaced
+	 */
+	public ConfusionMatrix remapClasses(HashMap<Double, String> mapping)
+	{
+		ConfusionMatrix remapped = new ConfusionMatrix();
+		for (Map.Entry<String, int[][]> entry : this.confusionMatrix.entrySet()) 
+		{
+			String topic = entry.getKey();
+			int[][] confMat = entry.getValue();
+			HashMap<String, Integer> index = new HashMap<String, Integer>();
+			HashMap<String, Integer> frecuencyInGold = new HashMap<String, Integer>();
+			HashMap<String, Integer> frecuencyInOutput = new HashMap<String, Integer>();
+			HashMap<String, int[]> jointCountsNotInGold = new HashMap<String, int[]>();
+			
+			//The new classes are indexed in the order of the old ones, which is the order of appearance in the gold
+			int[] newIndex = new int[confMat.length];
+			for(int i=0;i<confMat.length;i++)
+			{
+				String className = mapClass(this.getClassName(topic, i), mapping);
+				if(index.get(className)==null)
+				{
+					index.put(className, index.size());
+				}
+				newIndex[i] = index.get(className);
+				addOccurrences(frecuencyInGold, className, this.getNumberInstancesPerClassInGold(topic, i));
+			}
+			for (Map.Entry<String, Integer> entry2 : this.frecuencyClassesInOutputPerTopic.get(topic).entrySet()) 
+			{
+				addOccurrences(frecuencyInOutput, mapClass(entry2.getKey(), mapping), entry2.getValue());
+			}
+			
+			int[][] newConfMat = new int[index.size()][index.size()];
+			for(int i=0;i<confMat.length;i++)
+			{
+				for(int j=0;j<confMat.length;j++)
+				{
+					newConfMat[newIndex[i]][newIndex[j]]+= confMat[i][j];
+				}
+			}
+			//An output class not in the gold may be mapped to a class of the gold
+			for (Map.Entry<String, int[]> entry2 : this.jointCountsNotInGoldPerTopic.get(topic).entrySet()) 
+			{
+				String className = mapClass(entry2.getKey(), mapping);
+				int[] counts = jointCountsNotInGold.get(className);
+				if(index.get(className)==null && counts==null)
+				{
+					counts = new int[index.size()];
+					jointCountsNotInGold.put(className, counts);
+				}
+				for(int i=0;i<confMat.length;i++)
+				{
+					if(index.get(className)!=null)
+					{
+						newConfMat[newIndex[i]][index.get(className)]+= entry2.getValue()[i];
+					}
+					else
+					{
+						counts[newIndex[i]]+= entry2.getValue()[i];
+					}
+				}
+			}
+			
+			remapped.confusionMatrix.put(topic, newConfMat);
+			remapped.indexClass.put(topic, index);
+			remapped.frecuencyClassesInGoldPerTopic.put(topic, frecuencyInGold);
+			remapped.frecuencyClassesInOutputPerTopic.put(topic, frecuencyInOutput);
+			remapped.jointCountsNotInGoldPerTopic.put(topic, jointCountsNotInGold);
+		}
+		return remapped;
+	}
+	
+	/**
+	 * Method that returns the class of a value in a mapping, comparing the numeric values.
+	 */
+	private static String mapClass(String className, HashMap<Double, String> mapping)
+	{
+		String mapped = mapping.get(Double.parseDouble(className));
+		return mapped!=null ? mapped : className;
+	}
+	
+	private static void addOccurrences(HashMap<String, Integer> frecuency, String className, int occurrences)
+	{
+		if(frecuency.get(className)==null)
+		{
+			frecuency.put(className, occurrences);
+		}
+		else
+		{
+			frecuency.put(className, frecuency.get(className) + occurrences);
+		}
+	}
+	
+	/**
+	 * Method that returns the row of each class of a test case in its table of proximities. The row of a class of the gold is its index in the 
+	 * confusion matrix, and it is also its column.
+	 */
+	public HashMap<String, Integer> getProximityRows(String topic)
+	{
+		return this.proximityRowsPerTopic.get(topic);
+	}
+	
+	/**
+	 * Method that returns the table of proximities of a test case: table[row of the output class][index of the gold class] is the same as
+	 * proximityCEM(topic, outputClass, goldClass) for every pair with items in the test case.
+	 */
+	public double[][] getProximityTable(String topic)
+	{
+		return this.proximityTablePerTopic.get(topic);
+	}
+	
 	public String getClassName(String topic, int index)
 	{
 		for (Map.Entry<String, Integer> entry : this.indexClass.get(topic).entrySet()) 
@@ -331,16 +532,14 @@ public class ConfusionMatrix
 		{
 		    public int compare(String one, String other) 
 		    {
-		    	Double val1 = Double.parseDouble(one);
-		    	Double val2 = Double.parseDouble(other);
-	            return val1.compareTo(val2);
+	            return Double.compare(Double.parseDouble(one), Double.parseDouble(other));
 		    }
 
 		});
 		
 		//Add both, gold and output classes, to generate the ordinal index
-		classes.addAll(new ArrayList<>(this.indexClass.get(topic).keySet()));
-		classes.addAll(new ArrayList<>(this.frecuencyClassesInOutputPerTopic.get(topic).keySet()));
+		classes.addAll(this.indexClass.get(topic).keySet());
+		classes.addAll(this.frecuencyClassesInOutputPerTopic.get(topic).keySet());
 		
 		//Check order range and discard first or last element
 		String begin = ciClass;
@@ -0,0 +1,563 @@
+package es.uned.nlp.cem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class finds the errors that cost more to a system output, while the CEMOrd class evaluates it (see CEMOrd.setErrorAnalysis). The loss
+ * of an item is the proximity of its class of the gold with itself minus the proximity between its class of the output and its class of the gold
+ * (the proximity of the class of the gold if the item is not in the output), so the losses of the items of a test case add up to the denominator
+ * minus the numerator. The analysis keeps:</p>
+ *
+ * <ul>
+ * <li>The k items with the highest loss of each test case and of the whole output.</li>
+ * <li>The k confusions (class of the gold, class of the output) with the highest total loss of each test case and of the whole output, where the
+ * classes are identified by their names.</li>
+ * <li>The k test cases with the lowest CEM-Ord, whose loss is 1 - CEM-Ord.</li>
+ * </ul>
+ *
+ * <p>The items are kept in heaps of fixed size over primitive arrays, so the memory depends on k and the number of test cases and classes, not
+ * on the number of items. Items without loss are not errors and are not kept; items with the same loss are kept in the order they are evaluated.</p>
+ *
+ * <p>The analyses of disjoint sets of test cases (the buckets of the out of core evaluation, see ExecutionPlanner) are merged with the same result
+ * as a single analysis: the k items with the highest loss of the whole output are among the k items of each test case, and the losses of the
+ * confusions of each test case are kept.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class ErrorAnalysis
+{
+	private final int k;
+	private final Heap worstItems;
+	private final Heap worstTopics;
+	private final LinkedHashMap<String, TopicErrors> topics = new LinkedHashMap<String, TopicErrors>();
+	private final List<TopicErrors> topicList = new ArrayList<TopicErrors>();
+	/**
+	 * Count and loss of each confusion of the whole output, by the names of the classes of the gold and the output.
+	 */
+	private final LinkedHashMap<String, Error> confusions = new LinkedHashMap<String, Error>();
+
+	/**
+	 * Test case being evaluated.
+	 */
+	private TopicErrors current;
+
+	/**
+	 * @param k	Number of items, confusions and test cases kept
+	 */
+	public ErrorAnalysis(int k)
+	{
+		if(k<=0)
+		{
+			throw new IllegalArgumentException("The number of errors must be positive");
+		}
+		this.k = k;
+		this.worstItems = new Heap(k);
+		this.worstTopics = new Heap(k);
+	}
+
+	/**
+	 * Method called before the items of a test case are added.
+	 *
+	 * @param topic				Test case
+	 * @param rows				Classes of the test case and their numbers, first the classes of the gold and then the classes only in the output
+	 * @param numGoldClasses	Number of classes of the gold
+	 */
+	public void startTopic(String topic, HashMap<String, Integer> rows, int numGoldClasses)
+	{
+		String[] classes = new String[rows.size()];
+		for (Map.Entry<String, Integer> entry : rows.entrySet())
+		{
+			classes[entry.getValue()] = entry.getKey();
+		}
+		this.current = new TopicErrors(topic, this.topicList.size(), classes, this.k);
+		this.topics.put(topic, this.current);
+		this.topicList.add(this.current);
+		this.current.costs = new double[classes.length+1][numGoldClasses];
+		this.current.counts = new int[classes.length+1][numGoldClasses];
+	}
+
+	/**
+	 * Method that adds an item of the test case.
+	 *
+	 * @param id			Id of the item
+	 * @param classGold		Number of the class of the gold
+	 * @param classOutput	Number of the class of the output, or -1 if the item is not in the output
+	 * @param loss			Proximity of the class of the gold with itself minus proximity between both classes
+	 */
+	public void add(String id, int classGold, int classOutput, double loss)
+	{
+		int row = classOutput==-1 ? this.current.costs.length-1 : classOutput;
+		this.current.costs[row][classGold]+= loss;
+		this.current.counts[row][classGold]++;
+		if(loss>0.0d)
+		{
+			this.current.items.offer(loss, 1, id, this.current.index, classGold, classOutput);
+			this.worstItems.offer(loss, 1, id, this.current.index, classGold, classOutput);
+		}
+	}
+
+	/**
+	 * Method called after the items of a test case are added.
+	 */
+	public void endTopic(double numerator, double denominator)
+	{
+		TopicErrors topic = this.current;
+		for(int row=0;row<topic.costs.length;row++)
+		{
+			int classOutput = row==topic.costs.length-1 ? -1 : row;
+			for(int classGold=0;classGold<topic.costs[row].length;classGold++)
+			{
+				if(topic.costs[row][classGold]>0.0d)
+				{
+					topic.confusions.offer(topic.costs[row][classGold], topic.counts[row][classGold], null, topic.index, classGold, classOutput);
+				}
+			}
+		}
+		for(int[] row: topic.counts)
+		{
+			for(int count: row)
+			{
+				topic.numItems+= count;
+			}
+		}
+		topic.loss = denominator!=0.0d ? 1.0d - numerator/denominator : Double.NaN;
+		addTopic(topic);
+		this.current = null;
+	}
+
+	/**
+	 * Method that adds the confusions and the loss of a test case to those of the whole output.
+	 */
+	private void addTopic(TopicErrors topic)
+	{
+		for(int row=0;row<topic.costs.length;row++)
+		{
+			int classOutput = row==topic.costs.length-1 ? -1 : row;
+			for(int classGold=0;classGold<topic.costs[row].length;classGold++)
+			{
+				if(topic.costs[row][classGold]>0.0d)
+				{
+					String gold = topic.classes[classGold];
+					String output = classOutput==-1 ? null : topic.classes[classOutput];
+					String key = gold + "\t" + output;
+					Error confusion = this.confusions.get(key);
+					if(confusion==null)
+					{
+						confusion = new Error(null, null, gold, output, 0, 0.0d);
+						this.confusions.put(key, confusion);
+					}
+					confusion.count+= topic.counts[row][classGold];
+					confusion.loss+= topic.costs[row][classGold];
+				}
+			}
+		}
+		if(!Double.isNaN(topic.loss))
+		{
+			this.worstTopics.offer(topic.loss, topic.numItems, null, topic.index, -1, -1);
+		}
+	}
+
+	/**
+	 * Method that merges the analyses of disjoint sets of test cases in this analysis, which must be empty, as if the test cases had been
+	 * analysed in the given order.
+	 *
+	 * @param parts		Analyses with the same number of errors as this one
+	 * @param order		Test cases in the order of the evaluation; the test cases that are not in any analysis are skipped
+	 */
+	public void merge(List<ErrorAnalysis> parts, List<String> order)
+	{
+		if(!this.topicList.isEmpty())
+		{
+			throw new IllegalStateException("The analysis is not empty");
+		}
+		for(ErrorAnalysis part: parts)
+		{
+			if(part.k!=this.k)
+			{
+				throw new IllegalArgumentException("The analyses keep a different number of errors");
+			}
+		}
+		for(String name: order)
+		{
+			TopicErrors topic = null;
+			for(ErrorAnalysis part: parts)
+			{
+				topic = part.topics.get(name);
+				if(topic!=null)
+				{
+					break;
+				}
+			}
+			if(topic==null)
+			{
+				continue;
+			}
+			topic.setIndex(this.topicList.size());
+			this.topics.put(name, topic);
+			this.topicList.add(topic);
+			topic.items.offerAll(this.worstItems);
+			addTopic(topic);
+		}
+	}
+
+	/**
+	 * The k items with the highest loss of the whole output, from the highest.
+	 */
+	public List<Error> getWorstItems()
+	{
+		return this.worstItems.toErrors(this.topicList);
+	}
+
+	/**
+	 * The k items with the highest loss of a test case, from the highest.
+	 */
+	public List<Error> getWorstItems(String topic)
+	{
+		TopicErrors errors = this.topics.get(topic);
+		return errors!=null ? errors.items.toErrors(this.topicList) : new ArrayList<Error>();
+	}
+
+	/**
+	 * The k confusions with the highest total loss of the whole output, from the highest.
+	 */
+	public List<Error> getWorstConfusions()
+	{
+		List<Error> errors = new ArrayList<Error>(this.confusions.values());
+		//The sort is stable, so confusions with the same loss keep the order in which they were found
+		Collections.sort(errors, new Comparator<Error>()
+		{
+			public int compare(Error e1, Error e2)
+			{
+				return Double.compare(e2.loss, e1.loss);
+			}
+		});
+		return errors.size()>this.k ? new ArrayList<Error>(errors.subList(0, this.k)) : errors;
+	}
+
+	/**
+	 * The k confusions with the highest total loss of a test case, from the highest.
+	 */
+	public List<Error> getWorstConfusions(String topic)
+	{
+		TopicErrors errors = this.topics.get(topic);
+		return errors!=null ? errors.confusions.toErrors(this.topicList) : new ArrayList<Error>();
+	}
+
+	/**
+	 * The k test cases with the lowest CEM-Ord, from the lowest, with the loss 1 - CEM-Ord and the number of items of the gold as count.
+	 */
+	public List<Error> getWorstTopics()
+	{
+		return this.worstTopics.toErrors(this.topicList);
+	}
+
+	/**
+	 * Test cases analysed, in the order of the evaluation.
+	 */
+	public List<String> getTopics()
+	{
+		return new ArrayList<String>(this.topics.keySet());
+	}
+
+	public int getK()
+	{
+		return k;
+	}
+
+	/**
+	 * An item, a confusion or a test case, with its loss.
+	 */
+	public static class Error
+	{
+		private String topic;
+		private String id;
+		private String classGold;
+		private String classOutput;
+		private int count;
+		private double loss;
+
+		private Error(String topic, String id, String classGold, String classOutput, int count, double loss)
+		{
+			this.topic = topic;
+			this.id = id;
+			this.classGold = classGold;
+			this.classOutput = classOutput;
+			this.count = count;
+			this.loss = loss;
+		}
+
+		/**
+		 * Test case, or null for the confusions of the whole output.
+		 */
+		public String getTopic()
+		{
+			return topic;
+		}
+
+		/**
+		 * Id of the item, or null for confusions and test cases.
+		 */
+		public String getId()
+		{
+			return id;
+		}
+
+		/**
+		 * Class of the gold, or null for test cases.
+		 */
+		public String getClassGold()
+		{
+			return classGold;
+		}
+
+		/**
+		 * Class of the output, or null if the items are not in the output or for test cases.
+		 */
+		public String getClassOutput()
+		{
+			return classOutput;
+		}
+
+		/**
+		 * Number of items (1 for an item).
+		 */
+		public int getCount()
+		{
+			return count;
+		}
+
+		public double getLoss()
+		{
+			return loss;
+		}
+	}
+
+	/**
+	 * Classes and heaps of a test case, with the loss and count of each class of the output (rows, with a last row for the items not in the
+	 * output) and class of the gold (columns), and the loss of the test case (NaN if its denominator is 0).
+	 */
+	private static class TopicErrors
+	{
+		private String topic;
+		private int index;
+		private String[] classes;
+		private Heap items;
+		private Heap confusions;
+		private double[][] costs;
+		private int[][] counts;
+		private int numItems = 0;
+		private double loss;
+
+		private TopicErrors(String topic, int index, String[] classes, int k)
+		{
+			this.topic = topic;
+			this.index = index;
+			this.classes = classes;
+			this.items = new Heap(k);
+			this.confusions = new Heap(k);
+		}
+
+		private void setIndex(int index)
+		{
+			this.index = index;
+			Arrays.fill(this.items.topics, 0, this.items.size, index);
+			Arrays.fill(this.confusions.topics, 0, this.confusions.size, index);
+		}
+	}
+
+	/**
+	 * Heap of the k entries with the highest loss, in parallel arrays. The root is the entry that leaves the heap first: the lowest loss, and
+	 * the last one added among equal losses.
+	 */
+	private static class Heap
+	{
+		private final double[] losses;
+		private final long[] order;
+		private final int[] counts;
+		private final String[] ids;
+		private final int[] topics;
+		private final int[] golds;
+		private final int[] outputs;
+		private int size = 0;
+		private long offered = 0;
+
+		private Heap(int k)
+		{
+			this.losses = new double[k];
+			this.order = new long[k];
+			this.counts = new int[k];
+			this.ids = new String[k];
+			this.topics = new int[k];
+			this.golds = new int[k];
+			this.outputs = new int[k];
+		}
+
+		private void offer(double loss, int count, String id, int topic, int gold, int output)
+		{
+			long order = this.offered++;
+			int position;
+			if(this.size<this.losses.length)
+			{
+				position = this.size++;
+			}
+			else if(loss>this.losses[0])
+			{
+				position = 0;
+			}
+			else
+			{
+				return;
+			}
+			set(position, loss, order, count, id, topic, gold, output);
+			if(position==0 && this.size==this.losses.length)
+			{
+				siftDown(0);
+			}
+			else
+			{
+				siftUp(position);
+			}
+		}
+
+		/**
+		 * Method that offers the entries to another heap, in the order in which they were offered to this one.
+		 */
+		private void offerAll(Heap heap)
+		{
+			Integer[] positions = new Integer[this.size];
+			for(int i=0;i<this.size;i++)
+			{
+				positions[i] = i;
+			}
+			Arrays.sort(positions, new Comparator<Integer>()
+			{
+				public int compare(Integer i, Integer j)
+				{
+					return Long.compare(order[i], order[j]);
+				}
+			});
+			for(int i: positions)
+			{
+				heap.offer(this.losses[i], this.counts[i], this.ids[i], this.topics[i], this.golds[i], this.outputs[i]);
+			}
+		}
+
+		private void set(int position, double loss, long order, int count, String id, int topic, int gold, int output)
+		{
+			this.losses[position] = loss;
+			this.order[position] = order;
+			this.counts[position] = count;
+			this.ids[position] = id;
+			this.topics[position] = topic;
+			this.golds[position] = gold;
+			this.outputs[position] = output;
+		}
+
+		/**
+		 * true if the entry i leaves the heap before the entry j.
+		 */
+		private boolean before(int i, int j)
+		{
+			int comparison = Double.compare(this.losses[i], this.losses[j]);
+			return comparison<0 || (comparison==0 && this.order[i]>this.order[j]);
+		}
+
+		private void siftUp(int position)
+		{
+			while(position>0)
+			{
+				int parent = (position-1)>>>1;
+				if(!before(position, parent))
+				{
+					break;
+				}
+				swap(position, parent);
+				position = parent;
+			}
+		}
+
+		private void siftDown(int position)
+		{
+			while(true)
+			{
+				int child = 2*position + 1;
+				if(child>=this.size)
+				{
+					break;
+				}
+				if(child+1<this.size && before(child+1, child))
+				{
+					child++;
+				}
+				if(!before(child, position))
+				{
+					break;
+				}
+				swap(position, child);
+				position = child;
+			}
+		}
+
+		private void swap(int i, int j)
+		{
+			double loss = this.losses[i];
+			long order = this.order[i];
+			int count = this.counts[i];
+			String id = this.ids[i];
+			int topic = this.topics[i];
+			int gold = this.golds[i];
+			int output = this.outputs[i];
+			set(i, this.losses[j], this.order[j], this.counts[j], this.ids[j], this.topics[j], this.golds[j], this.outputs[j]);
+			set(j, loss, order, count, id, topic, gold, output);
+		}
+
+		/**
+		 * Method that returns the entries from the highest loss, without modifying the heap.
+		 */
+		private List<Error> toErrors(List<TopicErrors> topicList)
+		{
+			Integer[] positions = new Integer[this.size];
+			for(int i=0;i<this.size;i++)
+			{
+				positions[i] = i;
+			}
+			Arrays.sort(positions, new Comparator<Integer>()
+			{
+				public int compare(Integer i, Integer j)
+				{
+					return before(i, j) ? 1 : (before(j, i) ? -1 : 0);
+				}
+			});
+			List<Error> errors = new ArrayList<Error>();
+			for(int i: positions)
+			{
+				TopicErrors topic = topicList.get(this.topics[i]);
+				String gold = this.golds[i]==-1 ? null : topic.classes[this.golds[i]];
+				String output = this.outputs[i]==-1 ? null : topic.classes[this.outputs[i]];
+				errors.add(new Error(topic.topic, this.ids[i], gold, output, this.counts[i], this.losses[i]));
+			}
+			return errors;
+		}
+	}
+}
@@ -28,6 +28,16 @@ public class EvALLResult
 	 */
 	private HashMap<String,Double> results = new HashMap<String, Double>();	
 	private Double aggregatedResult = null;
+	/**
+	 * Contains the partial sums of each test case (sum of the proximities between output and gold, and between gold and gold),
+	 * so results can be aggregated without evaluating again. When they are given as arrays (see setSums) the maps are only built if
+	 * they are requested.
+	 */
+	private HashMap<String,Double> numerators = new HashMap<String, Double>();
+	private HashMap<String,Double> denominators = new HashMap<String, Double>();
+	private String[] sumTopics;
+	private double[] sumNumerators;
+	private double[] sumDenominators;
 
 	public HashMap<String, Double> getResults() 
 	{
@@ -39,6 +49,60 @@ public class EvALLResult
 		this.results = results;
 	}
 
+	public HashMap<String, Double> getNumerators() 
+	{
+		if(this.numerators==null)
+		{
+			this.numerators = sums(this.sumNumerators);
+		}
+		return numerators;
+	}
+
+	public void setNumerators(HashMap<String, Double> numerators) 
+	{
+		this.numerators = numerators;
+	}
+
+	public HashMap<String, Double> getDenominators() 
+	{
+		if(this.denominators==null)
+		{
+			this.denominators = sums(this.sumDenominators);
+		}
+		return denominators;
+	}
+
+	public void setDenominators(HashMap<String, Double> denominators) 
+	{
+		this.denominators = denominators;
+	}
+
+	/**
+	 * Method that sets the partial sums of the test cases as arrays, replacing the numerators and the denominators.
+	 *
+	 * @param topics		Test cases
+	 * @param numerators	Numerator of each test case
+	 * @param denominators	Denominator of each test case
+	 */
+	public void setSums(String[] topics, double[] numerators, double[] denominators)
+	{
+		this.sumTopics = topics;
+		this.sumNumerators = numerators;
+		this.sumDenominators = denominators;
+		this.numerators = null;
+		this.denominators = null;
+	}
+
+	private HashMap<String, Double> sums(double[] values)
+	{
+		HashMap<String, Double> sums = new HashMap<String, Double>();
+		for(int t=0;t<this.sumTopics.length;t++)
+		{
+			sums.put(this.sumTopics[t], values[t]);
+		}
+		return sums;
+	}
+
 	public Double getAggregatedResult()
 	{
 		return aggregatedResult;
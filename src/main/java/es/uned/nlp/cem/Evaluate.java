@@ -6,8 +6,15 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import com.csvreader.CsvWriter;
 
@@ -38,48 +45,239 @@ import com.csvreader.CsvWriter;
 
 public class Evaluate 
 {
+	/**
+	 * Default maximum size of the cache of results (in bytes).
+	 */
+	private static final long DEFAULT_CACHE_SIZE = 256L*1024*1024;
+	
+	/**
+	 * Options of the command line that take a value.
+	 */
+	private static final Set<String> OPTIONS_WITH_VALUE = new HashSet<String>(Arrays.asList("-watch", "-threads", "-groups", "-sweep", "-labels", "-cache", "-cache-size", "-shard", "-partial", "-merge", "-approximate", "-memory", "-whatif", "-soft", "-errors"));
+	
+	/**
+	 * Options of the command line that do not take a value.
+	 */
+	private static final Set<String> OPTIONS_WITHOUT_VALUE = new HashSet<String>(Arrays.asList("-dry-run", "-agreement", "-normalize"));
+	
+	/**
+	 * Options that need the files parsed in memory, so the execution plan is only shown.
+	 */
+	private static final List<String> OPTIONS_IN_MEMORY = Arrays.asList("-cache", "-groups", "-sweep", "-shard", "-approximate", "-whatif");
+	
     /**
      * <p>The package must be invoked with 2 parameter: <i>pathGoldStandard</i> <i>pathSystemOutput</i><br>
      * 
      * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar test/resources/GOLD.tsv test/resources/SYS.tsv </p>
+     * 
+     * <p>Options are given before the paths. With <i>-watch pathDirectory</i> only the gold standard is given, and the system outputs 
+     * dropped in the directory are evaluated as they arrive (see EvaluationDaemon).<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -watch runs/ test/resources/GOLD.tsv </p>
+     * 
+     * <p>With <i>-groups specification</i> (repeated once per level) the results are also aggregated by groups of test cases in the report 
+     * RESULTS_GROUPS.tsv (see TopicGroups).<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -groups prefix:9 -groups prefix:6 test/resources/GOLD.tsv test/resources/SYS.tsv </p>
+     * 
+     * <p>With <i>-sweep grid</i> the system output contains a score per item, and every combination of thresholds taken from the grid (from:to:step 
+     * or a list of values) is evaluated, and the best ones are written in the report SWEEP.tsv (see ThresholdSweep). The labels are the classes 
+     * of the gold, or those given with <i>-labels</i>.<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -sweep 0:1:0.05 -labels -1,0,1 test/resources/GOLD.tsv scores.tsv </p>
+     * 
+     * <p>With <i>-cache pathDirectory</i> the results of each test case are kept in a persistent cache, and only the test cases that changed since 
+     * a previous evaluation are evaluated (see TopicResultCache). <i>-cache-size</i> sets its maximum size in MB (256 by default).</p>
+     * 
+     * <p>With <i>-shard i/n</i> only the test cases of the shard i (from 0 to n-1) are evaluated, and the partial result is written in the file given 
+     * with <i>-partial</i> (see PartialResult). With <i>-merge pathReport</i> the paths are partial results, which are merged in the report.<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -shard 0/2 -partial part0.cemp test/resources/GOLD.tsv test/resources/SYS.tsv<br>
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -merge RESULTS.tsv part0.cemp part1.cemp </p>
+     * 
+     * <p>With <i>-approximate precision[,seconds]</i> CEM-Ord is estimated from a sample of the items, until the half width of the 95% confidence 
+     * interval is lower than the precision or the time budget is exhausted (see ApproximateEvaluator). The budget includes the parsing of the 
+     * files and the index of the gold; the system output is read record by record, keeping only the class of each item of the gold.<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -approximate 0.005,2 test/resources/GOLD.tsv test/resources/SYS.tsv</p>
+     * 
+     * <p>Before the evaluation the files are scanned to choose how to evaluate them within the memory budget: in memory, streaming the system 
+     * output or out of core (see ExecutionPlanner). <i>-memory</i> sets the budget in MB (the maximum heap by default), <i>-threads</i> the maximum 
+     * number of threads. A line with the plan is shown on every evaluation, and with <i>-dry-run</i> the plan and its estimates are shown without 
+     * evaluating.<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -dry-run -memory 512 test/resources/GOLD.tsv test/resources/SYS.tsv</p>
+     * 
+     * <p>With <i>-whatif value=class,...</i> (that can be repeated) the report WHATIF.tsv contains the result of each scenario, as if the classes 
+     * of the gold and the output were replaced as in the mapping (see WhatIfAnalysis).<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -whatif -1=0 -whatif 1=-1 test/resources/GOLD.tsv test/resources/SYS.tsv</p>
+     * 
+     * <p>With <i>-errors k</i> the report ERRORS.tsv contains the k test cases with the lowest result, and the k items and confusions of 
+     * classes that cost more to the output, overall and per test case (see ErrorAnalysis). The files are always evaluated in memory, with a 
+     * warning if they do not fit in the memory budget.<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -errors 10 test/resources/GOLD.tsv test/resources/SYS.tsv</p>
+     * 
+     * <p>With <i>-soft class1,...,classk</i> the system output contains a probability distribution over the classes per item (test case, id and 
+     * the k probabilities) and the report contains the expected CEM-Ord (see SoftPredictionEvaluator). The distributions must add up to 1, 
+     * unless <i>-normalize</i> is given. No other option can be used with <i>-soft</i>.<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -soft -1,0,1 test/resources/GOLD.tsv probabilities.tsv</p>
+     * 
+     * <p>With <i>-agreement</i> the paths are N annotations of the same items, and the report AGREEMENT.tsv contains the CEM-Ord of every 
+     * annotation with every other one as gold standard (see AgreementMatrix). <i>-threads</i> sets the number of threads.<br>
+     * 
+     * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -agreement A1.tsv A2.tsv A3.tsv</p>
 	 * 
      * @param args Parameters
      */
     public static void main( String[] args )
     {
-    	if(args.length!=2)
+    	HashMap<String, List<String>> options = new HashMap<String, List<String>>();
+    	List<String> paths = new ArrayList<String>();
+    	if(!parseArguments(args, options, paths))
     	{
-    		System.out.println("The number of parameters must be 2: Java CEM-Ord pathGoldStandard pathSystemOutput \n"
-    				+ "Example: java -jar CEM-Ord_EvALL-0.1.0.jar test/resources/GOLD.tsv test/resources/SYS.tsv");
     		System.exit(0);
     	}
     	
-    	String goldStandardFile = args[0];
-    	String outputFile = args[1];
+    	if(options.containsKey("-watch"))
+    	{
+    		if(paths.size()!=1)
+    		{
+    			System.out.println("The watch mode needs 1 parameter: Java CEM-Ord -watch pathDirectory pathGoldStandard \n"
+    					+ "Example: java -jar CEM-Ord_EvALL-0.1.0.jar -watch runs/ test/resources/GOLD.tsv");
+    			System.exit(0);
+    		}
+    		OrdinalClassificationFormat gold = parseGoldStandard(paths.get(0));
+    		EvaluationDaemon daemon = new EvaluationDaemon(gold, options.get("-watch").get(0));
+    		if(options.containsKey("-threads"))
+    		{
+    			daemon.setThreads(getPositiveInteger(options, "-threads", "number of threads"));
+    		}
+    		daemon.run();
+    		return;
+    	}
     	
-    	if(goldStandardFile==null || goldStandardFile.equalsIgnoreCase(""))
-		{
-    		System.out.println("The name of the gold standard file cannot be empty");
+    	if(options.containsKey("-merge"))
+    	{
+    		mergePartialResults(paths, new File(options.get("-merge").get(0)));
+    		return;
+    	}
+    	
+    	if(options.containsKey("-agreement"))
+    	{
+    		if(paths.size()<2)
+    		{
+    			System.out.println("The agreement needs at least 2 annotation files: Java CEM-Ord -agreement path1 path2 ... \n"
+    					+ "Example: java -jar CEM-Ord_EvALL-0.1.0.jar -agreement A1.tsv A2.tsv A3.tsv");
+    			System.exit(0);
+    		}
+    		evaluateAgreement(paths, options, new File("AGREEMENT.tsv"));
+    		return;
+    	}
+    	
+    	if(paths.size()!=2)
+    	{
+    		System.out.println("The number of parameters must be 2: Java CEM-Ord pathGoldStandard pathSystemOutput \n"
+    				+ "Example: java -jar CEM-Ord_EvALL-0.1.0.jar test/resources/GOLD.tsv test/resources/SYS.tsv");
     		System.exit(0);
-		}
-	
+    	}
+    	
+    	String goldStandardFile = paths.get(0);
+    	String outputFile = paths.get(1);
+		
 		if(outputFile==null || outputFile.equalsIgnoreCase(""))
 		{
 			System.out.println("The name of the system output file cannot be empty");
     		System.exit(0);
 		}
-    	
-    	
+		
+		if(options.containsKey("-soft"))
+		{
+			for(String option: options.keySet())
+			{
+				if(!option.equals("-soft") && !option.equals("-normalize"))
+				{
+					System.out.println("The option " + option + " cannot be used with -soft");
+					System.exit(0);
+				}
+			}
+			evaluateSoftPredictions(goldStandardFile, outputFile, options.get("-soft").get(0), options.containsKey("-normalize"));
+			return;
+		}
+		if(options.containsKey("-normalize"))
+		{
+			System.out.println("The option -normalize can only be used with -soft");
+			System.exit(0);
+		}
+		
 		/**
-		 * Check the gold standard for errors. Errors stop the analysis.
+		 * Choose how to evaluate the files within the memory budget.
 		 * */
-    	OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
-		gold.parseFile(true, goldStandardFile);
-    	if(gold.isStop())
-    	{
-    		System.exit(0);
-    	}
-
+		String optionInMemory = null;
+		for(String option: OPTIONS_IN_MEMORY)
+		{
+			if(optionInMemory==null && options.containsKey(option))
+			{
+				optionInMemory = option;
+			}
+		}
+		long memoryBudget = Runtime.getRuntime().maxMemory();
+		if(options.containsKey("-memory"))
+		{
+			memoryBudget = getPositiveInteger(options, "-memory", "memory budget (MB)")*1024L*1024;
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if(options.containsKey("-threads"))
+		{
+			threads = getPositiveInteger(options, "-threads", "number of threads");
+		}
+		ExecutionPlanner planner = new ExecutionPlanner(memoryBudget, threads);
+		//The error analysis needs the classes of the output, which are not kept when streaming
+		planner.setStreaming(!options.containsKey("-errors"));
+		ExecutionPlanner.Plan plan = planner.plan(goldStandardFile, outputFile);
+		if(plan!=null)
+		{
+			if(options.containsKey("-dry-run"))
+			{
+				System.out.println(plan);
+				return;
+			}
+			if(optionInMemory!=null && plan.getStrategy()!=ExecutionPlanner.Strategy.IN_MEMORY)
+			{
+				System.out.println("Execution plan: IN_MEMORY, required by " + optionInMemory + " (" + plan.getStrategy() + " would be used without it)");
+				System.out.println("Warning: the files are evaluated in memory although they do not fit in the memory budget");
+			}
+			else
+			{
+				System.out.println(plan.getSummary());
+			}
+		}
+		if(optionInMemory==null && plan!=null && plan.getStrategy()!=ExecutionPlanner.Strategy.IN_MEMORY)
+		{
+			ErrorAnalysis errorAnalysis = null;
+			if(options.containsKey("-errors"))
+			{
+				errorAnalysis = new ErrorAnalysis(getPositiveInteger(options, "-errors", "number of errors"));
+			}
+			evaluateWithPlan(goldStandardFile, outputFile, plan, errorAnalysis);
+			return;
+		}
+    	
+		if(options.containsKey("-shard"))
+		{
+			evaluateShard(goldStandardFile, outputFile, options);
+			return;
+		}
+		
+		if(options.containsKey("-approximate"))
+		{
+			evaluateApproximately(goldStandardFile, outputFile, options);
+			return;
+		}
+		
+    	OrdinalClassificationFormat gold = parseGoldStandard(goldStandardFile);
 		
 		/**
 		 * Check the system output for errors/warnings.
@@ -91,12 +289,631 @@ public class Evaluate
     		System.exit(0);
     	}
 		
-		CEMOrd CEMOrd = new CEMOrd(gold, output);
-		CEMOrd.evaluate();
+		if(options.containsKey("-sweep"))
+		{
+			sweepThresholds(gold, output, options);
+			return;
+		}
+		
+		/**
+		 * Check the definition of the groups before evaluating.
+		 * */
+		TopicGroups groups = null;
+		if(options.containsKey("-groups"))
+		{
+			groups = new TopicGroups();
+			for(String specification: options.get("-groups"))
+			{
+				groups.addLevel(specification);
+			}
+			if(groups.isStop())
+			{
+				System.exit(0);
+			}
+		}
+		
+		/**
+		 * Check the scenarios of the what-if analysis before evaluating.
+		 * */
+		List<HashMap<Double, String>> scenarios = new ArrayList<HashMap<Double, String>>();
+		if(options.containsKey("-whatif"))
+		{
+			for(String specification: options.get("-whatif"))
+			{
+				HashMap<Double, String> mapping = WhatIfAnalysis.parseMapping(specification);
+				if(mapping==null)
+				{
+					System.out.println("The mapping of classes must be a list of value=class: " + specification);
+					System.exit(0);
+				}
+				scenarios.add(mapping);
+			}
+			if(options.containsKey("-cache"))
+			{
+				System.out.println("The what-if analysis needs the confusion matrix of every test case, the cache is not used");
+			}
+		}
+		
+		/**
+		 * Check the number of errors of the error analysis before evaluating.
+		 * */
+		ErrorAnalysis errorAnalysis = null;
+		if(options.containsKey("-errors"))
+		{
+			errorAnalysis = new ErrorAnalysis(getPositiveInteger(options, "-errors", "number of errors"));
+			if(options.containsKey("-cache") && !options.containsKey("-whatif"))
+			{
+				System.out.println("The error analysis needs the items of every test case, the cache is not used");
+			}
+		}
+		
+		CEMOrd CEMOrd;
+		if(options.containsKey("-cache") && !options.containsKey("-whatif") && errorAnalysis==null)
+		{
+			long maxSize = DEFAULT_CACHE_SIZE;
+			if(options.containsKey("-cache-size"))
+			{
+				maxSize = getPositiveInteger(options, "-cache-size", "size of the cache (MB)")*1024L*1024;
+			}
+			TopicResultCache cache = new TopicResultCache(options.get("-cache").get(0), maxSize);
+			CEMOrd = evaluateWithCache(gold, output, cache);
+			cache.close();
+			System.out.println(cache.getHits() + " of " + (cache.getHits() + cache.getMisses()) + " test cases taken from the cache");
+		}
+		else
+		{
+			CEMOrd = new CEMOrd(gold, output);
+			CEMOrd.setErrorAnalysis(errorAnalysis);
+			CEMOrd.evaluate();
+		}
 		generateSingleTSVFileForOneOutput(output, gold, CEMOrd);
+		if(groups!=null)
+		{
+			generateGroupsTSVFile(output, CEMOrd, groups, new File("RESULTS_GROUPS.tsv"));
+		}
+		if(!scenarios.isEmpty())
+		{
+			generateWhatIfTSVFile(output, CEMOrd, options.get("-whatif"), scenarios, new File("WHATIF.tsv"));
+		}
+		if(errorAnalysis!=null)
+		{
+			generateErrorsTSVFile(output, errorAnalysis, new File("ERRORS.tsv"));
+		}
 		
     }
     
+    /**
+     * Method that evaluates every combination of thresholds of the grid and writes the best ones in the report SWEEP.tsv.
+     * 
+     * @param gold		Gold Standard OrdinalClassificationFormat object
+     * @param scores	System output with a score per item
+     * @param options	Options of the command line
+     */
+    public static void sweepThresholds(OrdinalClassificationFormat gold, OrdinalClassificationFormat scores, HashMap<String, List<String>> options)
+    {
+    	double[] grid = ThresholdSweep.parseGrid(options.get("-sweep").get(0));
+    	if(grid==null || grid.length==0)
+    	{
+    		System.out.println("The grid of thresholds must be from:to:step or a list of values: " + options.get("-sweep").get(0));
+    		System.exit(0);
+    	}
+    	String[] labels = ThresholdSweep.getLabels(gold);
+    	if(options.containsKey("-labels"))
+    	{
+    		labels = options.get("-labels").get(0).split(",");
+    		for(String label: labels)
+    		{
+    			if(!gold.isNumeric(label))
+    			{
+    				System.out.println("The labels must be numeric values: " + label);
+    				System.exit(0);
+    			}
+    		}
+    		if(!ThresholdSweep.isAscending(labels))
+    		{
+    			System.out.println("The labels must be in ascending order: " + options.get("-labels").get(0));
+    			System.exit(0);
+    		}
+    	}
+    	
+    	ThresholdSweep sweep = new ThresholdSweep(new GoldIndex(gold), scores, labels, grid);
+    	if(sweep.getNumNaN()>0)
+    	{
+    		System.out.println("Format warning: the score of " + sweep.getNumNaN() + " items is NaN, these items are not classified");
+    	}
+    	sweep.run();
+    	System.out.println("Evaluated " + sweep.getNumCandidates() + " combinations of thresholds");
+    	if(sweep.getNumBest()==0)
+    	{
+    		System.out.println("The grid must have at least " + (labels.length-1) + " values");
+    		return;
+    	}
+    	System.out.println("Best thresholds: " + Arrays.toString(sweep.getThresholds(0)) + " " + String.format("%.4f", sweep.getResult(0)));
+    	
+    	try
+		{
+			CsvWriter csvOutput = new CsvWriter(new FileOutputStream(new File("SWEEP.tsv"), false), '\t', Charset.forName(StandardCharsets.UTF_8.displayName()));
+			csvOutput.setTextQualifier('\"');
+			csvOutput.setUseTextQualifier(true);
+			csvOutput.setForceQualifier(true);
+			
+			csvOutput.writeComment("############################################################################");
+			csvOutput.writeComment("\tThis file contains the results of each combination of thresholds for the scores: ");
+			csvOutput.writeComment(MessageFormat.format("\t\t\t\u2022 {0}", scores.getPathFile()));
+			csvOutput.writeComment("");
+			csvOutput.writeComment("\tLabels: " + Arrays.toString(labels) + ". The item is classified as the label j if threshold j <= score < threshold j+1.\n"
+					+ "#\tThe best " + sweep.getNumBest() + " of " + sweep.getNumCandidates() + " combinations, sorted by the aggregated result.");
+			csvOutput.writeComment("############################################################################");
+			
+			String title[] = new String[labels.length];
+			for(int i=0;i<labels.length-1;i++)
+			{
+				title[i] = "Threshold " + (i+1);
+			}
+			title[labels.length-1] = "CEM-Ord";
+			csvOutput.writeRecord(title);
+			for(int rank=0;rank<sweep.getNumBest();rank++)
+			{
+				double[] thresholds = sweep.getThresholds(rank);
+				String record[] = new String[labels.length];
+				for(int i=0;i<thresholds.length;i++)
+				{
+					record[i] = String.valueOf(thresholds[i]);
+				}
+				record[labels.length-1] = String.format("%.4f", sweep.getResult(rank));
+				csvOutput.writeRecord(record);
+			}
+			csvOutput.close();
+		} 
+		catch (IOException e) {e.printStackTrace();}
+    }
+    
+    /**
+     * Method that evaluates the files with the STREAMING or OUT_OF_CORE strategy and writes the EvALL tsv report.
+     * 
+     * @param goldStandardFile	Path of the gold standard
+     * @param outputFile		Path of the system output
+     * @param plan				Execution plan
+     */
+    public static void evaluateWithPlan(String goldStandardFile, String outputFile, ExecutionPlanner.Plan plan)
+    {
+    	evaluateWithPlan(goldStandardFile, outputFile, plan, null);
+    }
+    
+    /**
+     * Method that evaluates the files with the STREAMING or OUT_OF_CORE strategy and writes the EvALL tsv report, and the report of the errors
+     * if the OUT_OF_CORE strategy is used with an error analysis.
+     * 
+     * @param goldStandardFile	Path of the gold standard
+     * @param outputFile		Path of the system output
+     * @param plan				Execution plan
+     * @param errorAnalysis		Empty error analysis, or null
+     */
+    public static void evaluateWithPlan(String goldStandardFile, String outputFile, ExecutionPlanner.Plan plan, ErrorAnalysis errorAnalysis)
+    {
+    	if(errorAnalysis!=null && plan.getStrategy()==ExecutionPlanner.Strategy.STREAMING)
+    	{
+    		throw new IllegalArgumentException("The error analysis cannot be fed by the STREAMING strategy");
+    	}
+    	List<String> goldTopics = new ArrayList<String>();
+    	List<String> outputTopics = new ArrayList<String>();
+    	EvALLResult result;
+    	if(plan.getStrategy()==ExecutionPlanner.Strategy.STREAMING)
+    	{
+    		GoldIndex gold = new GoldIndex(parseGoldStandard(goldStandardFile));
+    		for(int t=0;t<gold.getNumTopics();t++)
+    		{
+    			goldTopics.add(gold.getTopic(t));
+    		}
+    		result = ExecutionPlanner.evaluateStreaming(gold, outputFile, outputTopics);
+    	}
+    	else
+    	{
+    		result = ExecutionPlanner.evaluateOutOfCore(goldStandardFile, outputFile, plan.getBuckets(), plan.getThreads(), goldTopics, outputTopics, 
+    				errorAnalysis);
+    	}
+    	if(result==null)
+    	{
+    		System.exit(0);
+    	}
+    	generateSingleTSVFileForOneOutput(outputFile, "CEM-Ord", goldTopics, outputTopics, result, new File("RESULTS.tsv"));
+    	if(errorAnalysis!=null)
+    	{
+    		generateErrorsTSVFile(outputFile, errorAnalysis, new File("ERRORS.tsv"));
+    	}
+    }
+    
+    /**
+     * Method that calculates the agreement between every ordered pair of annotation files and writes the report.
+     * 
+     * @param paths			Paths of the annotation files
+     * @param options		Options of the command line
+     * @param outputFile	File where the report is written
+     */
+    public static void evaluateAgreement(List<String> paths, HashMap<String, List<String>> options, File outputFile)
+    {
+    	int threads = Runtime.getRuntime().availableProcessors();
+    	if(options.containsKey("-threads"))
+    	{
+    		threads = getPositiveInteger(options, "-threads", "number of threads");
+    	}
+    	List<OrdinalClassificationFormat> annotations = new ArrayList<OrdinalClassificationFormat>();
+    	for(String path: paths)
+    	{
+    		annotations.add(parseGoldStandard(path));
+    	}
+    	AgreementMatrix matrix = new AgreementMatrix(annotations);
+    	matrix.setThreads(threads);
+    	try
+    	{
+    		matrix.compute();
+    	}
+    	catch (InterruptedException e)
+    	{
+    		System.out.println("The calculation of the agreement was interrupted");
+    		System.exit(0);
+    	}
+    	System.out.println(String.format("Mean agreement (CEM-Ord): %.4f", matrix.getMean()));
+    	
+    	try
+		{
+			CsvWriter csvOutput = new CsvWriter(new FileOutputStream(outputFile, false), '\t', Charset.forName(StandardCharsets.UTF_8.displayName()));
+			csvOutput.setTextQualifier('\"');
+			csvOutput.setUseTextQualifier(true);
+			csvOutput.setForceQualifier(true);
+			
+			csvOutput.writeComment("############################################################################");
+			csvOutput.writeComment("\tThis file contains the agreement (CEM-Ord) between the annotations: ");
+			for(String path: paths)
+			{
+				csvOutput.writeComment(MessageFormat.format("\t\t\t\u2022 {0}", path));
+			}
+			csvOutput.writeComment("");
+			csvOutput.writeComment("\tEach row is the annotation used as gold standard and each column the annotation evaluated.");
+			csvOutput.writeComment("############################################################################");
+			
+			String title[] = new String[paths.size()+2];
+			title[0] = "Gold standard";
+			for(int j=0;j<paths.size();j++)
+			{
+				title[j+1] = paths.get(j);
+			}
+			title[paths.size()+1] = "Mean";
+			csvOutput.writeRecord(title);
+			
+			for(int i=0;i<paths.size();i++)
+			{
+				String record[] = new String[paths.size()+2];
+				record[0] = paths.get(i);
+				for(int j=0;j<paths.size();j++)
+				{
+					record[j+1] = formatResult(matrix.getResult(i, j));
+				}
+				record[paths.size()+1] = formatResult(matrix.getMeanAsGold(i));
+				csvOutput.writeRecord(record);
+			}
+			String record[] = new String[paths.size()+2];
+			record[0] = "Mean";
+			for(int j=0;j<paths.size();j++)
+			{
+				record[j+1] = formatResult(matrix.getMeanAsOutput(j));
+			}
+			record[paths.size()+1] = formatResult(matrix.getMean());
+			csvOutput.writeRecord(record);
+			csvOutput.close();
+		} 
+		catch (IOException e) {e.printStackTrace();}
+    }
+    
+    private static String formatResult(double result)
+    {
+    	return Double.isNaN(result) ? "-" : String.format("%.4f", result);
+    }
+    
+    /**
+     * Method that calculates the expected CEM-Ord of a file of soft predictions and writes the report RESULTS.tsv.
+     * 
+     * @param goldStandardFile	Path of the gold standard
+     * @param outputFile		Path of the file with a distribution over the classes per item
+     * @param specification		Classes of the distributions, separated by commas
+     * @param normalize			Whether the distributions that do not add up to 1 are normalized instead of discarded
+     */
+    public static void evaluateSoftPredictions(String goldStandardFile, String outputFile, String specification, boolean normalize)
+    {
+    	String[] classes = specification.split(",");
+    	for(String value: classes)
+    	{
+    		try
+    		{
+    			Double.parseDouble(value);
+    		}
+    		catch (NumberFormatException nfe)
+    		{
+    			System.out.println("The classes of the soft predictions must be numeric values: " + value);
+    			System.exit(0);
+    		}
+    	}
+    	
+    	GoldIndex gold = new GoldIndex(parseGoldStandard(goldStandardFile));
+    	List<String> goldTopics = new ArrayList<String>();
+    	for(int t=0;t<gold.getNumTopics();t++)
+    	{
+    		goldTopics.add(gold.getTopic(t));
+    	}
+    	List<String> outputTopics = new ArrayList<String>();
+    	SoftPredictionEvaluator evaluator = new SoftPredictionEvaluator(gold, classes);
+    	evaluator.setNormalize(normalize);
+    	System.out.println("Parsing file " + outputFile);
+    	PredictionScores scores = evaluator.evaluate(outputFile, outputTopics);
+    	if(scores==null)
+    	{
+    		System.exit(0);
+    	}
+    	System.out.println(String.format("Expected CEM-Ord: %.4f", scores.getAggregatedResult()));
+    	generateSingleTSVFileForOneOutput(outputFile, "Expected CEM-Ord", goldTopics, outputTopics, scores.toEvALLResult(), new File("RESULTS.tsv"));
+    }
+    
+    /**
+     * Method that estimates CEM-Ord from a sample of the items and shows the estimate in the console. The time budget only limits the sampling:
+     * the files are parsed and the gold is indexed before, and the time of both steps is shown with the time of the sampling.
+     * 
+     * @param goldStandardFile	Path of the gold standard
+     * @param outputFile		Path of the system output
+     * @param options			Options of the command line
+     */
+    public static void evaluateApproximately(String goldStandardFile, String outputFile, HashMap<String, List<String>> options)
+    {
+    	String[] specification = options.get("-approximate").get(0).split(",");
+    	double precision = -1.0d;
+    	long maxMillis = 0;
+    	try
+    	{
+    		precision = Double.parseDouble(specification[0]);
+    		if(specification.length>1)
+    		{
+    			maxMillis = (long) (Double.parseDouble(specification[1])*1000);
+    		}
+    	}
+    	catch (NumberFormatException nfe) {}
+    	if(precision<0.0d || specification.length>2)
+    	{
+    		System.out.println("The approximate mode must be precision[,seconds]: " + options.get("-approximate").get(0));
+    		System.exit(0);
+    	}
+    	
+    	//The parsing of the files and the index of the gold are in the time budget
+    	long start = System.nanoTime();
+    	long deadline = maxMillis>0 ? start + maxMillis*1000000L : Long.MAX_VALUE;
+    	ApproximateEvaluator evaluator = new ApproximateEvaluator(new GoldIndex(parseGoldStandard(goldStandardFile)), start);
+    	if(!evaluator.read(outputFile))
+    	{
+    		System.exit(0);
+    	}
+    	long sampling = System.nanoTime();
+    	evaluator.evaluate(precision, deadline);
+    	long end = System.nanoTime();
+    	System.out.println(String.format("CEM-Ord (approximate): %.4f +/- %.4f [%.4f, %.4f] with 95%% confidence", evaluator.getEstimate(), 
+    			evaluator.getHalfWidth(), evaluator.getLowerBound(), evaluator.getUpperBound()));
+    	System.out.println(String.format("Items evaluated: %d (%.2f%% of the items) in %d ms, %d ms of them reading the files and indexing the gold", 
+    			evaluator.getSampledItems(), evaluator.getFraction()*100, (end-start)/1000000L, (sampling-start)/1000000L));
+    }
+    
+    /**
+     * Method that evaluates the test cases of a shard and writes the partial result. Only the items of the test cases of the shard are kept when
+     * the files are parsed.
+     * 
+     * @param goldStandardFile	Path of the gold standard
+     * @param outputFile		Path of the system output
+     * @param options			Options of the command line
+     */
+    public static void evaluateShard(String goldStandardFile, String outputFile, HashMap<String, List<String>> options)
+    {
+    	String[] shard = options.get("-shard").get(0).split("/");
+    	int index = -1;
+    	int numShards = 0;
+    	try
+    	{
+    		index = Integer.parseInt(shard[0]);
+    		numShards = shard.length==2 ? Integer.parseInt(shard[1]) : 0;
+    	}
+    	catch (NumberFormatException nfe) {}
+    	if(numShards<=0 || index<0 || index>=numShards)
+    	{
+    		System.out.println("The shard must be i/n, with i from 0 to n-1: " + options.get("-shard").get(0));
+    		System.exit(0);
+    	}
+    	File partialFile = new File(options.containsKey("-partial") ? options.get("-partial").get(0) : "PARTIAL_" + index + ".cemp");
+    	
+    	if(goldStandardFile==null || goldStandardFile.equalsIgnoreCase(""))
+		{
+    		System.out.println("The name of the gold standard file cannot be empty");
+    		System.exit(0);
+		}
+    	OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+    	gold.setShard(index, numShards);
+    	gold.parseFile(true, goldStandardFile);
+    	if(gold.isStop())
+    	{
+    		System.exit(0);
+    	}
+    	OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+    	output.setShard(index, numShards);
+    	output.parseFile(false, outputFile);
+    	if(output.isStop())
+    	{
+    		System.exit(0);
+    	}
+    	PartialResult partial = PartialResult.evaluate(gold, output, index, numShards);
+    	try
+    	{
+    		partial.write(partialFile);
+    		System.out.println("Partial result of the shard " + index + "/" + numShards + " (" + partial.getTopics().size() + " test cases) written in " + partialFile);
+    	}
+    	catch (IOException e) {e.printStackTrace();}
+    }
+    
+    /**
+     * Method that merges partial results and writes the EvALL tsv report.
+     * 
+     * @param paths			Paths of the partial results
+     * @param outputFile	File where the report is written
+     */
+    public static void mergePartialResults(List<String> paths, File outputFile)
+    {
+    	List<PartialResult> partials = new ArrayList<PartialResult>();
+    	for(String path: paths)
+    	{
+    		PartialResult partial = PartialResult.read(new File(path));
+    		if(partial==null)
+    		{
+    			System.exit(0);
+    		}
+    		partials.add(partial);
+    	}
+    	PartialResult merged = PartialResult.merge(partials);
+    	if(merged==null)
+    	{
+    		System.exit(0);
+    	}
+    	generateSingleTSVFileForOneOutput(merged.getPathOutput(), "CEM-Ord", merged.getTopics().keySet(), merged.getOutputTopics(), 
+    			merged.toEvALLResult(), outputFile);
+    }
+    
+    /**
+     * Method that evaluates only the test cases whose items in the gold and in the output are not in the cache, and takes the results of the 
+     * other test cases from the cache.
+     * 
+     * @param gold		Gold Standard OrdinalClassificationFormat object
+     * @param output	System output OrdinalClassificationFormat object
+     * @param cache		Cache of results of test cases
+     * @return			Measure CEM-Ord object with the results of all the test cases of the gold
+     */
+    public static CEMOrd evaluateWithCache(OrdinalClassificationFormat gold, OrdinalClassificationFormat output, TopicResultCache cache)
+    {
+    	HashMap<String, String> keys = new HashMap<String, String>();
+    	HashMap<String, TopicResultCache.Entry> cached = new HashMap<String, TopicResultCache.Entry>();
+    	Set<String> missing = new HashSet<String>();
+    	for (String topic : gold.getTableOfTopics().keySet()) 
+		{
+    		String key = TopicResultCache.key(gold, output, topic);
+    		keys.put(topic, key);
+    		TopicResultCache.Entry result = cache.get(key);
+    		if(result!=null)
+    		{
+    			cached.put(topic, result);
+    		}
+    		else
+    		{
+    			missing.add(topic);
+    		}
+		}
+    	
+    	CEMOrd CEMOrd = new CEMOrd(gold, output, missing);
+    	CEMOrd.evaluate();
+    	for(String topic: missing)
+    	{
+    		cache.put(keys.get(topic), new TopicResultCache.Entry(CEMOrd, topic));
+    	}
+    	for (Map.Entry<String, TopicResultCache.Entry> entry : cached.entrySet()) 
+		{
+    		CEMOrd.getResult().getResults().put(entry.getKey(), entry.getValue().getResult());
+    		CEMOrd.getResult().getNumerators().put(entry.getKey(), entry.getValue().getNumerator());
+    		CEMOrd.getResult().getDenominators().put(entry.getKey(), entry.getValue().getDenominator());
+		}
+    	return CEMOrd;
+    }
+    
+    /**
+     * Method that returns the value of an option that must be a positive integer. If it is not, the message is shown and the execution ends.
+     * 
+     * @param options		Options of the command line
+     * @param option		Name of the option
+     * @param description	Description of the value for the message
+     * @return				Value of the option
+     */
+    private static int getPositiveInteger(HashMap<String, List<String>> options, String option, String description)
+    {
+    	String value = options.get(option).get(0);
+    	int number = 0;
+    	try
+    	{
+    		number = Integer.parseInt(value);
+    	}
+    	catch (NumberFormatException nfe) {}
+    	if(number<=0)
+    	{
+    		System.out.println("The " + description + " must be a positive integer: " + value);
+    		System.exit(0);
+    	}
+    	return number;
+    }
+    
+    /**
+     * Method that splits the command line into options (starting with -) and paths. Options listed in OPTIONS_WITH_VALUE take the next 
+     * argument as value, and they can be repeated.
+     * 
+     * @param args		Command line arguments
+     * @param options	Map filled with the values of each option
+     * @param paths		List filled with the remaining arguments
+     * @return			false if the command line is not well formed
+     */
+    public static boolean parseArguments(String[] args, HashMap<String, List<String>> options, List<String> paths)
+    {
+    	for(int i=0;i<args.length;i++)
+    	{
+    		String arg = args[i];
+    		if(OPTIONS_WITHOUT_VALUE.contains(arg))
+    		{
+    			options.put(arg, new ArrayList<String>());
+    		}
+    		else if(arg.startsWith("-") && arg.length()>1)
+    		{
+    			if(!OPTIONS_WITH_VALUE.contains(arg))
+    			{
+    				System.out.println("Unknown option: " + arg);
+    				return false;
+    			}
+    			if(i+1>=args.length)
+    			{
+    				System.out.println("The option " + arg + " needs a value");
+    				return false;
+    			}
+    			if(options.get(arg)==null)
+    			{
+    				options.put(arg, new ArrayList<String>());
+    			}
+    			options.get(arg).add(args[++i]);
+    		}
+    		else
+    		{
+    			paths.add(arg);
+    		}
+    	}
+    	return true;
+    }
+    
+    /**
+     * Method that parses the gold standard. Errors in the gold standard stop the analysis.
+     * 
+     * @param goldStandardFile	Path of the gold standard
+     * @return					Gold Standard OrdinalClassificationFormat object
+     */
+    public static OrdinalClassificationFormat parseGoldStandard(String goldStandardFile)
+    {
+    	if(goldStandardFile==null || goldStandardFile.equalsIgnoreCase(""))
+		{
+    		System.out.println("The name of the gold standard file cannot be empty");
+    		System.exit(0);
+		}
+    	OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+		gold.parseFile(true, goldStandardFile);
+    	if(gold.isStop())
+    	{
+    		System.exit(0);
+    	}
+    	return gold;
+    }
+    
     
 	/**
 	 * Method that writes the EvALL tsv report
@@ -107,8 +924,43 @@ public class Evaluate
 	 */
 	public static void generateSingleTSVFileForOneOutput(OrdinalClassificationFormat output, OrdinalClassificationFormat gold, CEMOrd CEMOrd)
 	{
-		
-		File outputFile = new File("RESULTS.tsv");			
+		generateSingleTSVFileForOneOutput(output, gold, CEMOrd, new File("RESULTS.tsv"));
+	}
+	
+	/**
+	 * Method that writes the EvALL tsv report in the given file
+	 * 
+	 * @param output		System output OrdinalClassificationFormat object
+	 * @param gold			Gold Standard OrdinalClassificationFormat object
+	 * @param CEMOrd		Measure CEM-Ord object
+	 * @param outputFile	File where the report is written
+	 */
+	public static void generateSingleTSVFileForOneOutput(OrdinalClassificationFormat output, OrdinalClassificationFormat gold, CEMOrd CEMOrd, File outputFile)
+	{
+		List<String> outputTopics = new ArrayList<String>();
+		for (String topic : output.getTableOfTopics().keySet()) 
+		{
+			if(gold.getTableOfTopics().get(topic)==null)
+			{
+				outputTopics.add(topic);
+			}
+		}
+		generateSingleTSVFileForOneOutput(output.getPathFile(), CEMOrd.getName(), gold.getTableOfTopics().keySet(), outputTopics, CEMOrd.getResult(), outputFile);
+	}
+	
+	/**
+	 * Method that writes the EvALL tsv report from the results of the test cases
+	 * 
+	 * @param pathOutput	Path of the system output
+	 * @param measureName	Name of the measure
+	 * @param goldTopics	Test cases of the gold standard
+	 * @param outputTopics	Test cases of the system output not present in the gold standard
+	 * @param result		Results of the test cases
+	 * @param outputFile	File where the report is written
+	 */
+	public static void generateSingleTSVFileForOneOutput(String pathOutput, String measureName, Collection<String> goldTopics, Collection<String> outputTopics, 
+			EvALLResult result, File outputFile)
+	{
 		try
 		{
 
@@ -130,7 +982,7 @@ public class Evaluate
 
 				csvOutput.writeComment("\tThis file contains the results for the output: ");		
 
-				String originalName = output.getPathFile();
+				String originalName = pathOutput;
 				String mix =  MessageFormat.format("\t\t\t\u2022 {0}", originalName);
 				csvOutput.writeComment(mix);			
 				csvOutput.writeComment("");
@@ -139,28 +991,27 @@ public class Evaluate
 						+ "#\tThose measures that do not satisfy the preconditions are marked with -.");
 				csvOutput.writeComment("############################################################################");
 				csvOutput.writeComment("The measures included in the table are:");
-				csvOutput.writeComment("\t\t- " + CEMOrd.getName());
+				csvOutput.writeComment("\t\t- " + measureName);
 
 				csvOutput.writeComment("############################################################################");
 				
 				
 				String title[] = new String[2];
 				title[0] = "Test Case";
-				title[1] = CEMOrd.getName();
+				title[1] = measureName;
 				csvOutput.writeRecord(title);
 
 
 				/**
 				 * First we check the test case of the gold standard.
 				 * */
-				for (Map.Entry<String, HashMap<String, String>> entry : gold.getTableOfTopics().entrySet()) 
+				for (String topic : goldTopics) 
 				{ 
-					String topic = entry.getKey();
 					String record[] = new String[2];
 					record[0] = topic;
-					if(CEMOrd.getResult().getResults().get(topic)!=null)
+					if(result.getResults().get(topic)!=null)
 					{
-						record[1] = String.format("%.4f",CEMOrd.getResult().getResults().get(topic));
+						record[1] = String.format("%.4f",result.getResults().get(topic));
 					}
 					else
 					{
@@ -170,20 +1021,15 @@ public class Evaluate
 				}		
 				
 				/**
-				 * Then we check the test case of the output and write those not present in the gold standard.
+				 * Then we write the test cases of the output not present in the gold standard.
 				 * */
-				for (Map.Entry<String, HashMap<String, String>> entry : output.getTableOfTopics().entrySet()) 
+				for (String topic : outputTopics) 
 				{ 
-					String topic = entry.getKey();
-					if(gold.getTableOfTopics().get(topic)!=null)
-					{
-						continue;
-					}
 					String record[] = new String[2];
 					record[0] = topic;
-					if(CEMOrd.getResult().getResults().get(topic)!=null)
+					if(result.getResults().get(topic)!=null)
 					{
-						record[1] = String.format("%.4f",CEMOrd.getResult().getResults().get(topic));
+						record[1] = String.format("%.4f",result.getResults().get(topic));
 					}
 					else
 					{
@@ -195,4 +1041,188 @@ public class Evaluate
 		} 
 		catch (IOException e) {e.printStackTrace();}
 	}
+	
+	/**
+	 * Method that writes the EvALL tsv report with the macro and micro averages of each group of test cases
+	 * 
+	 * @param output		System output OrdinalClassificationFormat object
+	 * @param CEMOrd		Measure CEM-Ord object
+	 * @param groups		Definition of the groups of test cases
+	 * @param outputFile	File where the report is written
+	 */
+	public static void generateGroupsTSVFile(OrdinalClassificationFormat output, CEMOrd CEMOrd, TopicGroups groups, File outputFile)
+	{
+		try
+		{
+			CsvWriter csvOutput = new CsvWriter(new FileOutputStream(outputFile, false), '\t', Charset.forName(StandardCharsets.UTF_8.displayName()));
+			csvOutput.setTextQualifier('\"');
+			csvOutput.setUseTextQualifier(true);
+			csvOutput.setForceQualifier(true);
+			
+			csvOutput.writeComment("############################################################################");
+			csvOutput.writeComment("\tThis file contains the results by groups of test cases for the output: ");
+			csvOutput.writeComment(MessageFormat.format("\t\t\t\u2022 {0}", output.getPathFile()));
+			csvOutput.writeComment("");
+			csvOutput.writeComment("\tThe macro average is the mean of the results of the test cases in the group.\n"
+					+ "#\tThe micro average is the sum of the numerators divided by the sum of the denominators.");
+			csvOutput.writeComment("############################################################################");
+			
+			String title[] = new String[5];
+			title[0] = "Level";
+			title[1] = "Group";
+			title[2] = "Test Cases";
+			title[3] = CEMOrd.getName() + " (macro)";
+			title[4] = CEMOrd.getName() + " (micro)";
+			csvOutput.writeRecord(title);
+			
+			for (Map.Entry<String, TreeMap<String, TopicGroups.Rollup>> level : groups.rollup(CEMOrd.getResult()).entrySet()) 
+			{
+				for (Map.Entry<String, TopicGroups.Rollup> group : level.getValue().entrySet()) 
+				{
+					String record[] = new String[5];
+					record[0] = level.getKey();
+					record[1] = group.getKey();
+					record[2] = String.valueOf(group.getValue().getNumTopics());
+					record[3] = String.format("%.4f", group.getValue().getMacroAverage());
+					record[4] = String.format("%.4f", group.getValue().getMicroAverage());
+					csvOutput.writeRecord(record);
+				}
+			}
+			csvOutput.close();
+		} 
+		catch (IOException e) {e.printStackTrace();}
+	}
+	
+	/**
+	 * Method that writes the EvALL tsv report with the result of each scenario of the what-if analysis
+	 * 
+	 * @param output			System output OrdinalClassificationFormat object
+	 * @param CEMOrd			Measure CEM-Ord object
+	 * @param specifications	Mappings of the scenarios as given in the command line
+	 * @param scenarios			Mappings of the scenarios
+	 * @param outputFile		File where the report is written
+	 */
+	public static void generateWhatIfTSVFile(OrdinalClassificationFormat output, CEMOrd CEMOrd, List<String> specifications, 
+			List<HashMap<Double, String>> scenarios, File outputFile)
+	{
+		try
+		{
+			CsvWriter csvOutput = new CsvWriter(new FileOutputStream(outputFile, false), '\t', Charset.forName(StandardCharsets.UTF_8.displayName()));
+			csvOutput.setTextQualifier('\"');
+			csvOutput.setUseTextQualifier(true);
+			csvOutput.setForceQualifier(true);
+			
+			csvOutput.writeComment("############################################################################");
+			csvOutput.writeComment("\tThis file contains the results of the output if some classes were replaced: ");
+			csvOutput.writeComment(MessageFormat.format("\t\t\t\u2022 {0}", output.getPathFile()));
+			csvOutput.writeComment("");
+			csvOutput.writeComment("\tEach scenario replaces the classes of the gold standard and the output as in the mapping value=class.");
+			csvOutput.writeComment("############################################################################");
+			
+			String title[] = new String[3];
+			title[0] = "Scenario";
+			title[1] = CEMOrd.getName();
+			title[2] = "Difference";
+			csvOutput.writeRecord(title);
+			
+			CEMOrd.getResult().normalizeResult();
+			Double original = CEMOrd.getResult().getAggregatedResult();
+			csvOutput.writeRecord(new String[]{"original", original!=null ? String.format("%.4f", original) : "-", "-"});
+			
+			WhatIfAnalysis analysis = new WhatIfAnalysis(CEMOrd);
+			for(int i=0;i<scenarios.size();i++)
+			{
+				EvALLResult result = analysis.evaluate(scenarios.get(i));
+				result.normalizeResult();
+				String record[] = new String[3];
+				record[0] = specifications.get(i);
+				record[1] = result.getAggregatedResult()!=null ? String.format("%.4f", result.getAggregatedResult()) : "-";
+				record[2] = result.getAggregatedResult()!=null && original!=null ? String.format("%+.4f", result.getAggregatedResult() - original) : "-";
+				csvOutput.writeRecord(record);
+			}
+			csvOutput.close();
+		} 
+		catch (IOException e) {e.printStackTrace();}
+	}
+	
+	/**
+	 * Method that writes the EvALL tsv report with the errors that cost more to the output: the test cases with the lowest result, and the 
+	 * items and confusions of classes with the highest loss, first of the whole output and then of each test case.
+	 * 
+	 * @param output			System output OrdinalClassificationFormat object
+	 * @param errorAnalysis		Error analysis fed during the evaluation
+	 * @param outputFile		File where the report is written
+	 */
+	public static void generateErrorsTSVFile(OrdinalClassificationFormat output, ErrorAnalysis errorAnalysis, File outputFile)
+	{
+		generateErrorsTSVFile(output.getPathFile(), errorAnalysis, outputFile);
+	}
+	
+	/**
+	 * Method that writes the EvALL tsv report with the errors that cost more to the output.
+	 * 
+	 * @param pathOutput		Path of the system output
+	 * @param errorAnalysis		Error analysis fed during the evaluation
+	 * @param outputFile		File where the report is written
+	 * @see #generateErrorsTSVFile(OrdinalClassificationFormat, ErrorAnalysis, File)
+	 */
+	public static void generateErrorsTSVFile(String pathOutput, ErrorAnalysis errorAnalysis, File outputFile)
+	{
+		try
+		{
+			CsvWriter csvOutput = new CsvWriter(new FileOutputStream(outputFile, false), '\t', Charset.forName(StandardCharsets.UTF_8.displayName()));
+			csvOutput.setTextQualifier('\"');
+			csvOutput.setUseTextQualifier(true);
+			csvOutput.setForceQualifier(true);
+			
+			csvOutput.writeComment("############################################################################");
+			csvOutput.writeComment(MessageFormat.format("\tThis file contains the {0} errors that cost more to the output: ", errorAnalysis.getK()));
+			csvOutput.writeComment(MessageFormat.format("\t\t\t\u2022 {0}", pathOutput));
+			csvOutput.writeComment("");
+			csvOutput.writeComment("\tThe loss of an item is the proximity of its class in the gold standard with itself minus the proximity between its");
+			csvOutput.writeComment("\tclasses in the output and in the gold standard (0 if it is not in the output), and the loss of a confusion is the");
+			csvOutput.writeComment("\tsum of the losses of its items. The loss of a test case is 1 - CEM-Ord.");
+			csvOutput.writeComment("############################################################################");
+			
+			String title[] = new String[8];
+			title[0] = "Type";
+			title[1] = "Test Case";
+			title[2] = "Rank";
+			title[3] = "Item";
+			title[4] = "Gold";
+			title[5] = "Output";
+			title[6] = "Count";
+			title[7] = "Loss";
+			csvOutput.writeRecord(title);
+			
+			writeErrors(csvOutput, "test case", errorAnalysis.getWorstTopics());
+			writeErrors(csvOutput, "item", errorAnalysis.getWorstItems());
+			writeErrors(csvOutput, "confusion", errorAnalysis.getWorstConfusions());
+			for(String topic: errorAnalysis.getTopics())
+			{
+				writeErrors(csvOutput, "item of test case", errorAnalysis.getWorstItems(topic));
+				writeErrors(csvOutput, "confusion of test case", errorAnalysis.getWorstConfusions(topic));
+			}
+			csvOutput.close();
+		} 
+		catch (IOException e) {e.printStackTrace();}
+	}
+	
+	private static void writeErrors(CsvWriter csvOutput, String type, List<ErrorAnalysis.Error> errors) throws IOException
+	{
+		int rank = 1;
+		for(ErrorAnalysis.Error error: errors)
+		{
+			String record[] = new String[8];
+			record[0] = type;
+			record[1] = error.getTopic()!=null ? error.getTopic() : "-";
+			record[2] = String.valueOf(rank++);
+			record[3] = error.getId()!=null ? error.getId() : "-";
+			record[4] = error.getClassGold()!=null ? error.getClassGold() : "-";
+			record[5] = error.getClassOutput()!=null ? error.getClassOutput() : "-";
+			record[6] = String.valueOf(error.getCount());
+			record[7] = String.format("%.4f", error.getLoss());
+			csvOutput.writeRecord(record);
+		}
+	}
 }
@@ -0,0 +1,290 @@
+package es.uned.nlp.cem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class keeps the gold standard in memory and watches a directory for system outputs. Each new or modified file is evaluated once
+ * it has not changed during a quiet period (so partially written files are not evaluated), and the EvALL tsv report is written next to it
+ * with the suffix <i>.RESULTS.tsv</i>. Files already present in the directory without an up to date report are evaluated at start.</p>
+ *
+ * <p>The gold standard is kept as a GoldIndex, built once and shared by the workers without locks, and each worker evaluates with its own
+ * PredictionEvaluator, so the gold standard is not processed again for each system output.</p>
+ *
+ * <p>The daemon is invoked with the option <i>-watch pathDirectory</i> and the gold standard:<br>
+ *
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Example: java -jar CEM-Ord_EvALL-0.1.0.jar -watch runs/ test/resources/GOLD.tsv </p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class EvaluationDaemon
+{
+	public static final String REPORT_SUFFIX = ".RESULTS.tsv";
+
+	private final GoldIndex gold;
+	private final String pathGold;
+	private final List<String> goldTopics = new ArrayList<String>();
+	private Path directory;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long quietPeriod = 1000;
+
+	private ExecutorService workers;
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Evaluator of each worker.
+	 */
+	private final ThreadLocal<PredictionEvaluator> evaluators = new ThreadLocal<PredictionEvaluator>()
+	{
+		protected PredictionEvaluator initialValue()
+		{
+			return new PredictionEvaluator(gold);
+		}
+	};
+
+	/**
+	 * Files waiting for their quiet period before being evaluated.
+	 */
+	private HashMap<Path, ScheduledFuture<?>> pending = new HashMap<Path, ScheduledFuture<?>>();
+
+	public EvaluationDaemon(OrdinalClassificationFormat gold, String pathDirectory)
+	{
+		this.gold = new GoldIndex(gold);
+		this.pathGold = gold.getPathFile();
+		for(int t=0;t<this.gold.getNumTopics();t++)
+		{
+			this.goldTopics.add(this.gold.getTopic(t));
+		}
+		this.directory = Paths.get(pathDirectory);
+	}
+
+	/**
+	 * Method that watches the directory until the process is stopped.
+	 */
+	public void run()
+	{
+		if(!Files.isDirectory(this.directory))
+		{
+			System.out.println("The directory does not exist: " + this.directory);
+			return;
+		}
+		if(this.workers==null)
+		{
+			this.workers = Executors.newFixedThreadPool(this.threads);
+		}
+		if(this.scheduler==null)
+		{
+			this.scheduler = Executors.newSingleThreadScheduledExecutor();
+		}
+		try
+		{
+			WatchService watcher = FileSystems.getDefault().newWatchService();
+			this.directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+			/**
+			 * Files dropped before the daemon was started.
+			 * */
+			DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory);
+			for(Path file: stream)
+			{
+				if(isSystemOutput(file) && !hasUpToDateReport(file))
+				{
+					schedule(file);
+				}
+			}
+			stream.close();
+
+			System.out.println("Watching directory " + this.directory.toAbsolutePath() + " with " + this.threads + " threads");
+			while(true)
+			{
+				WatchKey key = watcher.take();
+				for(WatchEvent<?> event: key.pollEvents())
+				{
+					if(event.kind()==StandardWatchEventKinds.OVERFLOW)
+					{
+						continue;
+					}
+					Path file = this.directory.resolve((Path) event.context());
+					if(isSystemOutput(file))
+					{
+						schedule(file);
+					}
+				}
+				if(!key.reset())
+				{
+					System.out.println("The directory is no longer accessible: " + this.directory);
+					break;
+				}
+			}
+			watcher.close();
+		}
+		catch (IOException e) {e.printStackTrace();}
+		catch (InterruptedException e) {Thread.currentThread().interrupt();}
+		finally
+		{
+			this.scheduler.shutdownNow();
+			this.workers.shutdown();
+		}
+	}
+
+	/**
+	 * Method that (re)starts the quiet period of a file. Every new event for the same file postpones its evaluation.
+	 */
+	private void schedule(final Path file)
+	{
+		final long size = file.toFile().length();
+		final long modified = file.toFile().lastModified();
+		synchronized(this.pending)
+		{
+			ScheduledFuture<?> previous = this.pending.get(file);
+			if(previous!=null)
+			{
+				previous.cancel(false);
+			}
+			this.pending.put(file, this.scheduler.schedule(new Runnable()
+			{
+				public void run()
+				{
+					//The file is still being written, wait for another quiet period.
+					if(Files.isRegularFile(file) && (file.toFile().length()!=size || file.toFile().lastModified()!=modified))
+					{
+						schedule(file);
+						return;
+					}
+					synchronized(pending)
+					{
+						pending.remove(file);
+					}
+					//Events received after the evaluation of the file do not evaluate it again
+					if(!Files.isRegularFile(file) || hasUpToDateReport(file))
+					{
+						return;
+					}
+					workers.submit(new Runnable()
+					{
+						public void run()
+						{
+							evaluate(file);
+						}
+					});
+				}
+			}, this.quietPeriod, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/**
+	 * Method that evaluates a system output with the resident gold standard and writes the report next to it.
+	 */
+	private void evaluate(Path file)
+	{
+		try
+		{
+			long start = System.currentTimeMillis();
+			OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+			output.parseFile(false, file.toString());
+			if(output.isStop())
+			{
+				System.out.println("The system output cannot be evaluated: " + file);
+				return;
+			}
+			EvALLResult result = this.evaluators.get().evaluate(output).toEvALLResult();
+			List<String> outputTopics = new ArrayList<String>();
+			for (String topic : output.getTableOfTopics().keySet())
+			{
+				if(this.gold.getTopic(topic)==-1)
+				{
+					outputTopics.add(topic);
+				}
+			}
+			Evaluate.generateSingleTSVFileForOneOutput(file.toString(), "CEM-Ord", this.goldTopics, outputTopics, result, reportFile(file));
+			System.out.println("Evaluated " + file + " in " + (System.currentTimeMillis()-start) + " ms");
+		}
+		catch (RuntimeException e) {e.printStackTrace();}
+	}
+
+	private boolean isSystemOutput(Path file)
+	{
+		String name = file.getFileName().toString();
+		if(name.endsWith(REPORT_SUFFIX) || name.startsWith("."))
+		{
+			return false;
+		}
+		if(this.pathGold!=null && file.toAbsolutePath().equals(Paths.get(this.pathGold).toAbsolutePath()))
+		{
+			return false;
+		}
+		return Files.isRegularFile(file);
+	}
+
+	private boolean hasUpToDateReport(Path file)
+	{
+		File report = reportFile(file);
+		return report.exists() && report.lastModified()>=file.toFile().lastModified();
+	}
+
+	private File reportFile(Path file)
+	{
+		return new File(file.toString() + REPORT_SUFFIX);
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	/**
+	 * Method that sets the executors of the evaluations and of the quiet periods, instead of the ones created by run(). They are shut down
+	 * when the daemon stops.
+	 */
+	void setExecutors(ExecutorService workers, ScheduledExecutorService scheduler)
+	{
+		this.workers = workers;
+		this.scheduler = scheduler;
+	}
+
+	public long getQuietPeriod()
+	{
+		return quietPeriod;
+	}
+
+	public void setQuietPeriod(long quietPeriod)
+	{
+		this.quietPeriod = quietPeriod;
+	}
+}
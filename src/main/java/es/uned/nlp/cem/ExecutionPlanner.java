@@ -0,0 +1,963 @@
+package es.uned.nlp.cem;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.csvreader.CsvReader;
+import com.csvreader.CsvWriter;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class chooses how a pair gold standard/system output is evaluated within a memory budget. The first lines of each file are scanned to
+ * estimate the number of lines, test cases, classes and the length of the ids, and from them the memory needed by each strategy:</p>
+ *
+ * <ul>
+ * <li>IN_MEMORY: both files are parsed with OrdinalClassificationFormat and evaluated with the CEMOrd class.</li>
+ * <li>STREAMING: only the gold standard is parsed, as a GoldIndex, and the records of the system output are evaluated as they are read with a
+ * PredictionEvaluator.</li>
+ * <li>OUT_OF_CORE: both files are split in buckets by the hash of the test case (the shards of PartialResult), and the buckets are evaluated in
+ * parallel and merged.</li>
+ * </ul>
+ *
+ * <p>The estimates assume a 64-bit JVM and are rough (the size of the objects depends on the JVM), so a plan is only chosen when its estimate is
+ * within the 75% of the budget. The first strategy that fits is chosen, in the order above. STREAMING does not keep the classes of the output, so
+ * it can be disabled when they are needed, as in the error analysis.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class ExecutionPlanner
+{
+	public enum Strategy {IN_MEMORY, STREAMING, OUT_OF_CORE}
+
+	private static final int SAMPLE_LINES = 20000;
+	private static final double HEADROOM = 0.75d;
+	private static final int MAX_BUCKETS = 1024;
+
+	/**
+	 * Bytes of a String (header and array), of an entry of a HashMap (node and slot of the table), of a HashMap and of an item of the GoldIndex
+	 * and the PredictionEvaluator (index of the id, class, proximity and flag).
+	 */
+	private static final long STRING_BYTES = 40;
+	private static final long ENTRY_BYTES = 44;
+	private static final long MAP_BYTES = 48;
+	private static final long INDEX_ITEM_BYTES = 80;
+
+	private long memoryBudget;
+	private int maxThreads;
+	private boolean streaming = true;
+
+	/**
+	 * @param memoryBudget	Memory available for the evaluation in bytes
+	 * @param maxThreads	Maximum number of threads
+	 */
+	public ExecutionPlanner(long memoryBudget, int maxThreads)
+	{
+		this.memoryBudget = memoryBudget;
+		this.maxThreads = Math.max(1, maxThreads);
+	}
+
+	/**
+	 * Method that enables or disables the STREAMING strategy (enabled by default).
+	 */
+	public void setStreaming(boolean streaming)
+	{
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Method that scans the files and chooses the strategy.
+	 *
+	 * @return	The plan, or null if a file cannot be read
+	 */
+	public Plan plan(String pathGold, String pathOutput)
+	{
+		FileScan gold = scan(pathGold);
+		FileScan output = scan(pathOutput);
+		if(gold==null || output==null)
+		{
+			return null;
+		}
+		Plan plan = new Plan();
+		plan.gold = gold;
+		plan.output = output;
+		plan.memoryBudget = this.memoryBudget;
+		plan.inMemory = gold.getMemory() + output.getMemory();
+		plan.streaming = gold.getMemory() + gold.getLines()*INDEX_ITEM_BYTES;
+
+		long available = (long) (this.memoryBudget*HEADROOM);
+		long topics = Math.max(1, Math.max(gold.getTopics(), output.getTopics()));
+		if(plan.inMemory<=available)
+		{
+			plan.strategy = Strategy.IN_MEMORY;
+			plan.buckets = 1;
+			plan.threads = 1;
+		}
+		else if(this.streaming && plan.streaming<=available)
+		{
+			plan.strategy = Strategy.STREAMING;
+			plan.buckets = 1;
+			plan.threads = 1;
+		}
+		else
+		{
+			plan.strategy = Strategy.OUT_OF_CORE;
+			//The buckets are uneven, and a bucket cannot be smaller than a test case
+			long bucketFactor = 2;
+			plan.threads = this.maxThreads;
+			while(true)
+			{
+				long perThread = Math.max(1, available/plan.threads);
+				plan.buckets = (int) Math.min(MAX_BUCKETS, Math.max(plan.threads, (plan.inMemory*bucketFactor + perThread - 1)/perThread));
+				if(plan.buckets<=topics || plan.threads==1)
+				{
+					break;
+				}
+				plan.threads--;
+			}
+			plan.buckets = (int) Math.min(plan.buckets, topics);
+			plan.outOfCore = Math.max(plan.inMemory*bucketFactor/plan.buckets, plan.inMemory/topics);
+		}
+		return plan;
+	}
+
+	/**
+	 * Method that scans the first lines of a file.
+	 *
+	 * @return	The scan, or null if the file cannot be read
+	 */
+	public static FileScan scan(String path)
+	{
+		if(BinarySubmissionReader.isBinary(path))
+		{
+			return scanBinary(path);
+		}
+		File file = new File(path);
+		FileScan scan = new FileScan();
+		scan.path = path;
+		scan.size = file.length();
+		Set<String> topics = new HashSet<String>();
+		Set<String> classes = new HashSet<String>();
+		long lineBytes = 0;
+		long idLength = 0;
+		long valueLength = 0;
+		int topicsInHalf = 0;
+		int runs = 0;
+		String previous = null;
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try
+			{
+				String line;
+				while(scan.sampledLines<SAMPLE_LINES && (line = reader.readLine())!=null)
+				{
+					scan.sampledLines++;
+					lineBytes+= line.getBytes(StandardCharsets.UTF_8).length + 1;
+					String[] record = line.split("\t");
+					if(record.length!=3)
+					{
+						continue;
+					}
+					if(!record[0].equals(previous))
+					{
+						runs++;
+						previous = record[0];
+					}
+					topics.add(record[0]);
+					classes.add(record[2]);
+					idLength+= record[1].length();
+					valueLength+= record[2].length();
+					if(scan.sampledLines==SAMPLE_LINES/2)
+					{
+						topicsInHalf = topics.size();
+					}
+				}
+				scan.complete = reader.readLine()==null;
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("File not found: " + path);
+			return null;
+		}
+
+		scan.classes = classes.size();
+		scan.contiguous = runs==topics.size();
+		if(scan.sampledLines==0)
+		{
+			return scan;
+		}
+		scan.lines = scan.complete ? scan.sampledLines : Math.max(scan.sampledLines, scan.size*scan.sampledLines/Math.max(1, lineBytes));
+		double growth = (double) scan.lines/scan.sampledLines;
+		if(scan.complete)
+		{
+			scan.topics = topics.size();
+		}
+		else if(scan.contiguous || topicsInHalf<0.9d*topics.size())
+		{
+			//New test cases keep appearing, so there are more test cases in the rest of the file
+			scan.topics = Math.max(topics.size(), (long) (topics.size()*growth));
+		}
+		else
+		{
+			scan.topics = topics.size();
+		}
+		scan.idLength = (double) idLength/scan.sampledLines;
+		scan.valueLength = (double) valueLength/scan.sampledLines;
+		return scan;
+	}
+
+	/**
+	 * Method that scans a file in the binary submission format. The number of records, test cases and classes are in the header, so they are
+	 * exact, and the length of the ids is estimated from the first records.
+	 */
+	private static FileScan scanBinary(String path)
+	{
+		final FileScan scan = new FileScan();
+		scan.path = path;
+		scan.size = new File(path).length();
+		final long[] lengths = new long[2];
+		try
+		{
+			BinarySubmissionReader reader = new BinarySubmissionReader(path);
+			reader.read(new BinarySubmissionReader.RecordHandler()
+			{
+				public boolean record(String topic, String id, String value, int position)
+				{
+					scan.sampledLines++;
+					lengths[0]+= id.length();
+					lengths[1]+= value.length();
+					return scan.sampledLines<SAMPLE_LINES;
+				}
+			});
+			scan.complete = true;
+			scan.lines = reader.getNumRecords();
+			scan.topics = reader.getNumTopics();
+			scan.classes = reader.getNumClasses();
+			scan.contiguous = true;
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: input file not well formed.");
+			return null;
+		}
+		if(scan.sampledLines>0)
+		{
+			scan.idLength = (double) lengths[0]/scan.sampledLines;
+			scan.valueLength = (double) lengths[1]/scan.sampledLines;
+		}
+		return scan;
+	}
+
+	/**
+	 * Receives the predictions of a system output read by readOutput.
+	 */
+	interface PredictionHandler
+	{
+		/**
+		 * Prediction given as a record of the system output.
+		 */
+		void add(String topic, String id, String value);
+
+		/**
+		 * Prediction of an item of the GoldIndex (-1 if the id is not in the gold).
+		 */
+		void add(int item, String value);
+	}
+
+	/**
+	 * Method that evaluates a system output reading its records one by one, with the gold standard as a GoldIndex. The records are checked as in
+	 * OrdinalClassificationFormat, but duplicated ids are only detected for items of the gold (the first instance is considered).
+	 *
+	 * @param gold			Gold standard
+	 * @param pathOutput	Path of the system output
+	 * @param outputTopics	Where the test cases of the output not present in the gold are added, in the order of OrdinalClassificationFormat
+	 * @return				Results, or null if the output is not valid (the errors are shown in the console)
+	 */
+	public static EvALLResult evaluateStreaming(GoldIndex gold, String pathOutput, List<String> outputTopics)
+	{
+		final PredictionEvaluator evaluator = new PredictionEvaluator(gold);
+		evaluator.reset();
+		HashMap<String, Boolean> topics = readOutput(gold, pathOutput, new PredictionHandler()
+		{
+			public void add(String topic, String id, String value)
+			{
+				evaluator.add(topic, id, value);
+			}
+
+			public void add(int item, String value)
+			{
+				evaluator.add(item, value);
+			}
+		});
+		if(topics==null)
+		{
+			return null;
+		}
+		for(String topic: topics.keySet())
+		{
+			if(topics.get(topic))
+			{
+				outputTopics.add(topic);
+			}
+		}
+		return evaluator.scores().toEvALLResult();
+	}
+
+	/**
+	 * Method that reads the records of a system output one by one and gives the valid ones to a handler, checked as in evaluateStreaming.
+	 *
+	 * @param gold			Gold standard
+	 * @param pathOutput	Path of the system output
+	 * @param handler		Receives the valid records
+	 * @return				Every test case of the output, true if it is not in the gold (in the order of the keys of the table of
+	 * 						OrdinalClassificationFormat), or null if the output is not valid (the errors are shown in the console)
+	 */
+	static HashMap<String, Boolean> readOutput(final GoldIndex gold, String pathOutput, final PredictionHandler handler)
+	{
+		System.out.println("Parsing file " + pathOutput);
+		final HashMap<String, Boolean> topics = new HashMap<String, Boolean>();
+		int inLine = 0;
+		int rowWithNo3Columns = 0;
+		try
+		{
+			if(BinarySubmissionReader.isBinary(pathOutput))
+			{
+				BinarySubmissionReader reader = new BinarySubmissionReader(pathOutput);
+				if(reader.isNumericIds())
+				{
+					readNumericIds(gold, reader, handler, topics);
+				}
+				else
+				{
+					reader.read(new BinarySubmissionReader.RecordHandler()
+					{
+						public boolean record(String topic, String id, String value, int position)
+						{
+							if(isValid(topic, id, value, position, false))
+							{
+								if(!topics.containsKey(topic))
+								{
+									topics.put(topic, gold.getTopic(topic)==-1);
+								}
+								handler.add(topic, id, value);
+							}
+							return true;
+						}
+					});
+				}
+				inLine = (int) reader.getNumRecords();
+			}
+			else
+			{
+				CsvReader reader = reader(pathOutput);
+				try
+				{
+					while(reader.readRecord())
+					{
+						inLine++;
+						String[] record = reader.getValues();
+						if(!isValid(record, inLine, false))
+						{
+							if(record.length!=3)
+							{
+								rowWithNo3Columns++;
+							}
+							continue;
+						}
+						if(!topics.containsKey(record[0]))
+						{
+							topics.put(record[0], gold.getTopic(record[0])==-1);
+						}
+						handler.add(record[0], record[1], record[2]);
+					}
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: input file not well formed.");
+			return null;
+		}
+		if(!isComplete(inLine, rowWithNo3Columns))
+		{
+			return null;
+		}
+		return topics;
+	}
+
+	/**
+	 * Method that gives the records of a binary submission with numeric ids to the handler. The test cases and the classes are checked once, from
+	 * the dictionaries, and the items are found in the GoldIndex by the value of their ids, so nothing is created for each record.
+	 */
+	private static void readNumericIds(final GoldIndex gold, final BinarySubmissionReader reader, final PredictionHandler handler, 
+			final HashMap<String, Boolean> topics) throws IOException
+	{
+		final int[] goldTopics = new int[reader.getNumTopics()];
+		final boolean[] validTopics = new boolean[reader.getNumTopics()];
+		for(int t=0;t<goldTopics.length;t++)
+		{
+			goldTopics[t] = gold.getTopic(reader.getTopic(t));
+			validTopics[t] = !reader.getTopic(t).equalsIgnoreCase("");
+		}
+		final boolean[] validClasses = new boolean[reader.getNumClasses()];
+		for(int k=0;k<validClasses.length;k++)
+		{
+			validClasses[k] = !reader.getClassName(k).equalsIgnoreCase("") && isNumeric(reader.getClassName(k));
+		}
+		final boolean[] seen = new boolean[reader.getNumTopics()];
+		reader.read(new BinarySubmissionReader.NumericRecordHandler()
+		{
+			public boolean record(int topic, long id, int value, int position)
+			{
+				if(!validTopics[topic] || !validClasses[value])
+				{
+					//Shows the warning of the record
+					isValid(reader.getTopic(topic), Long.toString(id), reader.getClassName(value), position, false);
+					return true;
+				}
+				if(!seen[topic])
+				{
+					seen[topic] = true;
+					if(!topics.containsKey(reader.getTopic(topic)))
+					{
+						topics.put(reader.getTopic(topic), goldTopics[topic]==-1);
+					}
+				}
+				if(goldTopics[topic]!=-1)
+				{
+					handler.add(gold.getItem(goldTopics[topic], id), reader.getClassName(value));
+				}
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Method that splits the files in buckets by test case, evaluates the buckets in parallel and merges their results.
+	 *
+	 * @param pathGold		Path of the gold standard
+	 * @param pathOutput	Path of the system output
+	 * @param numBuckets	Number of buckets
+	 * @param threads		Number of buckets evaluated at the same time
+	 * @param goldTopics	Where the test cases of the gold are added, in the order of OrdinalClassificationFormat
+	 * @param outputTopics	Where the test cases of the output not present in the gold are added, in the order of OrdinalClassificationFormat
+	 * @return				Results, or null if the files are not valid (the errors are shown in the console)
+	 */
+	public static EvALLResult evaluateOutOfCore(String pathGold, String pathOutput, int numBuckets, int threads, List<String> goldTopics, 
+			List<String> outputTopics)
+	{
+		return evaluateOutOfCore(pathGold, pathOutput, numBuckets, threads, goldTopics, outputTopics, null);
+	}
+
+	/**
+	 * Method that splits the files in buckets by test case, evaluates the buckets in parallel and merges their results and their error analyses.
+	 *
+	 * @param errorAnalysis	Empty analysis where the analyses of the buckets are merged, or null
+	 * @see #evaluateOutOfCore(String, String, int, int, List, List)
+	 */
+	public static EvALLResult evaluateOutOfCore(String pathGold, String pathOutput, final int numBuckets, int threads, List<String> goldTopics, 
+			List<String> outputTopics, ErrorAnalysis errorAnalysis)
+	{
+		File directory = null;
+		try
+		{
+			directory = Files.createTempDirectory("cem-buckets").toFile();
+			final File[] goldBuckets = new File[numBuckets];
+			final File[] outputBuckets = new File[numBuckets];
+			for(int b=0;b<numBuckets;b++)
+			{
+				goldBuckets[b] = new File(directory, "GOLD_" + b + ".tsv");
+				outputBuckets[b] = new File(directory, "OUTPUT_" + b + ".tsv");
+			}
+			HashMap<String, Boolean> gold = split(pathGold, true, goldBuckets);
+			if(gold==null)
+			{
+				return null;
+			}
+			HashMap<String, Boolean> output = split(pathOutput, false, outputBuckets);
+			if(output==null)
+			{
+				return null;
+			}
+			goldTopics.addAll(gold.keySet());
+			for(String topic: output.keySet())
+			{
+				if(!gold.containsKey(topic))
+				{
+					outputTopics.add(topic);
+				}
+			}
+
+			final List<ErrorAnalysis> analyses = new ArrayList<ErrorAnalysis>();
+			for(int b=0;errorAnalysis!=null && b<numBuckets;b++)
+			{
+				analyses.add(new ErrorAnalysis(errorAnalysis.getK()));
+			}
+
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			List<Future<PartialResult>> futures = new ArrayList<Future<PartialResult>>();
+			try
+			{
+				for(int b=0;b<numBuckets;b++)
+				{
+					final int bucket = b;
+					futures.add(pool.submit(new Callable<PartialResult>()
+					{
+						public PartialResult call() throws IOException
+						{
+							OrdinalClassificationFormat gold = load(goldBuckets[bucket], true);
+							OrdinalClassificationFormat output = load(outputBuckets[bucket], false);
+							goldBuckets[bucket].delete();
+							outputBuckets[bucket].delete();
+							if(gold.isStop())
+							{
+								return null;
+							}
+							return PartialResult.evaluate(gold, output, bucket, numBuckets, analyses.isEmpty() ? null : analyses.get(bucket));
+						}
+					}));
+				}
+				List<PartialResult> partials = new ArrayList<PartialResult>();
+				for(Future<PartialResult> future: futures)
+				{
+					PartialResult partial = future.get();
+					if(partial==null)
+					{
+						return null;
+					}
+					partials.add(partial);
+				}
+				PartialResult merged = PartialResult.merge(partials);
+				if(merged==null)
+				{
+					return null;
+				}
+				if(errorAnalysis!=null)
+				{
+					errorAnalysis.merge(analyses, goldTopics);
+				}
+				return merged.toEvALLResult();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			catch (ExecutionException e)
+			{
+				System.out.println("IO error: the buckets cannot be evaluated: " + e.getCause().getMessage());
+				return null;
+			}
+			finally
+			{
+				pool.shutdownNow();
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: the buckets cannot be written: " + e.getMessage());
+			return null;
+		}
+		finally
+		{
+			if(directory!=null)
+			{
+				File[] files = directory.listFiles();
+				if(files!=null)
+				{
+					for(File file: files)
+					{
+						file.delete();
+					}
+				}
+				directory.delete();
+			}
+		}
+	}
+
+	/**
+	 * Method that writes the records of a file in the buckets of their test cases, with the line of the record as fourth column. Rows with a
+	 * wrong number of columns are checked here, and the rest of restrictions when the buckets are loaded.
+	 *
+	 * @return	Test cases with a valid record, in the order of OrdinalClassificationFormat, or null if the file is not valid
+	 */
+	private static HashMap<String, Boolean> split(String path, boolean isGold, File[] buckets) throws IOException
+	{
+		System.out.println("Parsing file " + path);
+		final HashMap<String, Boolean> topics = new HashMap<String, Boolean>();
+		final CsvWriter[] writers = new CsvWriter[buckets.length];
+		int inLine = 0;
+		int rowWithNo3Columns = 0;
+		boolean stop = false;
+		CsvReader reader = null;
+		try
+		{
+			for(int b=0;b<buckets.length;b++)
+			{
+				writers[b] = new CsvWriter(new FileOutputStream(buckets[b], false), '\t', Charset.forName(StandardCharsets.UTF_8.displayName()));
+				writers[b].setTextQualifier('\"');
+				writers[b].setUseTextQualifier(true);
+				writers[b].setForceQualifier(true);
+			}
+			if(BinarySubmissionReader.isBinary(path))
+			{
+				BinarySubmissionReader binary = new BinarySubmissionReader(path);
+				binary.read(new BinarySubmissionReader.RecordHandler()
+				{
+					public boolean record(String topic, String id, String value, int position) throws IOException
+					{
+						split(topics, writers, topic, id, value, position);
+						return true;
+					}
+				});
+				inLine = (int) binary.getNumRecords();
+			}
+			else
+			{
+				reader = reader(path);
+				while(reader.readRecord())
+				{
+					inLine++;
+					String[] record = reader.getValues();
+					if(record.length!=3)
+					{
+						isValid(record, inLine, isGold);
+						rowWithNo3Columns++;
+						stop|= isGold;
+						continue;
+					}
+					split(topics, writers, record[0], record[1], record[2], inLine);
+				}
+			}
+		}
+		finally
+		{
+			if(reader!=null)
+			{
+				reader.close();
+			}
+			for(CsvWriter writer: writers)
+			{
+				if(writer!=null)
+				{
+					writer.close();
+				}
+			}
+		}
+		if(!isComplete(inLine, rowWithNo3Columns) || stop)
+		{
+			return null;
+		}
+		return topics;
+	}
+
+	private static void split(HashMap<String, Boolean> topics, CsvWriter[] writers, String topic, String id, String value, int inLine) throws IOException
+	{
+		if(!topic.equalsIgnoreCase("") && !id.equalsIgnoreCase("") && !value.equalsIgnoreCase("") && isNumeric(value))
+		{
+			topics.put(topic, Boolean.TRUE);
+		}
+		writers[PartialResult.getShard(topic, writers.length)].writeRecord(new String[]{topic, id, value, String.valueOf(inLine)});
+	}
+
+	/**
+	 * Method that loads a bucket with the restrictions of OrdinalClassificationFormat, showing the lines of the original file in the messages.
+	 */
+	private static OrdinalClassificationFormat load(File bucket, boolean isGold) throws IOException
+	{
+		OrdinalClassificationFormat format = new OrdinalClassificationFormat();
+		format.setGold(isGold);
+		CsvReader reader = reader(bucket.getPath());
+		try
+		{
+			while(reader.readRecord())
+			{
+				format.addRecord(reader.get(0), reader.get(1), reader.get(2), Integer.parseInt(reader.get(3)));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return format;
+	}
+
+	private static CsvReader reader(String path) throws IOException
+	{
+		CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(path), Charset.forName(StandardCharsets.UTF_8.displayName())), '\t');
+		reader.setUseTextQualifier(true);
+		reader.setTextQualifier('\"');
+		return reader;
+	}
+
+	/**
+	 * Method that checks a record of the system output as OrdinalClassificationFormat, except for the duplicated ids.
+	 */
+	private static boolean isValid(String[] record, int inLine, boolean isGold)
+	{
+		if(record.length!=3)
+		{
+			System.out.println((isGold ? "Format error: " : "Format warning: ") + "the number of columns must be 3. Line " + inLine);
+			return false;
+		}
+		return isValid(record[0], record[1], record[2], inLine, isGold);
+	}
+
+	private static boolean isValid(String topic, String id, String value, int inLine, boolean isGold)
+	{
+		String level = isGold ? "Format error: " : "Format warning: ";
+		if(topic.equalsIgnoreCase("") || id.equalsIgnoreCase("") || value.equalsIgnoreCase(""))
+		{
+			System.out.println(level + "the columns in the rows cannot be empty. Line " + inLine);
+			return false;
+		}
+		if(!isNumeric(value))
+		{
+			System.out.println(level + "the value is not a valid number. Line " + inLine);
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean isComplete(int lines, int rowWithNo3Columns)
+	{
+		if(lines==0)
+		{
+			System.out.println("Format error: The file is empty.");
+			return false;
+		}
+		else if(rowWithNo3Columns==lines)
+		{
+			System.out.println("Format error: The number of columns must be 3 in all lines.");
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean isNumeric(String value)
+	{
+		try
+		{
+			Double.parseDouble(value);
+		}
+		catch (NumberFormatException nfe) {return false;}
+		return true;
+	}
+
+	/**
+	 * Estimates of a file from its first lines.
+	 */
+	public static class FileScan
+	{
+		private String path;
+		private long size;
+		private int sampledLines;
+		private boolean complete;
+		private long lines;
+		private long topics;
+		private int classes;
+		private boolean contiguous;
+		private double idLength;
+		private double valueLength;
+
+		/**
+		 * Estimated memory of the file parsed with OrdinalClassificationFormat.
+		 */
+		public long getMemory()
+		{
+			long record = ENTRY_BYTES + 2*STRING_BYTES + (long) (2*(this.idLength + this.valueLength));
+			return this.lines*record + this.topics*(ENTRY_BYTES + STRING_BYTES + MAP_BYTES);
+		}
+
+		public String getPath()
+		{
+			return path;
+		}
+
+		public long getSize()
+		{
+			return size;
+		}
+
+		/**
+		 * true if the whole file has been scanned, so the estimates are exact.
+		 */
+		public boolean isComplete()
+		{
+			return complete;
+		}
+
+		public long getLines()
+		{
+			return lines;
+		}
+
+		public long getTopics()
+		{
+			return topics;
+		}
+
+		/**
+		 * Distinct classes in the scanned lines.
+		 */
+		public int getClasses()
+		{
+			return classes;
+		}
+
+		/**
+		 * true if the lines of each test case are together in the scanned lines.
+		 */
+		public boolean isContiguous()
+		{
+			return contiguous;
+		}
+
+		public double getIdLength()
+		{
+			return idLength;
+		}
+
+		public String toString()
+		{
+			return String.format("%s: %s, %s%d lines, %s%d test cases (%s), %d classes, ids of %.1f characters", this.path, megabytes(this.size),
+					this.complete ? "" : "~", this.lines, this.complete ? "" : "~", this.topics, this.contiguous ? "contiguous" : "interleaved",
+					this.classes, this.idLength);
+		}
+	}
+
+	/**
+	 * Strategy chosen for a pair of files, with the estimates.
+	 */
+	public static class Plan
+	{
+		private Strategy strategy;
+		private int threads;
+		private int buckets;
+		private FileScan gold;
+		private FileScan output;
+		private long memoryBudget;
+		private long inMemory;
+		private long streaming;
+		private long outOfCore;
+
+		public Strategy getStrategy()
+		{
+			return strategy;
+		}
+
+		public int getThreads()
+		{
+			return threads;
+		}
+
+		/**
+		 * Number of buckets of the OUT_OF_CORE strategy.
+		 */
+		public int getBuckets()
+		{
+			return buckets;
+		}
+
+		public FileScan getGold()
+		{
+			return gold;
+		}
+
+		public FileScan getOutput()
+		{
+			return output;
+		}
+
+		public long getInMemory()
+		{
+			return inMemory;
+		}
+
+		public long getStreaming()
+		{
+			return streaming;
+		}
+
+		/**
+		 * Estimated memory of each bucket of the OUT_OF_CORE strategy (0 if it is not the chosen strategy).
+		 */
+		public long getOutOfCore()
+		{
+			return outOfCore;
+		}
+
+		/**
+		 * One line with the strategy and its estimated memory, shown on every evaluation.
+		 */
+		public String getSummary()
+		{
+			StringBuilder plan = new StringBuilder();
+			plan.append("Execution plan: ").append(this.strategy).append(" (");
+			if(this.strategy==Strategy.OUT_OF_CORE)
+			{
+				plan.append(this.buckets).append(" buckets, ").append(this.threads).append(this.threads==1 ? " thread, " : " threads, ");
+				plan.append(megabytes(this.outOfCore)).append(" per bucket");
+			}
+			else
+			{
+				plan.append(megabytes(this.strategy==Strategy.IN_MEMORY ? this.inMemory : this.streaming));
+			}
+			plan.append(" estimated, budget ").append(megabytes(this.memoryBudget)).append(")");
+			return plan.toString();
+		}
+
+		public String toString()
+		{
+			StringBuilder plan = new StringBuilder(getSummary());
+			plan.append("\n\tGold standard: ").append(this.gold);
+			plan.append("\n\tSystem output: ").append(this.output);
+			plan.append("\n\tEstimated memory: in memory ").append(megabytes(this.inMemory)).append(", streaming ").append(megabytes(this.streaming));
+			return plan.toString();
+		}
+	}
+
+	private static String megabytes(long bytes)
+	{
+		return String.format("%.1f MB", bytes/(1024.0d*1024.0d));
+	}
+}
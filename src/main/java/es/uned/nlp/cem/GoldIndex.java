@@ -0,0 +1,507 @@
+package es.uned.nlp.cem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class encodes a gold standard once so that many system outputs can be evaluated against it without parsing files. Test cases, items
+ * and classes are numbered: the items of the test case <i>t</i> are those between <i>getFirstItem(t)</i> (included) and <i>getFirstItem(t+1)</i>
+ * (excluded), in the same order the CEMOrd class visits them. The proximities between the classes of the gold and the denominator of each test
+ * case are calculated when the index is built.</p>
+ *
+ * <p>The proximities follow the conventions of ConfusionMatrix.proximityCEM: classes are identified by their spelling and ordered by their
+ * numeric value, so an output class that is not in the gold (for example 1.0 when the gold has 1) counts as a class without items of the gold.</p>
+ *
+ * <p>The index is immutable: every field is final and is only written while the index is built, and nothing references the
+ * OrdinalClassificationFormat it was built from. So, once built, an index can be shared by any number of threads without copies or locks, each
+ * of them evaluating system outputs with its own PredictionEvaluator (the state of an evaluation, which is per system output, is in the
+ * evaluator).</p>
+ *
+ * <p>Use PredictionEvaluator to evaluate system outputs against the index.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class GoldIndex
+{
+	private final String[] topics;
+	private final HashMap<String, Integer> topicIndex = new HashMap<String, Integer>();
+	/**
+	 * Items of each test case: from firstItem[t] to firstItem[t+1]-1.
+	 */
+	private final int[] firstItem;
+	private final String[] ids;
+	private final List<HashMap<String, Integer>> itemIndex = new ArrayList<HashMap<String, Integer>>();
+	/**
+	 * Ids of the items of each test case that are numbers (written as by Long.toString) in ascending order, and their items, so the ids of the
+	 * binary submissions are found without converting them to text.
+	 */
+	private final long[][] numericIds;
+	private final int[][] numericItems;
+	private final int[] goldClass;
+
+	/**
+	 * Classes of each test case, numbered in order of appearance (as in the ConfusionMatrix).
+	 */
+	private final String[][] classes;
+	private final double[][] classValues;
+	private final int[][] classFrequencies;
+	private final List<HashMap<String, Integer>> classIndex = new ArrayList<HashMap<String, Integer>>();
+	private final int[] itemsInGold;
+
+	/**
+	 * Distinct values of the classes of each test case in ascending order, the class that represents each value, and the number of items
+	 * of the gold with a value lower than each one (orderedCumulative has one more element with the total).
+	 */
+	private final double[][] orderedValues;
+	private final int[][] orderedClasses;
+	private final double[][] orderedCumulative;
+
+	/**
+	 * proximities[t][classOutput][classGold]
+	 */
+	private final double[][][] proximities;
+	private final double[] denominators;
+
+	public GoldIndex(OrdinalClassificationFormat gold)
+	{
+		int numTopics = gold.getTableOfTopics().size();
+		int numItems = 0;
+		for (HashMap<String, String> values : gold.getTableOfTopics().values())
+		{
+			numItems+= values.size();
+		}
+		this.topics = new String[numTopics];
+		this.firstItem = new int[numTopics+1];
+		this.ids = new String[numItems];
+		this.goldClass = new int[numItems];
+		this.numericIds = new long[numTopics][];
+		this.numericItems = new int[numTopics][];
+		this.classes = new String[numTopics][];
+		this.classValues = new double[numTopics][];
+		this.classFrequencies = new int[numTopics][];
+		this.itemsInGold = new int[numTopics];
+		this.orderedValues = new double[numTopics][];
+		this.orderedClasses = new int[numTopics][];
+		this.orderedCumulative = new double[numTopics][];
+		this.proximities = new double[numTopics][][];
+		this.denominators = new double[numTopics];
+
+		int t = 0;
+		int item = 0;
+		for (Map.Entry<String, HashMap<String, String>> entry : gold.getTableOfTopics().entrySet())
+		{
+			this.topics[t] = entry.getKey();
+			this.topicIndex.put(entry.getKey(), t);
+			this.firstItem[t] = item;
+			HashMap<String, Integer> items = new HashMap<String, Integer>();
+			//The classes are indexed in order of appearance, so the iteration order of the map is the same as in the ConfusionMatrix.
+			HashMap<String, Integer> index = new HashMap<String, Integer>();
+			List<Integer> frequencies = new ArrayList<Integer>();
+			for (Map.Entry<String, String> entry2 : entry.getValue().entrySet())
+			{
+				Integer classGold = index.get(entry2.getValue());
+				if(classGold==null)
+				{
+					classGold = index.size();
+					index.put(entry2.getValue(), classGold);
+					frequencies.add(0);
+				}
+				frequencies.set(classGold, frequencies.get(classGold)+1);
+				this.ids[item] = entry2.getKey();
+				this.goldClass[item] = classGold;
+				items.put(entry2.getKey(), item);
+				item++;
+			}
+			this.itemIndex.add(items);
+			indexNumericIds(t, items);
+			this.classIndex.add(index);
+			this.itemsInGold[t] = item - this.firstItem[t];
+
+			int numClasses = index.size();
+			this.classes[t] = new String[numClasses];
+			this.classValues[t] = new double[numClasses];
+			this.classFrequencies[t] = new int[numClasses];
+			for (Map.Entry<String, Integer> entry2 : index.entrySet())
+			{
+				this.classes[t][entry2.getValue()] = entry2.getKey();
+				this.classValues[t][entry2.getValue()] = Double.parseDouble(entry2.getKey());
+				this.classFrequencies[t][entry2.getValue()] = frequencies.get(entry2.getValue());
+			}
+			orderClasses(t, index);
+
+			this.proximities[t] = new double[numClasses][numClasses];
+			for(int classOutput=0;classOutput<numClasses;classOutput++)
+			{
+				for(int classGold=0;classGold<numClasses;classGold++)
+				{
+					this.proximities[t][classOutput][classGold] = proximity(t, this.classes[t][classOutput], this.classValues[t][classOutput],
+							this.classFrequencies[t][getClassIgnoreCase(t, this.classes[t][classOutput])], classGold);
+				}
+			}
+			double denominator = 0.0d;
+			for(int i=this.firstItem[t];i<item;i++)
+			{
+				denominator+= this.proximities[t][this.goldClass[i]][this.goldClass[i]];
+			}
+			this.denominators[t] = denominator;
+			t++;
+		}
+		this.firstItem[numTopics] = item;
+	}
+
+	private void indexNumericIds(int t, HashMap<String, Integer> items)
+	{
+		int numericItems = 0;
+		long[] ids = new long[items.size()];
+		for (String id : items.keySet())
+		{
+			if(isNumericId(id))
+			{
+				ids[numericItems++] = Long.parseLong(id);
+			}
+		}
+		ids = Arrays.copyOf(ids, numericItems);
+		Arrays.sort(ids);
+		this.numericIds[t] = ids;
+		this.numericItems[t] = new int[numericItems];
+		for(int i=0;i<numericItems;i++)
+		{
+			this.numericItems[t][i] = items.get(Long.toString(ids[i]));
+		}
+	}
+
+	/**
+	 * Method that checks if an id is a number written as by Long.toString (without sign +, leading zeros or -0).
+	 */
+	private static boolean isNumericId(String id)
+	{
+		int start = id.startsWith("-") ? 1 : 0;
+		int digits = id.length() - start;
+		if(digits==0 || digits>19 || (id.charAt(start)=='0' && (digits>1 || start==1)))
+		{
+			return false;
+		}
+		for(int i=start;i<id.length();i++)
+		{
+			if(id.charAt(i)<'0' || id.charAt(i)>'9')
+			{
+				return false;
+			}
+		}
+		if(digits==19)
+		{
+			try
+			{
+				Long.parseLong(id);
+			}
+			catch (NumberFormatException nfe) {return false;}
+		}
+		return true;
+	}
+
+	/**
+	 * Method that sorts the distinct values of the classes of a test case. When several classes have the same value (1 and 1.0) only the
+	 * first one in the iteration order of the index is counted, as in ConfusionMatrix.getOrderedClassesBetweenTwoClasses.
+	 */
+	private void orderClasses(int t, HashMap<String, Integer> index)
+	{
+		List<Integer> representatives = new ArrayList<Integer>();
+		for (Map.Entry<String, Integer> entry : index.entrySet())
+		{
+			boolean found = false;
+			for(int representative: representatives)
+			{
+				if(Double.compare(this.classValues[t][representative], this.classValues[t][entry.getValue()])==0)
+				{
+					found = true;
+					break;
+				}
+			}
+			if(!found)
+			{
+				representatives.add(entry.getValue());
+			}
+		}
+		int numValues = representatives.size();
+		double[] values = new double[numValues];
+		for(int i=0;i<numValues;i++)
+		{
+			values[i] = this.classValues[t][representatives.get(i)];
+		}
+		Arrays.sort(values);
+		this.orderedValues[t] = values;
+		this.orderedClasses[t] = new int[numValues];
+		this.orderedCumulative[t] = new double[numValues+1];
+		for(int representative: representatives)
+		{
+			int position = Arrays.binarySearch(values, this.classValues[t][representative]);
+			this.orderedClasses[t][position] = representative;
+		}
+		for(int i=0;i<numValues;i++)
+		{
+			this.orderedCumulative[t][i+1] = this.orderedCumulative[t][i] + this.classFrequencies[t][getClassIgnoreCase(t, this.classes[t][this.orderedClasses[t][i]])];
+		}
+	}
+
+	/**
+	 * Method that calculates the proximity between a class (that may not be in the gold) and a class of the gold of a test case.
+	 *
+	 * @param t				Test case
+	 * @param ciClass		Name of the class
+	 * @param ciValue		Numeric value of the class
+	 * @param ciFrequency	Number of items of the class in the gold (0 if it is not in the gold)
+	 * @param cjClass		Class of the gold
+	 * @return				Proximity in bits
+	 */
+	private double proximity(int t, String ciClass, double ciValue, double ciFrequency, int cjClass)
+	{
+		double sumItemsClasses = 0.0d;
+		if(!ciClass.equalsIgnoreCase(this.classes[t][cjClass]))
+		{
+			double cjValue = this.classValues[t][cjClass];
+			if(ciValue<cjValue)
+			{
+				//Classes in (ci, cj]
+				sumItemsClasses = this.orderedCumulative[t][position(t, cjValue, true)] - this.orderedCumulative[t][position(t, ciValue, true)];
+			}
+			else
+			{
+				//Classes in [cj, ci)
+				sumItemsClasses = this.orderedCumulative[t][position(t, ciValue, false)] - this.orderedCumulative[t][position(t, cjValue, false)];
+			}
+		}
+		double proximity = 0.0d;
+		if(this.itemsInGold[t]!=0)
+		{
+			proximity = ((ciFrequency/2) + sumItemsClasses)/this.itemsInGold[t];
+		}
+		if(proximity>0.0d)
+		{
+			proximity = -1*Math.log10(proximity)/Math.log10(2);
+		}
+		return proximity;
+	}
+
+	/**
+	 * Number of distinct values of the test case lower than (or equal to, if inclusive) the given value.
+	 */
+	private int position(int t, double value, boolean inclusive)
+	{
+		double[] values = this.orderedValues[t];
+		int low = 0;
+		int high = values.length;
+		while(low<high)
+		{
+			int middle = (low+high)>>>1;
+			int comparison = Double.compare(values[middle], value);
+			if(comparison<0 || (inclusive && comparison==0))
+			{
+				low = middle+1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int getClassIgnoreCase(int t, String className)
+	{
+		for (Map.Entry<String, Integer> entry : this.classIndex.get(t).entrySet())
+		{
+			if(entry.getKey().equalsIgnoreCase(className))
+			{
+				return entry.getValue();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Method that returns the class of the gold of a test case with the given name, or -1 if the class is not in the gold of the test case.
+	 */
+	public int getClass(int t, String className)
+	{
+		Integer index = this.classIndex.get(t).get(className);
+		if(index!=null)
+		{
+			return index;
+		}
+		return getClassIgnoreCase(t, className);
+	}
+
+	/**
+	 * Method that returns the class of the gold of a test case with the given value, or -1 if no class of the test case has that value.
+	 */
+	public int getClass(int t, double value)
+	{
+		int position = position(t, value, false);
+		if(position<this.orderedValues[t].length && Double.compare(this.orderedValues[t][position], value)==0)
+		{
+			return this.orderedClasses[t][position];
+		}
+		return -1;
+	}
+
+	/**
+	 * Method that calculates the proximity between an output class and a class of the gold of a test case.
+	 *
+	 * @param t				Test case
+	 * @param classOutput	Class of the gold of the test case, or -1 if the output class is not in the gold
+	 * @param outputValue	Numeric value of the output class (only used if classOutput is -1)
+	 * @param classGold		Class of the gold of the test case
+	 * @return				Proximity in bits
+	 */
+	public double getProximity(int t, int classOutput, double outputValue, int classGold)
+	{
+		if(classOutput!=-1)
+		{
+			return this.proximities[t][classOutput][classGold];
+		}
+		return proximity(t, "", outputValue, 0.0d, classGold);
+	}
+
+	/**
+	 * Method that calculates the proximity between an output class, given by its name, and a class of the gold of a test case.
+	 */
+	public double getProximity(int t, String classOutput, int classGold)
+	{
+		int index = getClass(t, classOutput);
+		if(index!=-1)
+		{
+			return this.proximities[t][index][classGold];
+		}
+		return proximity(t, classOutput, Double.parseDouble(classOutput), 0.0d, classGold);
+	}
+
+	public int getNumTopics()
+	{
+		return this.topics.length;
+	}
+
+	public int getNumItems()
+	{
+		return this.ids.length;
+	}
+
+	public String getTopic(int t)
+	{
+		return this.topics[t];
+	}
+
+	/**
+	 * Method that returns the number of a test case, or -1 if it is not in the gold.
+	 */
+	public int getTopic(String topic)
+	{
+		Integer t = this.topicIndex.get(topic);
+		return t==null ? -1 : t;
+	}
+
+	public int getFirstItem(int t)
+	{
+		return this.firstItem[t];
+	}
+
+	/**
+	 * Method that returns the number of the test case of an item.
+	 */
+	public int getTopicOfItem(int item)
+	{
+		int low = 0;
+		int high = this.topics.length-1;
+		while(low<high)
+		{
+			int middle = (low+high+1)>>>1;
+			if(this.firstItem[middle]<=item)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle-1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Method that returns the number of an item of a test case, or -1 if it is not in the gold.
+	 */
+	public int getItem(int t, String id)
+	{
+		Integer item = this.itemIndex.get(t).get(id);
+		return item==null ? -1 : item;
+	}
+
+	/**
+	 * Method that returns the number of the item of a test case with a numeric id (the id written as by Long.toString), or -1 if it is not in the
+	 * gold.
+	 */
+	public int getItem(int t, long id)
+	{
+		int position = Arrays.binarySearch(this.numericIds[t], id);
+		return position<0 ? -1 : this.numericItems[t][position];
+	}
+
+	public String getId(int item)
+	{
+		return this.ids[item];
+	}
+
+	public int getGoldClass(int item)
+	{
+		return this.goldClass[item];
+	}
+
+	public int getNumClasses(int t)
+	{
+		return this.classes[t].length;
+	}
+
+	public String getClassName(int t, int index)
+	{
+		return this.classes[t][index];
+	}
+
+	public double getClassValue(int t, int index)
+	{
+		return this.classValues[t][index];
+	}
+
+	public int getClassFrequency(int t, int index)
+	{
+		return this.classFrequencies[t][index];
+	}
+
+	public int getItemsInGold(int t)
+	{
+		return this.itemsInGold[t];
+	}
+
+	/**
+	 * Method that returns the sum of the proximities of each item of the gold of a test case with itself.
+	 */
+	public double getDenominator(int t)
+	{
+		return this.denominators[t];
+	}
+}
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.csvreader.CsvReader;
 /**
@@ -32,6 +33,9 @@ import com.csvreader.CsvReader;
  * <p>Notice that, in the Ordinal Classification input, duplicate ids of items at TEST CASE level are not allowed. Similarly, empty values or different number of columns are not permitted. 
  * These restrictions will produce warnings when parsing the output file (the evaluation can continue but might not be reliable). These same restrictions will produce errors when 
  * parsing the goldstandard (the process will stop until errors are solved).</p>
+ * 
+ * <p>The files can also be in the binary submission format (see BinarySubmissionReader), which is recognized automatically. The same restrictions
+ * are applied, with the position of the record in the file as line.</p>
  *
  * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
  * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
@@ -51,12 +55,29 @@ public class OrdinalClassificationFormat
 	 * 				Topic			id				ordinalValue
 	 * */
 	private HashMap<String, HashMap<String,String>> tableOfTopics = new HashMap<String, HashMap<String,String>>();
+	
+	/**
+	 * Shard of the test cases kept in the table, and names of all the test cases of the file (only when a shard is set). 
+	 * */
+	private int shard = 0;
+	private int numShards = 1;
+	private HashMap<String, Boolean> topicsOfFile = null;
+	
+	/**
+	 * Fingerprint of the records of each test case of the table (see getFingerprint), updated as the records are added. 
+	 * */
+	private HashMap<String, long[]> fingerprints = new HashMap<String, long[]>();
 		
 	public boolean isGold() 
 	{
 		return isGold;
 	}
 
+	public void setGold(boolean isGold) 
+	{
+		this.isGold = isGold;
+	}
+
 	public String getPathFile()
 	{
 		return pathFile;
@@ -66,11 +87,30 @@ public class OrdinalClassificationFormat
 	{
 		return stop;
 	}
+	
+	/**
+	 * Method that keeps only the records of the test cases of a shard (see PartialResult) when the file is parsed. The items of the test cases
+	 * of other shards are not kept nor checked (they are checked by the process of their shard), only the names of the test cases.
+	 * 
+	 * @param shard		Shard to keep, from 0 to numShards-1
+	 * @param numShards	Number of shards
+	 */
+	public void setShard(int shard, int numShards)
+	{
+		this.shard = shard;
+		this.numShards = numShards;
+		this.topicsOfFile = new HashMap<String, Boolean>();
+	}
 
 	public void parseFile(boolean isGold, String pathFile)
 	{
 		this.isGold = isGold;
 		this.pathFile = pathFile;
+		if(BinarySubmissionReader.isBinary(pathFile))
+		{
+			parserBinary();
+			return;
+		}
 		try 
 		{
 			InputStream streamOutput = new FileInputStream(pathFile);
@@ -118,86 +158,7 @@ public class OrdinalClassificationFormat
             		}
             	}	            	
             	
-            	String topic = record[0];
-            	String id = record[1];
-            	String value = record[2];
-            	
-            	if(topic.equalsIgnoreCase("") || id.equalsIgnoreCase("") || value.equalsIgnoreCase(""))
-            	{
-            		if(this.isGold())
-            		{
-            			System.out.println("Format error: the columns in the rows cannot be empty. Line " + inLine);
-            			stop=true;
-    	            	continue;
-            		}
-            		else
-            		{
-            			System.out.println("Format warning: the columns in the rows cannot be empty. Line " + inLine);
-	            		continue;	
-            		}
-            	}
-            	
-            	/**
-            	 * Check if there are duplicated ids (not allowed in the output, permitted in the gold standard at test case level with different aspects).
-            	 * */
-            	if((this.getTableOfTopics().containsKey(topic))&&(this.getTableOfTopics().get(topic).containsKey(id)))
-            	{
-            		if(this.isGold())
-            		{
-            			System.out.println("Format error: this format does not allow duplicated ids at test case level. Line " + inLine);
-            			stop=true;
-    	            	continue;
-            		}
-            		else
-            		{
-            			System.out.println("Format warning: this format does not allow duplicated ids at test case level, EvALL will only consider the first instance. Line " + inLine);
-	            		continue;	
-            		}
-            	}
-            	
-            	/**
-            	 * If gold standard, check if the values are numerical.
-            	 * */
-        		if(!isNumeric(value))
-        		{
-            		if(this.isGold())
-            		{
-            			System.out.println("Format error: the value is not a valid number. Line " + inLine);
-            			stop=true;
-		            	continue;
-            		}
-            		else
-            		{
-            			System.out.println("Format warning: the value is not a valid number. Line " + inLine);
-	            		continue;	
-            		}
-        		}
-
-            	/**
-            	 * Everything is correct and we update the tables.
-            	 * */
-            	if (this.getTableOfTopics().get(topic)!=null)
-            	{
-            		
-            		HashMap<String,String> processed = this.getTableOfTopics().get(topic);
-            		processed.put(id, value);
-            		this.getTableOfTopics().put(topic,processed);
-            	}
-            	else
-            	{
-            		HashMap<String,String> processed = new HashMap<String,String>();
-            		processed.put(id, value);
-            		this.getTableOfTopics().put(topic, processed);
-            	}
-            	if(this.getFrecuencyOfClasses().get(value)==null)
-            	{
-            		this.getFrecuencyOfClasses().put(value, 1);
-            	}
-            	else
-            	{
-            		int occurrences = this.getFrecuencyOfClasses().get(value) +1;
-            		this.getFrecuencyOfClasses().put(value, occurrences);
-            	}		     
+            	addRecord(record[0], record[1], record[2], inLine);
             }
             if(inLine==0 && !reader.readRecord())
             {
@@ -217,6 +178,145 @@ public class OrdinalClassificationFormat
         } 
 	}
 	
+	/**
+	 * Method that parses a file in the binary submission format (see BinarySubmissionReader), with the restrictions of the tsv files.
+	 */
+	private void parserBinary()
+	{
+		System.out.println("Parsing file " + this.pathFile);
+		try
+		{
+			BinarySubmissionReader reader = new BinarySubmissionReader(this.pathFile);
+			if(reader.getNumRecords()==0)
+			{
+				System.out.println("Format error: The file is empty.");
+				stop=true;
+				return;
+			}
+			reader.read(new BinarySubmissionReader.RecordHandler()
+			{
+				public boolean record(String topic, String id, String value, int position)
+				{
+					addRecord(topic, id, value, position);
+					return true;
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: input file not well formed.");
+			stop=true;
+		}
+	}
+
+	/**
+	 * Method that checks a record and adds it to the table of test cases. The same restrictions as in the tsv file are applied: errors in the
+	 * gold standard stop the analysis, and warnings in the output discard the record.
+	 * 
+	 * @param topic		Test case
+	 * @param id		Id of the item
+	 * @param value		Ordinal value assigned to the item
+	 * @param inLine	Line (or position) of the record, used in the messages
+	 * @return			true if the record has been added
+	 */
+	public boolean addRecord(String topic, String id, String value, int inLine)
+	{
+		if(topic.equalsIgnoreCase("") || id.equalsIgnoreCase("") || value.equalsIgnoreCase(""))
+		{
+			if(this.isGold())
+			{
+				System.out.println("Format error: the columns in the rows cannot be empty. Line " + inLine);
+				stop=true;
+				return false;
+			}
+			else
+			{
+				System.out.println("Format warning: the columns in the rows cannot be empty. Line " + inLine);
+				return false;
+			}
+		}
+		
+		/**
+		 * If only a shard is kept, the names of all the test cases are added as in the table of test cases, so they are iterated in the same order.
+		 * */
+		if(this.topicsOfFile!=null)
+		{
+			if(isNumeric(value))
+			{
+				this.topicsOfFile.put(topic, true);
+			}
+			if(PartialResult.getShard(topic, this.numShards)!=this.shard)
+			{
+				return false;
+			}
+		}
+		
+		/**
+		 * Check if there are duplicated ids (not allowed in the output, permitted in the gold standard at test case level with different aspects).
+		 * */
+		if((this.getTableOfTopics().containsKey(topic))&&(this.getTableOfTopics().get(topic).containsKey(id)))
+		{
+			if(this.isGold())
+			{
+				System.out.println("Format error: this format does not allow duplicated ids at test case level. Line " + inLine);
+				stop=true;
+				return false;
+			}
+			else
+			{
+				System.out.println("Format warning: this format does not allow duplicated ids at test case level, EvALL will only consider the first instance. Line " + inLine);
+				return false;
+			}
+		}
+		
+		/**
+		 * If gold standard, check if the values are numerical.
+		 * */
+		if(!isNumeric(value))
+		{
+			if(this.isGold())
+			{
+				System.out.println("Format error: the value is not a valid number. Line " + inLine);
+				stop=true;
+				return false;
+			}
+			else
+			{
+				System.out.println("Format warning: the value is not a valid number. Line " + inLine);
+				return false;
+			}
+		}
+
+		/**
+		 * Everything is correct and we update the tables.
+		 * */
+		if (this.getTableOfTopics().get(topic)!=null)
+		{
+			
+			HashMap<String,String> processed = this.getTableOfTopics().get(topic);
+			processed.put(id, value);
+			this.getTableOfTopics().put(topic,processed);
+		}
+		else
+		{
+			HashMap<String,String> processed = new HashMap<String,String>();
+			processed.put(id, value);
+			this.getTableOfTopics().put(topic, processed);
+			this.fingerprints.put(topic, new long[3]);
+		}
+		addToFingerprint(this.fingerprints.get(topic), id, value);
+		if(this.getFrecuencyOfClasses().get(value)==null)
+		{
+			this.getFrecuencyOfClasses().put(value, 1);
+		}
+		else
+		{
+			int occurrences = this.getFrecuencyOfClasses().get(value) +1;
+			this.getFrecuencyOfClasses().put(value, occurrences);
+		}
+		return true;
+	}
+	
 	public boolean isNumeric(String str)
 	{
 		try 
@@ -238,6 +338,77 @@ public class OrdinalClassificationFormat
 		return tableOfTopics;
 	}
 	
+	/**
+	 * Method that returns the names of all the test cases of the file, in the order of the table of test cases. If a shard is set it also 
+	 * contains the test cases of other shards.
+	 */
+	public Set<String> getTopicsOfFile()
+	{
+		return this.topicsOfFile!=null ? this.topicsOfFile.keySet() : this.tableOfTopics.keySet();
+	}
+	
+	/**
+	 * Method that returns a fingerprint of the records of a test case: two sums of 64 bit hashes of the id and the value of each record, and the
+	 * number of records. The sums do not depend on the order of the lines, and they are calculated while parsing, so the records do not need to be
+	 * read again (test cases added directly to the table are calculated from it).
+	 * 
+	 * @param topic	Test case
+	 * @return		Fingerprint, or null if the test case is not in the table
+	 */
+	public long[] getFingerprint(String topic)
+	{
+		HashMap<String, String> values = this.tableOfTopics.get(topic);
+		if(values==null)
+		{
+			return null;
+		}
+		long[] fingerprint = this.fingerprints.get(topic);
+		if(fingerprint==null || fingerprint[2]!=values.size())
+		{
+			fingerprint = new long[3];
+			for (Map.Entry<String, String> entry : values.entrySet()) 
+			{
+				addToFingerprint(fingerprint, entry.getKey(), entry.getValue());
+			}
+		}
+		return fingerprint.clone();
+	}
+	
+	/**
+	 * Method that adds a record to a fingerprint: FNV-1a and a multiplicative hash of the id, its length and the value, each one finished with the
+	 * mixing function of MurmurHash3.
+	 */
+	private static void addToFingerprint(long[] fingerprint, String id, String value)
+	{
+		long fnv = 0xcbf29ce484222325L;
+		long multiplicative = 0L;
+		for(int i=0;i<id.length();i++)
+		{
+			fnv = (fnv ^ id.charAt(i))*0x100000001b3L;
+			multiplicative = (multiplicative + id.charAt(i))*0x9e3779b97f4a7c15L;
+		}
+		fnv = (fnv ^ id.length())*0x100000001b3L;
+		multiplicative = (multiplicative + id.length())*0x9e3779b97f4a7c15L;
+		for(int i=0;i<value.length();i++)
+		{
+			fnv = (fnv ^ value.charAt(i))*0x100000001b3L;
+			multiplicative = (multiplicative + value.charAt(i))*0x9e3779b97f4a7c15L;
+		}
+		fingerprint[0]+= mix(fnv);
+		fingerprint[1]+= mix(multiplicative);
+		fingerprint[2]++;
+	}
+	
+	private static long mix(long h)
+	{
+		h^= h>>>33;
+		h*= 0xff51afd7ed558ccdL;
+		h^= h>>>33;
+		h*= 0xc4ceb9fe1a85ec53L;
+		h^= h>>>33;
+		return h;
+	}
+	
 	public HashMap<String, Integer> getFrecuencyOfClasses() 
 	{
 		return frecuencyOfClasses;
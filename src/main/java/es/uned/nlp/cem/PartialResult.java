@@ -0,0 +1,490 @@
+package es.uned.nlp.cem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class contains the partial result of the evaluation of a shard of the test cases, so the evaluation can be split among several
+ * processes or nodes and merged afterwards. The test cases are assigned to the shards by the hash of their name. For each test case of the
+ * gold in the shard the partial result keeps the frequencies of the classes in the gold, the confusion matrix (with the items classified as classes
+ * that are not in the gold of the test case), and the numerator and denominator of CEM-Ord; it also keeps the test cases of the output not present in the gold. The position of each test case in the gold (or in the output)
+ * is kept too, so the merged report lists the test cases in the same order as the report of a single process. The files can be parsed with
+ * only the test cases of the shard (see OrdinalClassificationFormat.setShard).</p>
+ *
+ * <p>The partial results are written in a binary file (big endian, as DataOutputStream):<br>
+ *
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; magic "CEMP", version (int), shard and number of shards (int), path of the output (UTF),<br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; number of test cases of the gold (int), and for each one: name (UTF), position (int), numerator and denominator (double),
+ * 			number of classes K (int), K times name of the class (UTF) and frequency in the gold (int), K x K confusion matrix (int),
+ * 			number of classes of the output not in the gold M (int), M times name of the class (UTF) and K times number of items of each class of the gold (int),<br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; number of test cases of the output not in the gold (int), and for each one: name (UTF) and position (int).</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class PartialResult
+{
+	private static final int MAGIC = 0x43454D50;
+	private static final int VERSION = 2;
+
+	private int shard;
+	private int numShards;
+	private String pathOutput;
+	private LinkedHashMap<String, Topic> topics = new LinkedHashMap<String, Topic>();
+	private List<String> outputTopics = new ArrayList<String>();
+	private List<Integer> outputPositions = new ArrayList<Integer>();
+
+	public PartialResult(int shard, int numShards, String pathOutput)
+	{
+		this.shard = shard;
+		this.numShards = numShards;
+		this.pathOutput = pathOutput;
+	}
+
+	/**
+	 * Method that returns the shard of a test case. The hash of a String is the same in every JVM.
+	 */
+	public static int getShard(String topic, int numShards)
+	{
+		return (topic.hashCode() & 0x7fffffff) % numShards;
+	}
+
+	/**
+	 * Method that evaluates the test cases of a shard. The gold and the output can contain all the test cases or only those of the shard (parsed
+	 * with the same shard set).
+	 *
+	 * @param gold		Gold Standard OrdinalClassificationFormat object
+	 * @param output	System output OrdinalClassificationFormat object
+	 * @param shard		Shard to evaluate, from 0 to numShards-1
+	 * @param numShards	Number of shards
+	 * @return			Partial result of the shard
+	 */
+	public static PartialResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output, int shard, int numShards)
+	{
+		return evaluate(gold, output, shard, numShards, null);
+	}
+
+	/**
+	 * Method that evaluates the test cases of a shard, adding their errors to an analysis.
+	 *
+	 * @param errorAnalysis	Analysis of the errors of the shard, or null
+	 * @see #evaluate(OrdinalClassificationFormat, OrdinalClassificationFormat, int, int)
+	 */
+	public static PartialResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output, int shard, int numShards, 
+			ErrorAnalysis errorAnalysis)
+	{
+		Set<String> topics = new HashSet<String>();
+		List<String> order = new ArrayList<String>();
+		for(String topic: gold.getTopicsOfFile())
+		{
+			if(getShard(topic, numShards)==shard)
+			{
+				topics.add(topic);
+			}
+			order.add(topic);
+		}
+		CEMOrd CEMOrd = new CEMOrd(gold, output, topics);
+		CEMOrd.setErrorAnalysis(errorAnalysis);
+		CEMOrd.evaluate();
+
+		PartialResult partial = new PartialResult(shard, numShards, output.getPathFile());
+		ConfusionMatrix confusionMatrix = CEMOrd.getConfusionMatrix();
+		for(int position=0;position<order.size();position++)
+		{
+			String topic = order.get(position);
+			if(!topics.contains(topic))
+			{
+				continue;
+			}
+			Topic result = new Topic();
+			result.position = position;
+			result.confusionMatrix = confusionMatrix.getConfusionMatrix(topic);
+			int numClasses = result.confusionMatrix.length;
+			result.classes = new String[numClasses];
+			result.frequencies = new int[numClasses];
+			for(int i=0;i<numClasses;i++)
+			{
+				result.classes[i] = confusionMatrix.getClassName(topic, i);
+				result.frequencies[i] = confusionMatrix.getNumberInstancesPerClassInGold(topic, i);
+			}
+			result.jointCountsNotInGold = new LinkedHashMap<String, int[]>(confusionMatrix.getJointCountsNotInGold(topic));
+			result.numerator = CEMOrd.getResult().getNumerators().get(topic);
+			result.denominator = CEMOrd.getResult().getDenominators().get(topic);
+			partial.topics.put(topic, result);
+		}
+		int position = 0;
+		Set<String> goldTopics = gold.getTopicsOfFile();
+		for(String topic: output.getTopicsOfFile())
+		{
+			if(!goldTopics.contains(topic))
+			{
+				if(getShard(topic, numShards)==shard)
+				{
+					partial.outputTopics.add(topic);
+					partial.outputPositions.add(position);
+				}
+				position++;
+			}
+		}
+		return partial;
+	}
+
+	/**
+	 * Method that merges partial results.
+	 *
+	 * @return	The merged result, or null if the partial results cannot be merged (the errors are shown in the console)
+	 */
+	public static PartialResult merge(List<PartialResult> partials)
+	{
+		if(partials.isEmpty())
+		{
+			System.out.println("There are no partial results to merge");
+			return null;
+		}
+		PartialResult first = partials.get(0);
+		PartialResult merged = new PartialResult(0, 1, first.pathOutput);
+		final HashMap<String, Integer> positions = new HashMap<String, Integer>();
+		List<String> topics = new ArrayList<String>();
+		HashMap<String, Topic> results = new HashMap<String, Topic>();
+		boolean[] shards = new boolean[first.numShards];
+		for(PartialResult partial: partials)
+		{
+			if(partial.numShards!=first.numShards)
+			{
+				System.out.println("Format error: the partial results have a different number of shards");
+				return null;
+			}
+			if(shards[partial.shard])
+			{
+				System.out.println("Format error: the shard " + partial.shard + " is repeated");
+				return null;
+			}
+			shards[partial.shard] = true;
+			if(partial.pathOutput!=null && !partial.pathOutput.equals(first.pathOutput))
+			{
+				System.out.println("Format warning: the partial results come from different outputs: " + first.pathOutput + ", " + partial.pathOutput);
+			}
+			for(String topic: partial.topics.keySet())
+			{
+				if(results.containsKey(topic))
+				{
+					System.out.println("Format error: the test case " + topic + " is in more than one partial result");
+					return null;
+				}
+				results.put(topic, partial.topics.get(topic));
+				topics.add(topic);
+				positions.put(topic, partial.topics.get(topic).position);
+			}
+			for(int i=0;i<partial.outputTopics.size();i++)
+			{
+				merged.outputTopics.add(partial.outputTopics.get(i));
+				merged.outputPositions.add(partial.outputPositions.get(i));
+				positions.put(partial.outputTopics.get(i), partial.outputPositions.get(i));
+			}
+		}
+		//The test cases are sorted as in the gold and the output of a single process
+		Comparator<String> byPosition = new Comparator<String>()
+		{
+			public int compare(String one, String other)
+			{
+				return positions.get(one).compareTo(positions.get(other));
+			}
+		};
+		Collections.sort(topics, byPosition);
+		for(String topic: topics)
+		{
+			merged.topics.put(topic, results.get(topic));
+		}
+		Collections.sort(merged.outputTopics, byPosition);
+		merged.outputPositions.clear();
+		for(String topic: merged.outputTopics)
+		{
+			merged.outputPositions.add(positions.get(topic));
+		}
+		for(int i=0;i<shards.length;i++)
+		{
+			if(!shards[i])
+			{
+				System.out.println("Format warning: the shard " + i + " of " + shards.length + " is missing, its test cases are not in the result");
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Method that returns the results of the test cases, as calculated by the CEMOrd class.
+	 */
+	public EvALLResult toEvALLResult()
+	{
+		EvALLResult result = new EvALLResult();
+		for(String topic: this.topics.keySet())
+		{
+			Topic partial = this.topics.get(topic);
+			result.getResults().put(topic, partial.denominator!=0.0d ? partial.numerator/partial.denominator : 0.0d);
+			result.getNumerators().put(topic, partial.numerator);
+			result.getDenominators().put(topic, partial.denominator);
+		}
+		return result;
+	}
+
+	public void write(File file) throws IOException
+	{
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(this.shard);
+			output.writeInt(this.numShards);
+			output.writeUTF(this.pathOutput!=null ? this.pathOutput : "");
+			output.writeInt(this.topics.size());
+			for(String topic: this.topics.keySet())
+			{
+				Topic partial = this.topics.get(topic);
+				output.writeUTF(topic);
+				output.writeInt(partial.position);
+				output.writeDouble(partial.numerator);
+				output.writeDouble(partial.denominator);
+				output.writeInt(partial.classes.length);
+				for(int i=0;i<partial.classes.length;i++)
+				{
+					output.writeUTF(partial.classes[i]);
+					output.writeInt(partial.frequencies[i]);
+				}
+				for(int[] row: partial.confusionMatrix)
+				{
+					for(int occurrences: row)
+					{
+						output.writeInt(occurrences);
+					}
+				}
+				output.writeInt(partial.jointCountsNotInGold.size());
+				for(String outputClass: partial.jointCountsNotInGold.keySet())
+				{
+					output.writeUTF(outputClass);
+					for(int occurrences: partial.jointCountsNotInGold.get(outputClass))
+					{
+						output.writeInt(occurrences);
+					}
+				}
+			}
+			output.writeInt(this.outputTopics.size());
+			for(int i=0;i<this.outputTopics.size();i++)
+			{
+				output.writeUTF(this.outputTopics.get(i));
+				output.writeInt(this.outputPositions.get(i));
+			}
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+
+	/**
+	 * Method that reads a partial result.
+	 *
+	 * @return	The partial result, or null if the file is not a partial result of this version (the error is shown in the console)
+	 */
+	public static PartialResult read(File file)
+	{
+		try
+		{
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try
+			{
+				if(input.readInt()!=MAGIC)
+				{
+					System.out.println("Format error: the file is not a partial result: " + file);
+					return null;
+				}
+				int version = input.readInt();
+				if(version!=VERSION)
+				{
+					System.out.println("Format error: the version " + version + " of the partial result is not supported: " + file);
+					return null;
+				}
+				int shard = input.readInt();
+				int numShards = input.readInt();
+				String pathOutput = input.readUTF();
+				if(numShards<=0 || shard<0 || shard>=numShards)
+				{
+					System.out.println("Format error: the shard of the partial result is not valid: " + file);
+					return null;
+				}
+				PartialResult partial = new PartialResult(shard, numShards, pathOutput.equals("") ? null : pathOutput);
+				int numTopics = input.readInt();
+				for(int t=0;t<numTopics;t++)
+				{
+					String topic = input.readUTF();
+					Topic result = new Topic();
+					result.position = input.readInt();
+					result.numerator = input.readDouble();
+					result.denominator = input.readDouble();
+					int numClasses = input.readInt();
+					result.classes = new String[numClasses];
+					result.frequencies = new int[numClasses];
+					for(int i=0;i<numClasses;i++)
+					{
+						result.classes[i] = input.readUTF();
+						result.frequencies[i] = input.readInt();
+					}
+					result.confusionMatrix = new int[numClasses][numClasses];
+					for(int i=0;i<numClasses;i++)
+					{
+						for(int j=0;j<numClasses;j++)
+						{
+							result.confusionMatrix[i][j] = input.readInt();
+						}
+					}
+					result.jointCountsNotInGold = new LinkedHashMap<String, int[]>();
+					int numOutputClasses = input.readInt();
+					for(int c=0;c<numOutputClasses;c++)
+					{
+						String outputClass = input.readUTF();
+						int[] counts = new int[numClasses];
+						for(int i=0;i<numClasses;i++)
+						{
+							counts[i] = input.readInt();
+						}
+						result.jointCountsNotInGold.put(outputClass, counts);
+					}
+					partial.topics.put(topic, result);
+				}
+				int numOutputTopics = input.readInt();
+				for(int t=0;t<numOutputTopics;t++)
+				{
+					partial.outputTopics.add(input.readUTF());
+					partial.outputPositions.add(input.readInt());
+				}
+				return partial;
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: partial result not well formed: " + file);
+			return null;
+		}
+	}
+
+	public int getShard()
+	{
+		return shard;
+	}
+
+	public int getNumShards()
+	{
+		return numShards;
+	}
+
+	public String getPathOutput()
+	{
+		return pathOutput;
+	}
+
+	/**
+	 * Test cases of the gold in this result, in the order of the gold.
+	 */
+	public LinkedHashMap<String, Topic> getTopics()
+	{
+		return topics;
+	}
+
+	/**
+	 * Test cases of the output in this result that are not in the gold.
+	 */
+	public List<String> getOutputTopics()
+	{
+		return outputTopics;
+	}
+
+	/**
+	 * Partial result of a test case of the gold.
+	 */
+	public static class Topic
+	{
+		private int position;
+		private String[] classes;
+		private int[] frequencies;
+		private int[][] confusionMatrix;
+		private LinkedHashMap<String, int[]> jointCountsNotInGold;
+		private double numerator;
+		private double denominator;
+
+		/**
+		 * Position of the test case in the gold.
+		 */
+		public int getPosition()
+		{
+			return position;
+		}
+
+		/**
+		 * Classes of the gold, in the order of the confusion matrix.
+		 */
+		public String[] getClasses()
+		{
+			return classes;
+		}
+
+		public int[] getFrequencies()
+		{
+			return frequencies;
+		}
+
+		public int[][] getConfusionMatrix()
+		{
+			return confusionMatrix;
+		}
+
+		/**
+		 * For each class of the output that is not in the gold of the test case, the number of items of each class of the gold (in the order of
+		 * the confusion matrix) classified as it.
+		 */
+		public LinkedHashMap<String, int[]> getJointCountsNotInGold()
+		{
+			return jointCountsNotInGold;
+		}
+
+		public double getNumerator()
+		{
+			return numerator;
+		}
+
+		public double getDenominator()
+		{
+			return denominator;
+		}
+	}
+}
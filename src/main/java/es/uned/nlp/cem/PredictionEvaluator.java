@@ -0,0 +1,285 @@
+package es.uned.nlp.cem;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class evaluates predictions held in memory against a GoldIndex, without files or console output, so it can be used as a validation
+ * metric in a training loop. The predictions can be given as:<br>
+ *
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; an array with one value per item of the gold (in the order of the GoldIndex, NaN for items without prediction),<br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; arrays of items of the GoldIndex and their values,<br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; records (test case, id, value) with the same rules as the system output file, or an OrdinalClassificationFormat.</p>
+ *
+ * <p>Numeric values are matched with the class of the gold with the same value. Values given as text are matched with the class of the gold with
+ * the same spelling, as in the CEMOrd class. As in the system output, only the first prediction of each item is considered; predictions for
+ * test cases or items not in the gold and non numeric values are ignored and counted in getIgnored().</p>
+ *
+ * <pre>
+ * 	GoldIndex gold = new GoldIndex(goldStandard);
+ * 	PredictionEvaluator evaluator = new PredictionEvaluator(gold);
+ * 	double cemOrd = evaluator.evaluate(predictions).getAggregatedResult();
+ * </pre>
+ *
+ * <p>The evaluator reuses its buffers and the returned PredictionScores between evaluations, so it is not thread safe: use one evaluator per thread
+ * (the GoldIndex can be shared).</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class PredictionEvaluator
+{
+	private final GoldIndex gold;
+	/**
+	 * Proximity between the prediction and the gold of each item, and whether the item has already been predicted.
+	 */
+	private double[] proximities;
+	private boolean[] predicted;
+	private int ignored = 0;
+	private PredictionScores scores;
+
+	public PredictionEvaluator(GoldIndex gold)
+	{
+		this.gold = gold;
+		this.proximities = new double[gold.getNumItems()];
+		this.predicted = new boolean[gold.getNumItems()];
+		this.scores = new PredictionScores(gold);
+	}
+
+	/**
+	 * Method that evaluates one prediction per item of the gold.
+	 *
+	 * @param predictions	Value predicted for each item, in the order of the GoldIndex (NaN if the item is not predicted)
+	 * @return				Scores of the evaluation (overwritten by the next evaluation)
+	 */
+	public PredictionScores evaluate(double[] predictions)
+	{
+		if(predictions.length!=this.gold.getNumItems())
+		{
+			throw new IllegalArgumentException("The number of predictions must be " + this.gold.getNumItems());
+		}
+		reset();
+		for(int item=0;item<predictions.length;item++)
+		{
+			add(item, predictions[item]);
+		}
+		return scores();
+	}
+
+	/**
+	 * Method that evaluates the predictions of some items of the gold.
+	 *
+	 * @param items			Items of the GoldIndex
+	 * @param predictions	Value predicted for each item
+	 * @return				Scores of the evaluation (overwritten by the next evaluation)
+	 */
+	public PredictionScores evaluate(int[] items, double[] predictions)
+	{
+		if(items.length!=predictions.length)
+		{
+			throw new IllegalArgumentException("The number of items and predictions must be the same");
+		}
+		reset();
+		for(int i=0;i<items.length;i++)
+		{
+			add(items[i], predictions[i]);
+		}
+		return scores();
+	}
+
+	/**
+	 * Method that evaluates predictions given as records.
+	 *
+	 * @param predictions	Records with 3 values: test case, id and value
+	 * @return				Scores of the evaluation (overwritten by the next evaluation)
+	 */
+	public PredictionScores evaluate(Iterator<String[]> predictions)
+	{
+		reset();
+		while(predictions.hasNext())
+		{
+			String[] record = predictions.next();
+			if(record==null || record.length!=3)
+			{
+				this.ignored++;
+				continue;
+			}
+			add(record[0], record[1], record[2]);
+		}
+		return scores();
+	}
+
+	/**
+	 * Method that evaluates a system output already parsed.
+	 */
+	public PredictionScores evaluate(OrdinalClassificationFormat output)
+	{
+		reset();
+		for (Map.Entry<String, HashMap<String, String>> entry : output.getTableOfTopics().entrySet())
+		{
+			int t = this.gold.getTopic(entry.getKey());
+			if(t==-1)
+			{
+				this.ignored+= entry.getValue().size();
+				continue;
+			}
+			for (Map.Entry<String, String> entry2 : entry.getValue().entrySet())
+			{
+				add(t, this.gold.getItem(t, entry2.getKey()), entry2.getValue());
+			}
+		}
+		return scores();
+	}
+
+	/**
+	 * Method that discards the predictions added since the last evaluation.
+	 */
+	public void reset()
+	{
+		Arrays.fill(this.proximities, 0.0d);
+		Arrays.fill(this.predicted, false);
+		this.ignored = 0;
+	}
+
+	/**
+	 * Method that adds the prediction of an item of the gold given by its number.
+	 */
+	public void add(int item, double value)
+	{
+		if(item<0 || item>=this.predicted.length || Double.isNaN(value) || this.predicted[item])
+		{
+			if(item<0 || item>=this.predicted.length || !Double.isNaN(value))
+			{
+				this.ignored++;
+			}
+			return;
+		}
+		int t = this.gold.getTopicOfItem(item);
+		this.proximities[item] = this.gold.getProximity(t, this.gold.getClass(t, value), value, this.gold.getGoldClass(item));
+		this.predicted[item] = true;
+	}
+
+	/**
+	 * Method that adds the prediction of an item of the gold given by its number and class, as in GoldIndex.getProximity.
+	 *
+	 * @param item			Item of the GoldIndex
+	 * @param classOutput	Class of the gold of the test case of the item with the spelling of the prediction, or -1 if there is none
+	 * @param outputValue	Numeric value of the prediction (only used if classOutput is -1)
+	 */
+	public void add(int item, int classOutput, double outputValue)
+	{
+		if(item<0 || item>=this.predicted.length || this.predicted[item])
+		{
+			this.ignored++;
+			return;
+		}
+		int t = this.gold.getTopicOfItem(item);
+		this.proximities[item] = this.gold.getProximity(t, classOutput, outputValue, this.gold.getGoldClass(item));
+		this.predicted[item] = true;
+	}
+
+	/**
+	 * Method that adds the prediction of an item of the gold given by its number, with the value as text (matched with the classes of the gold by
+	 * their spelling, as in the records of the system output).
+	 */
+	public void add(int item, String value)
+	{
+		if(item<0 || item>=this.predicted.length)
+		{
+			this.ignored++;
+			return;
+		}
+		add(this.gold.getTopicOfItem(item), item, value);
+	}
+
+	/**
+	 * Method that adds a prediction given as a record of the system output.
+	 */
+	public void add(String topic, String id, String value)
+	{
+		int t = this.gold.getTopic(topic);
+		if(t==-1)
+		{
+			this.ignored++;
+			return;
+		}
+		add(t, this.gold.getItem(t, id), value);
+	}
+
+	private void add(int t, int item, String value)
+	{
+		if(item==-1 || this.predicted[item] || value==null || value.equalsIgnoreCase(""))
+		{
+			this.ignored++;
+			return;
+		}
+		int classOutput = this.gold.getClass(t, value);
+		double outputValue = 0.0d;
+		if(classOutput==-1)
+		{
+			try
+			{
+				outputValue = Double.parseDouble(value);
+			}
+			catch (NumberFormatException nfe)
+			{
+				this.ignored++;
+				return;
+			}
+		}
+		this.proximities[item] = this.gold.getProximity(t, classOutput, outputValue, this.gold.getGoldClass(item));
+		this.predicted[item] = true;
+	}
+
+	/**
+	 * Method that calculates the scores of the predictions added since the last reset.
+	 *
+	 * @return	Scores of the evaluation (overwritten by the next evaluation)
+	 */
+	public PredictionScores scores()
+	{
+		for(int t=0;t<this.gold.getNumTopics();t++)
+		{
+			double sumNumerator = 0.0d;
+			//Same order as the items of the CEMOrd class, so the sums are the same.
+			for(int item=this.gold.getFirstItem(t);item<this.gold.getFirstItem(t+1);item++)
+			{
+				if(this.predicted[item])
+				{
+					sumNumerator+= this.proximities[item];
+				}
+			}
+			this.scores.set(t, sumNumerator);
+		}
+		this.scores.aggregate();
+		return this.scores;
+	}
+
+	/**
+	 * Number of predictions ignored since the last reset.
+	 */
+	public int getIgnored()
+	{
+		return ignored;
+	}
+
+	public GoldIndex getGold()
+	{
+		return gold;
+	}
+}
@@ -0,0 +1,114 @@
+package es.uned.nlp.cem;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class contains the CEM-Ord of each test case of a GoldIndex, with its numerator and denominator, and the aggregated result (mean over
+ * the test cases, as EvALLResult.normalizeResult). The aggregated result is NaN if the gold has no test cases.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class PredictionScores
+{
+	private GoldIndex gold;
+	private double[] results;
+	private double[] numerators;
+	private double aggregatedResult = Double.NaN;
+
+	public PredictionScores(GoldIndex gold)
+	{
+		this.gold = gold;
+		this.results = new double[gold.getNumTopics()];
+		this.numerators = new double[gold.getNumTopics()];
+	}
+
+	/**
+	 * Method that sets the numerator of a test case and calculates its result.
+	 */
+	public void set(int t, double numerator)
+	{
+		this.numerators[t] = numerator;
+		double denominator = this.gold.getDenominator(t);
+		this.results[t] = denominator!=0.0d ? numerator/denominator : 0.0d;
+	}
+
+	/**
+	 * Method that calculates the mean of the results of the test cases.
+	 */
+	public void aggregate()
+	{
+		if(this.results.length==0)
+		{
+			this.aggregatedResult = Double.NaN;
+			return;
+		}
+		double total = 0;
+		for(int t=0;t<this.results.length;t++)
+		{
+			total = total + this.results[t];
+		}
+		this.aggregatedResult = total/this.results.length;
+	}
+
+	/**
+	 * Method that copies the scores in an EvALLResult, as if they had been calculated by the CEMOrd class.
+	 */
+	public EvALLResult toEvALLResult()
+	{
+		EvALLResult result = new EvALLResult();
+		for(int t=0;t<this.results.length;t++)
+		{
+			result.getResults().put(this.gold.getTopic(t), this.results[t]);
+			result.getNumerators().put(this.gold.getTopic(t), this.numerators[t]);
+			result.getDenominators().put(this.gold.getTopic(t), this.gold.getDenominator(t));
+		}
+		result.normalizeResult();
+		return result;
+	}
+
+	public double getResult(int t)
+	{
+		return this.results[t];
+	}
+
+	/**
+	 * Method that returns the result of a test case, or NaN if it is not in the gold.
+	 */
+	public double getResult(String topic)
+	{
+		int t = this.gold.getTopic(topic);
+		return t==-1 ? Double.NaN : this.results[t];
+	}
+
+	public double getNumerator(int t)
+	{
+		return this.numerators[t];
+	}
+
+	public double getDenominator(int t)
+	{
+		return this.gold.getDenominator(t);
+	}
+
+	public double getAggregatedResult()
+	{
+		return aggregatedResult;
+	}
+
+	public GoldIndex getGold()
+	{
+		return gold;
+	}
+}
@@ -0,0 +1,429 @@
+package es.uned.nlp.cem;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import com.csvreader.CsvReader;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class calculates the expected CEM-Ord of soft predictions: instead of a class, each item has a probability distribution over the
+ * classes c<sub>1</sub> ... c<sub>k</sub>, and the result is the expectation of CEM-Ord when the class of each item is drawn from its
+ * distribution. The denominator of a test case only depends on the gold, and the numerator is a sum over the items, so the expected numerator is
+ * the sum over the items of the expected proximity with their class of the gold: the product of the distribution of the item with the row of
+ * the class of the gold in a table of proximities, calculated once per test case from the GoldIndex. The result is exact, without sampling hard
+ * outputs.</p>
+ *
+ * <p>A hard prediction of the class c<sub>j</sub> is the distribution with probability 1 for c<sub>j</sub>, and obtains the same result as with
+ * PredictionEvaluator. The distributions must be non negative and add up to 1 (with a difference lower than TOLERANCE); the distributions that
+ * do not are ignored, unless setNormalize(true) is called, and then they only need to be non negative and not all zero, and they are normalized.
+ * Items without a distribution count as not predicted, and only the first distribution of each item is considered.</p>
+ *
+ * <p>The files of soft predictions are tsv files without headers with the columns test case, id and the k probabilities, in the order of the
+ * classes given to the evaluator.</p>
+ *
+ * <p>As PredictionEvaluator, the evaluator reuses its buffers and the returned PredictionScores, so it is not thread safe: use one evaluator per
+ * thread (the GoldIndex can be shared).</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class SoftPredictionEvaluator
+{
+	/**
+	 * Maximum difference between 1 and the sum of a distribution, unless the distributions are normalized.
+	 */
+	public static final double TOLERANCE = 1e-6;
+
+	private final GoldIndex gold;
+	private final String[] classes;
+	/**
+	 * proximities[t][g*k + j]: proximity between the class j of the distributions and the class g of the gold of the test case t, so the row of
+	 * each class of the gold is contiguous.
+	 */
+	private final double[][] proximities;
+	/**
+	 * Expected proximity between the prediction and the gold of each item, and whether the item has already been predicted.
+	 */
+	private double[] expected;
+	private boolean[] predicted;
+	private double[] row;
+	private int ignored = 0;
+	private boolean normalize = false;
+	private PredictionScores scores;
+
+	/**
+	 * @param gold		Gold standard
+	 * @param classes	Classes of the distributions, with numeric values
+	 */
+	public SoftPredictionEvaluator(GoldIndex gold, String[] classes)
+	{
+		for(String value: classes)
+		{
+			try
+			{
+				Double.parseDouble(value);
+			}
+			catch (NumberFormatException nfe)
+			{
+				throw new IllegalArgumentException("The classes must be numeric values: " + value);
+			}
+		}
+		this.gold = gold;
+		this.classes = classes.clone();
+		int k = classes.length;
+		this.proximities = new double[gold.getNumTopics()][];
+		for(int t=0;t<gold.getNumTopics();t++)
+		{
+			int numClasses = gold.getNumClasses(t);
+			this.proximities[t] = new double[numClasses*k];
+			for(int g=0;g<numClasses;g++)
+			{
+				for(int j=0;j<k;j++)
+				{
+					this.proximities[t][g*k + j] = gold.getProximity(t, classes[j], g);
+				}
+			}
+		}
+		this.expected = new double[gold.getNumItems()];
+		this.predicted = new boolean[gold.getNumItems()];
+		this.row = new double[k];
+		this.scores = new PredictionScores(gold);
+	}
+
+	/**
+	 * Method that evaluates one distribution per item of the gold.
+	 *
+	 * @param probabilities		Distributions of the items, in the order of the GoldIndex, k values per item (NaN if the item is not predicted)
+	 * @return					Scores of the evaluation (overwritten by the next evaluation)
+	 */
+	public PredictionScores evaluate(double[] probabilities)
+	{
+		if(probabilities.length!=this.gold.getNumItems()*this.classes.length)
+		{
+			throw new IllegalArgumentException("The number of probabilities must be " + this.gold.getNumItems()*this.classes.length);
+		}
+		reset();
+		for(int item=0;item<this.gold.getNumItems();item++)
+		{
+			add(item, probabilities, item*this.classes.length);
+		}
+		return scores();
+	}
+
+	/**
+	 * Method that evaluates the distributions of some items of the gold.
+	 *
+	 * @param items				Items of the GoldIndex
+	 * @param probabilities		Distributions of the items, k values per item
+	 * @return					Scores of the evaluation (overwritten by the next evaluation)
+	 */
+	public PredictionScores evaluate(int[] items, double[] probabilities)
+	{
+		if(probabilities.length!=items.length*this.classes.length)
+		{
+			throw new IllegalArgumentException("The number of probabilities must be " + items.length*this.classes.length);
+		}
+		reset();
+		for(int i=0;i<items.length;i++)
+		{
+			add(items[i], probabilities, i*this.classes.length);
+		}
+		return scores();
+	}
+
+	/**
+	 * Method that evaluates a file of soft predictions. The rows are checked as in OrdinalClassificationFormat: rows with a wrong number of
+	 * columns, empty or non numeric values, distributions that are not valid or duplicated ids of items of the gold are discarded with a warning.
+	 *
+	 * @param pathFile		Path of the file
+	 * @param outputTopics	Where the test cases of the file not present in the gold are added, in the order of OrdinalClassificationFormat
+	 * @return				Scores of the evaluation (overwritten by the next evaluation), or null if the file is not valid
+	 */
+	public PredictionScores evaluate(String pathFile, List<String> outputTopics)
+	{
+		reset();
+		int numColumns = this.classes.length + 2;
+		//Every test case of the file, so the order of the keys is the same as in the table of OrdinalClassificationFormat
+		HashMap<String, Boolean> topics = new HashMap<String, Boolean>();
+		int inLine = 0;
+		int rowWithWrongColumns = 0;
+		try
+		{
+			CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(pathFile), Charset.forName(StandardCharsets.UTF_8.displayName())), '\t');
+			reader.setUseTextQualifier(true);
+			reader.setTextQualifier('\"');
+			try
+			{
+				while(reader.readRecord())
+				{
+					inLine++;
+					if(reader.getColumnCount()!=numColumns)
+					{
+						System.out.println("Format warning: the number of columns must be " + numColumns + ". Line " + inLine);
+						rowWithWrongColumns++;
+						continue;
+					}
+					String topic = reader.get(0);
+					String id = reader.get(1);
+					if(!parseRow(reader, topic, id, inLine))
+					{
+						continue;
+					}
+					if(!topics.containsKey(topic))
+					{
+						topics.put(topic, this.gold.getTopic(topic)==-1);
+					}
+					int t = this.gold.getTopic(topic);
+					int item = t!=-1 ? this.gold.getItem(t, id) : -1;
+					if(item!=-1 && this.predicted[item])
+					{
+						System.out.println("Format warning: this format does not allow duplicated ids at test case level, EvALL will only consider the first instance. Line " + inLine);
+						continue;
+					}
+					add(item, this.row, 0);
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (FileNotFoundException e)
+		{
+			System.out.println("File not found: " + pathFile);
+			return null;
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: input file not well formed.");
+			return null;
+		}
+		if(inLine==0)
+		{
+			System.out.println("Format error: The file is empty.");
+			return null;
+		}
+		else if(rowWithWrongColumns==inLine)
+		{
+			System.out.println("Format error: The number of columns must be " + numColumns + " in all lines.");
+			return null;
+		}
+		for(String topic: topics.keySet())
+		{
+			if(topics.get(topic))
+			{
+				outputTopics.add(topic);
+			}
+		}
+		return scores();
+	}
+
+	/**
+	 * Method that checks a row of a file and copies its probabilities in the buffer of the evaluator.
+	 */
+	private boolean parseRow(CsvReader reader, String topic, String id, int inLine) throws IOException
+	{
+		if(topic.equalsIgnoreCase("") || id.equalsIgnoreCase(""))
+		{
+			System.out.println("Format warning: the columns in the rows cannot be empty. Line " + inLine);
+			return false;
+		}
+		double sum = 0.0d;
+		for(int j=0;j<this.row.length;j++)
+		{
+			String value = reader.get(j+2);
+			if(value.equalsIgnoreCase(""))
+			{
+				System.out.println("Format warning: the columns in the rows cannot be empty. Line " + inLine);
+				return false;
+			}
+			try
+			{
+				this.row[j] = Double.parseDouble(value);
+			}
+			catch (NumberFormatException nfe)
+			{
+				System.out.println("Format warning: the value is not a valid number. Line " + inLine);
+				return false;
+			}
+			sum+= this.row[j];
+		}
+		if(!isDistribution(this.row, 0, sum))
+		{
+			System.out.println("Format warning: the probabilities must be non negative and " + (this.normalize ? "not all zero" : "add up to 1") + ". Line " + inLine);
+			return false;
+		}
+		return true;
+	}
+
+	private boolean isDistribution(double[] probabilities, int offset, double sum)
+	{
+		if(!(sum>0.0d) || Double.isInfinite(sum))
+		{
+			return false;
+		}
+		for(int j=0;j<this.classes.length;j++)
+		{
+			if(!(probabilities[offset+j]>=0.0d))
+			{
+				return false;
+			}
+		}
+		return this.normalize || Math.abs(sum - 1.0d)<=TOLERANCE;
+	}
+
+	/**
+	 * Method that sets whether the distributions that do not add up to 1 are normalized (false by default, and they are ignored).
+	 */
+	public void setNormalize(boolean normalize)
+	{
+		this.normalize = normalize;
+	}
+
+	public boolean isNormalize()
+	{
+		return normalize;
+	}
+
+	/**
+	 * Method that discards the distributions added since the last evaluation.
+	 */
+	public void reset()
+	{
+		Arrays.fill(this.expected, 0.0d);
+		Arrays.fill(this.predicted, false);
+		this.ignored = 0;
+	}
+
+	/**
+	 * Method that adds the distribution of an item of the gold given by its number.
+	 *
+	 * @param item				Item of the GoldIndex
+	 * @param probabilities		Array with the distribution
+	 * @param offset			Position of the probability of the first class in the array
+	 */
+	public void add(int item, double[] probabilities, int offset)
+	{
+		int k = this.classes.length;
+		if(item<0 || item>=this.predicted.length || this.predicted[item] || Double.isNaN(probabilities[offset]))
+		{
+			if(item<0 || item>=this.predicted.length || !Double.isNaN(probabilities[offset]))
+			{
+				this.ignored++;
+			}
+			return;
+		}
+		int t = topicOf(item);
+		double[] table = this.proximities[t];
+		int base = this.gold.getGoldClass(item)*k;
+		double sum = 0.0d;
+		double product = 0.0d;
+		for(int j=0;j<k;j++)
+		{
+			sum+= probabilities[offset+j];
+			product+= probabilities[offset+j]*table[base+j];
+		}
+		if(!isDistribution(probabilities, offset, sum))
+		{
+			this.ignored++;
+			return;
+		}
+		this.expected[item] = product/sum;
+		this.predicted[item] = true;
+	}
+
+	/**
+	 * Method that adds the distribution of an item given by its test case and id.
+	 */
+	public void add(String topic, String id, double[] probabilities)
+	{
+		if(probabilities.length!=this.classes.length)
+		{
+			throw new IllegalArgumentException("The number of probabilities must be " + this.classes.length);
+		}
+		int t = this.gold.getTopic(topic);
+		int item = t!=-1 ? this.gold.getItem(t, id) : -1;
+		add(item, probabilities, 0);
+	}
+
+	/**
+	 * Method that calculates the scores of the distributions added since the last reset.
+	 *
+	 * @return	Scores of the evaluation (overwritten by the next evaluation)
+	 */
+	public PredictionScores scores()
+	{
+		for(int t=0;t<this.gold.getNumTopics();t++)
+		{
+			double sumNumerator = 0.0d;
+			for(int item=this.gold.getFirstItem(t);item<this.gold.getFirstItem(t+1);item++)
+			{
+				if(this.predicted[item])
+				{
+					sumNumerator+= this.expected[item];
+				}
+			}
+			this.scores.set(t, sumNumerator);
+		}
+		this.scores.aggregate();
+		return this.scores;
+	}
+
+	private int topicOf(int item)
+	{
+		int low = 0;
+		int high = this.gold.getNumTopics()-1;
+		while(low<high)
+		{
+			int middle = (low+high+1)>>>1;
+			if(this.gold.getFirstItem(middle)<=item)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle-1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Number of distributions ignored since the last reset (items not in the gold, repeated items and distributions that are not valid, or that
+	 * do not add up to 1 if they are not normalized).
+	 */
+	public int getIgnored()
+	{
+		return ignored;
+	}
+
+	public String[] getClasses()
+	{
+		return this.classes.clone();
+	}
+
+	public GoldIndex getGold()
+	{
+		return gold;
+	}
+}
@@ -0,0 +1,539 @@
+package es.uned.nlp.cem;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class calibrates the thresholds that cut continuous scores into ordinal classes. The system output contains a score per item instead
+ * of a class, and with the labels l<sub>0</sub> &lt; ... &lt; l<sub>m</sub> and the thresholds t<sub>1</sub> &lt; ... &lt; t<sub>m</sub> an item
+ * with t<sub>j</sub> &lt;= score &lt; t<sub>j+1</sub> is classified as l<sub>j</sub>. Every increasing combination of thresholds taken from a grid
+ * of values is evaluated.</p>
+ *
+ * <p>The items are read only once: for each test case and class of the gold, the number of items with a score lower than each value of the grid
+ * is counted. The number of items of each class of the gold classified as each label by a combination of thresholds is a difference of those counts,
+ * and the CEM-Ord of the combination is calculated from them with the proximities of the GoldIndex, so each combination costs
+ * (test cases x labels x classes) operations whatever the number of items.</p>
+ *
+ * <p>Only the best combinations (DEFAULT_TOP unless setTop is called) are kept, in a heap over primitive arrays, so the memory does not depend
+ * on the number of combinations of the grid. Items whose score is NaN are not classified (as if they were not in the output) and they are
+ * counted in getNumNaN().</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class ThresholdSweep
+{
+	public static final int DEFAULT_TOP = 1000;
+
+	private GoldIndex gold;
+	private String[] labels;
+	private double[] grid;
+
+	/**
+	 * below[t][g][k]: items of the class k of the gold of the test case t with a score lower than grid[g]. scored[t][k]: items with a score.
+	 */
+	private int[][][] below;
+	private int[][] scored;
+	/**
+	 * proximities[t][j][k]: proximity between the label j and the class k of the gold of the test case t.
+	 */
+	private double[][][] proximities;
+
+	private int top = DEFAULT_TOP;
+	private long numCandidates = 0;
+	private int numNaN = 0;
+	/**
+	 * Best combinations: CEM-Ord, order of evaluation and positions in the grid of the thresholds (numThresholds per combination). During the
+	 * sweep they are a heap whose root is the combination that leaves it first (the lowest CEM-Ord, and the last one evaluated among equal
+	 * results); after the sweep they are sorted from the best.
+	 */
+	private double[] bestResults = new double[0];
+	private long[] bestOrder = new long[0];
+	private int[] bestCombinations = new int[0];
+	private int numBest = 0;
+
+	/**
+	 * @param gold		Gold standard
+	 * @param scores	System output with a score per item
+	 * @param labels	Labels in strictly ascending order
+	 * @param grid		Values that the thresholds can take (repeated values are considered once)
+	 */
+	public ThresholdSweep(GoldIndex gold, OrdinalClassificationFormat scores, String[] labels, double[] grid)
+	{
+		if(!isAscending(labels))
+		{
+			throw new IllegalArgumentException("The labels must be numeric values in ascending order: " + Arrays.toString(labels));
+		}
+		this.gold = gold;
+		this.labels = labels;
+		this.grid = distinct(grid);
+
+		int numTopics = gold.getNumTopics();
+		this.below = new int[numTopics][][];
+		this.scored = new int[numTopics][];
+		this.proximities = new double[numTopics][][];
+		for(int t=0;t<numTopics;t++)
+		{
+			int numClasses = gold.getNumClasses(t);
+			this.proximities[t] = new double[labels.length][numClasses];
+			for(int j=0;j<labels.length;j++)
+			{
+				for(int k=0;k<numClasses;k++)
+				{
+					this.proximities[t][j][k] = gold.getProximity(t, labels[j], k);
+				}
+			}
+
+			//histogram[b][k]: items of the class k whose score is lower than grid[b] and not lower than grid[b-1]
+			int[][] histogram = new int[this.grid.length+1][numClasses];
+			this.scored[t] = new int[numClasses];
+			HashMap<String, String> values = scores.getTableOfTopics().get(gold.getTopic(t));
+			if(values!=null)
+			{
+				for (Map.Entry<String, String> entry : values.entrySet())
+				{
+					int item = gold.getItem(t, entry.getKey());
+					if(item==-1)
+					{
+						continue;
+					}
+					double score = Double.parseDouble(entry.getValue());
+					if(Double.isNaN(score))
+					{
+						this.numNaN++;
+						continue;
+					}
+					int k = gold.getGoldClass(item);
+					histogram[bucket(score)][k]++;
+					this.scored[t][k]++;
+				}
+			}
+			this.below[t] = new int[this.grid.length][numClasses];
+			for(int g=0;g<this.grid.length;g++)
+			{
+				for(int k=0;k<numClasses;k++)
+				{
+					this.below[t][g][k] = (g==0 ? 0 : this.below[t][g-1][k]) + histogram[g][k];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of values of the grid lower than or equal to the score.
+	 */
+	private int bucket(double score)
+	{
+		int low = 0;
+		int high = this.grid.length;
+		while(low<high)
+		{
+			int middle = (low+high)>>>1;
+			if(this.grid[middle]<=score)
+			{
+				low = middle+1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Method that evaluates every increasing combination of thresholds of the grid, keeping the best ones.
+	 */
+	public void run()
+	{
+		int numThresholds = this.labels.length-1;
+		this.numCandidates = 0;
+		this.numBest = 0;
+		if(numThresholds>this.grid.length)
+		{
+			return;
+		}
+		int capacity = (int) countCombinations(this.grid.length, numThresholds, this.top);
+		this.bestResults = new double[capacity];
+		this.bestOrder = new long[capacity];
+		this.bestCombinations = new int[capacity*numThresholds];
+		int[] combination = new int[numThresholds];
+		for(int i=0;i<numThresholds;i++)
+		{
+			combination[i] = i;
+		}
+		while(true)
+		{
+			offer(evaluate(combination), this.numCandidates++, combination);
+			//Next combination in lexicographic order
+			int i = numThresholds-1;
+			while(i>=0 && combination[i]==this.grid.length-numThresholds+i)
+			{
+				i--;
+			}
+			if(i<0)
+			{
+				break;
+			}
+			combination[i]++;
+			for(int j=i+1;j<numThresholds;j++)
+			{
+				combination[j] = combination[j-1]+1;
+			}
+		}
+		//Heapsort: the combination that leaves the heap first goes to the end
+		for(int size=this.numBest-1;size>0;size--)
+		{
+			swap(0, size);
+			siftDown(0, size);
+		}
+	}
+
+	private void offer(double result, long order, int[] combination)
+	{
+		int position;
+		if(this.numBest<this.bestResults.length)
+		{
+			position = this.numBest++;
+		}
+		else if(Double.compare(result, this.bestResults[0])>0)
+		{
+			position = 0;
+		}
+		else
+		{
+			return;
+		}
+		this.bestResults[position] = result;
+		this.bestOrder[position] = order;
+		System.arraycopy(combination, 0, this.bestCombinations, position*combination.length, combination.length);
+		if(position==0 && this.numBest==this.bestResults.length && this.numBest>1)
+		{
+			siftDown(0, this.numBest);
+		}
+		else
+		{
+			siftUp(position);
+		}
+	}
+
+	/**
+	 * Whether the combination i leaves the heap before the combination j.
+	 */
+	private boolean leavesFirst(int i, int j)
+	{
+		int comparison = Double.compare(this.bestResults[i], this.bestResults[j]);
+		return comparison<0 || (comparison==0 && this.bestOrder[i]>this.bestOrder[j]);
+	}
+
+	private void siftUp(int i)
+	{
+		while(i>0 && leavesFirst(i, (i-1)/2))
+		{
+			swap(i, (i-1)/2);
+			i = (i-1)/2;
+		}
+	}
+
+	private void siftDown(int i, int size)
+	{
+		while(true)
+		{
+			int first = i;
+			for(int child=2*i+1;child<=2*i+2 && child<size;child++)
+			{
+				if(leavesFirst(child, first))
+				{
+					first = child;
+				}
+			}
+			if(first==i)
+			{
+				return;
+			}
+			swap(i, first);
+			i = first;
+		}
+	}
+
+	private void swap(int i, int j)
+	{
+		double result = this.bestResults[i];
+		this.bestResults[i] = this.bestResults[j];
+		this.bestResults[j] = result;
+		long order = this.bestOrder[i];
+		this.bestOrder[i] = this.bestOrder[j];
+		this.bestOrder[j] = order;
+		int numThresholds = this.labels.length-1;
+		for(int k=0;k<numThresholds;k++)
+		{
+			int position = this.bestCombinations[i*numThresholds+k];
+			this.bestCombinations[i*numThresholds+k] = this.bestCombinations[j*numThresholds+k];
+			this.bestCombinations[j*numThresholds+k] = position;
+		}
+	}
+
+	/**
+	 * Number of combinations of k elements of n, or the limit if it is greater.
+	 */
+	private static long countCombinations(int n, int k, long limit)
+	{
+		long result = 1;
+		for(int i=1;i<=k;i++)
+		{
+			result = result*(n-k+i)/i;
+			if(result>limit)
+			{
+				return limit;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Method that calculates the aggregated CEM-Ord of a combination of thresholds.
+	 *
+	 * @param combination	Position in the grid of each threshold, in ascending order
+	 * @return				Mean of the CEM-Ord of the test cases
+	 */
+	public double evaluate(int[] combination)
+	{
+		int numTopics = this.gold.getNumTopics();
+		if(numTopics==0)
+		{
+			return Double.NaN;
+		}
+		double total = 0.0d;
+		for(int t=0;t<numTopics;t++)
+		{
+			int numClasses = this.gold.getNumClasses(t);
+			double sumNumerator = 0.0d;
+			for(int j=0;j<this.labels.length;j++)
+			{
+				int[] from = j==0 ? null : this.below[t][combination[j-1]];
+				int[] to = j==combination.length ? this.scored[t] : this.below[t][combination[j]];
+				for(int k=0;k<numClasses;k++)
+				{
+					int items = to[k] - (from==null ? 0 : from[k]);
+					if(items!=0)
+					{
+						sumNumerator+= items*this.proximities[t][j][k];
+					}
+				}
+			}
+			double denominator = this.gold.getDenominator(t);
+			total+= denominator!=0.0d ? sumNumerator/denominator : 0.0d;
+		}
+		return total/numTopics;
+	}
+
+	/**
+	 * Method that returns the values of the thresholds of one of the best combinations.
+	 *
+	 * @param rank	Position of the combination among the best ones (0 is the best; combinations with the same result keep the order of the sweep)
+	 */
+	public double[] getThresholds(int rank)
+	{
+		double[] thresholds = new double[this.labels.length-1];
+		for(int i=0;i<thresholds.length;i++)
+		{
+			thresholds[i] = this.grid[this.bestCombinations[rank*thresholds.length+i]];
+		}
+		return thresholds;
+	}
+
+	/**
+	 * Aggregated CEM-Ord of one of the best combinations (see getThresholds).
+	 */
+	public double getResult(int rank)
+	{
+		return this.bestResults[rank];
+	}
+
+	/**
+	 * Number of best combinations kept by the last sweep.
+	 */
+	public int getNumBest()
+	{
+		return numBest;
+	}
+
+	/**
+	 * Number of combinations evaluated by the last sweep.
+	 */
+	public long getNumCandidates()
+	{
+		return numCandidates;
+	}
+
+	/**
+	 * Number of items of the gold whose score is NaN.
+	 */
+	public int getNumNaN()
+	{
+		return numNaN;
+	}
+
+	public int getTop()
+	{
+		return top;
+	}
+
+	/**
+	 * Method that sets the number of best combinations kept by the sweep.
+	 */
+	public void setTop(int top)
+	{
+		if(top<=0)
+		{
+			throw new IllegalArgumentException("The number of combinations must be positive: " + top);
+		}
+		this.top = top;
+	}
+
+	public String[] getLabels()
+	{
+		return labels;
+	}
+
+	/**
+	 * Method that returns the classes of the gold standard in ascending order, to be used as labels. Different spellings of the same value
+	 * (1 and 1.0) are a single label.
+	 */
+	public static String[] getLabels(OrdinalClassificationFormat gold)
+	{
+		List<String> classes = new ArrayList<String>(gold.getFrecuencyOfClasses().keySet());
+		Collections.sort(classes, new Comparator<String>()
+		{
+			public int compare(String one, String other)
+			{
+				int comparison = Double.compare(Double.parseDouble(one), Double.parseDouble(other));
+				return comparison!=0 ? comparison : one.compareTo(other);
+			}
+		});
+		List<String> labels = new ArrayList<String>();
+		for(String value: classes)
+		{
+			if(labels.isEmpty() || Double.parseDouble(labels.get(labels.size()-1))!=Double.parseDouble(value))
+			{
+				labels.add(value);
+			}
+		}
+		return labels.toArray(new String[labels.size()]);
+	}
+
+	/**
+	 * Method that checks that the labels are numeric values in strictly ascending order.
+	 */
+	public static boolean isAscending(String[] labels)
+	{
+		double previous = Double.NEGATIVE_INFINITY;
+		for(int j=0;j<labels.length;j++)
+		{
+			double value;
+			try
+			{
+				value = Double.parseDouble(labels[j]);
+			}
+			catch (NumberFormatException nfe)
+			{
+				return false;
+			}
+			if(Double.isNaN(value) || (j>0 && value<=previous))
+			{
+				return false;
+			}
+			previous = value;
+		}
+		return true;
+	}
+
+	/**
+	 * Method that returns the distinct values of a grid in ascending order.
+	 */
+	private static double[] distinct(double[] values)
+	{
+		TreeSet<Double> set = new TreeSet<Double>();
+		for(double value: values)
+		{
+			set.add(value);
+		}
+		double[] grid = new double[set.size()];
+		int i = 0;
+		for(double value: set)
+		{
+			grid[i++] = value;
+		}
+		return grid;
+	}
+
+	/**
+	 * Method that parses a grid given as a list of values (0.2,0.4,0.6) or as a range (from:to:step).
+	 *
+	 * @return	Distinct values of the grid in ascending order, or null if the grid is not well formed
+	 */
+	public static double[] parseGrid(String specification)
+	{
+		try
+		{
+			String[] range = specification.split(":");
+			if(range.length==3)
+			{
+				//BigDecimal avoids the accumulation of rounding errors in the steps
+				BigDecimal from = new BigDecimal(range[0]);
+				BigDecimal to = new BigDecimal(range[1]);
+				BigDecimal step = new BigDecimal(range[2]);
+				if(step.signum()<=0)
+				{
+					return null;
+				}
+				List<Double> values = new ArrayList<Double>();
+				for(BigDecimal value = from; value.compareTo(to)<=0; value = value.add(step))
+				{
+					values.add(value.doubleValue());
+				}
+				double[] grid = new double[values.size()];
+				for(int i=0;i<grid.length;i++)
+				{
+					grid[i] = values.get(i);
+				}
+				return distinct(grid);
+			}
+			String[] list = specification.split(",");
+			double[] grid = new double[list.length];
+			for(int i=0;i<list.length;i++)
+			{
+				grid[i] = Double.parseDouble(list[i].trim());
+				if(Double.isNaN(grid[i]) || Double.isInfinite(grid[i]))
+				{
+					return null;
+				}
+			}
+			return distinct(grid);
+		}
+		catch (NumberFormatException nfe)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package es.uned.nlp.cem;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.csvreader.CsvReader;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class aggregates the results of the test cases in groups (for example, the test case RL2013D01E001 belongs to the domain RL2013D01).
+ * Each level of groups is defined with one of the following specifications:<br>
+ *
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; <i>prefix:N</i> the group is the first N characters of the test case.<br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; <i>regex:PATTERN</i> the group is the first capturing group (or the whole match) of the pattern.<br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; <i>file:PATH</i> the group is read from a 2 column tsv file: TEST CASE and GROUP (only the first row of a test case is considered).</p>
+ *
+ * <p>Test cases that do not belong to any group of a level are not included in that level. For each group the macro average (mean of the
+ * CEM-Ord of its test cases) and the micro average (sum of numerators divided by sum of denominators) are calculated in one pass from the
+ * partial sums stored in the EvALLResult, without evaluating again.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class TopicGroups
+{
+	public static final String ALL = "ALL";
+
+	private List<String> levels = new ArrayList<String>();
+	private List<Integer> prefixes = new ArrayList<Integer>();
+	private List<Pattern> patterns = new ArrayList<Pattern>();
+	private List<HashMap<String, String>> mappings = new ArrayList<HashMap<String, String>>();
+	private boolean stop = false;
+
+	/**
+	 * Method that adds a level of groups from its specification (prefix:N, regex:PATTERN or file:PATH)
+	 *
+	 * @param specification	Definition of the level
+	 */
+	public void addLevel(String specification)
+	{
+		int separator = specification.indexOf(':');
+		String type = separator==-1 ? specification : specification.substring(0, separator);
+		String value = separator==-1 ? "" : specification.substring(separator+1);
+		Integer prefix = null;
+		Pattern pattern = null;
+		HashMap<String, String> mapping = null;
+		if(type.equalsIgnoreCase("prefix"))
+		{
+			try
+			{
+				prefix = Integer.parseInt(value);
+			}
+			catch (NumberFormatException nfe) {}
+			if(prefix==null || prefix<=0)
+			{
+				System.out.println("Format error: the length of the prefix is not a valid number: " + specification);
+				stop = true;
+				return;
+			}
+		}
+		else if(type.equalsIgnoreCase("regex"))
+		{
+			try
+			{
+				pattern = Pattern.compile(value);
+			}
+			catch (PatternSyntaxException pse)
+			{
+				System.out.println("Format error: the regular expression is not valid: " + specification);
+				stop = true;
+				return;
+			}
+		}
+		else if(type.equalsIgnoreCase("file"))
+		{
+			mapping = parseMappingFile(value);
+			if(mapping==null)
+			{
+				return;
+			}
+		}
+		else
+		{
+			System.out.println("Format error: the groups must be defined as prefix:N, regex:PATTERN or file:PATH: " + specification);
+			stop = true;
+			return;
+		}
+		this.levels.add(specification);
+		this.prefixes.add(prefix);
+		this.patterns.add(pattern);
+		this.mappings.add(mapping);
+	}
+
+	private HashMap<String, String> parseMappingFile(String pathFile)
+	{
+		HashMap<String, String> mapping = new HashMap<String, String>();
+		try
+		{
+			CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(pathFile), Charset.forName(StandardCharsets.UTF_8.displayName())), '\t');
+			reader.setUseTextQualifier(true);
+			reader.setTextQualifier('\"');
+			int inLine = 0;
+			while(reader.readRecord())
+			{
+				inLine++;
+				String[] record = reader.getValues();
+				if(record.length!=2 || record[0].equalsIgnoreCase("") || record[1].equalsIgnoreCase(""))
+				{
+					System.out.println("Format error: the groups file must have 2 non empty columns. Line " + inLine);
+					stop = true;
+					continue;
+				}
+				if(mapping.containsKey(record[0]))
+				{
+					System.out.println("Format warning: the test case is already in the groups file, EvALL will only consider the first instance. Line " + inLine);
+					continue;
+				}
+				mapping.put(record[0], record[1]);
+			}
+			reader.close();
+		}
+		catch (FileNotFoundException e1)
+		{
+			System.out.println("File not found: " + pathFile);
+			stop = true;
+			return null;
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: groups file not well formed.");
+			stop = true;
+			return null;
+		}
+		return mapping;
+	}
+
+	/**
+	 * Method that returns the group of a test case in a level, or null if it does not belong to any group
+	 */
+	public String getGroup(int level, String topic)
+	{
+		if(this.prefixes.get(level)!=null)
+		{
+			int prefix = this.prefixes.get(level);
+			return topic.length()>=prefix ? topic.substring(0, prefix) : null;
+		}
+		if(this.patterns.get(level)!=null)
+		{
+			Matcher matcher = this.patterns.get(level).matcher(topic);
+			if(!matcher.find())
+			{
+				return null;
+			}
+			return matcher.groupCount()>0 ? matcher.group(1) : matcher.group();
+		}
+		return this.mappings.get(level).get(topic);
+	}
+
+	/**
+	 * Method that calculates the macro and micro averages of every group in every level, plus the level ALL with all the test cases.
+	 *
+	 * @param result	Result with the CEM-Ord, numerator and denominator of each test case
+	 * @return			For each level (in the order they were added), the groups sorted by name
+	 */
+	public LinkedHashMap<String, TreeMap<String, Rollup>> rollup(EvALLResult result)
+	{
+		LinkedHashMap<String, TreeMap<String, Rollup>> rollups = new LinkedHashMap<String, TreeMap<String, Rollup>>();
+		TreeMap<String, Rollup> all = new TreeMap<String, Rollup>();
+		all.put(ALL, new Rollup());
+		rollups.put(ALL, all);
+		for(String level: this.levels)
+		{
+			rollups.put(level, new TreeMap<String, Rollup>());
+		}
+
+		for (Map.Entry<String, Double> entry : result.getResults().entrySet())
+		{
+			if(entry.getValue()==null)
+			{
+				continue;
+			}
+			String topic = entry.getKey();
+			double cemOrd = entry.getValue();
+			double numerator = result.getNumerators().get(topic)!=null ? result.getNumerators().get(topic) : 0.0d;
+			double denominator = result.getDenominators().get(topic)!=null ? result.getDenominators().get(topic) : 0.0d;
+
+			all.get(ALL).add(cemOrd, numerator, denominator);
+			for(int level=0;level<this.levels.size();level++)
+			{
+				String group = getGroup(level, topic);
+				if(group==null)
+				{
+					continue;
+				}
+				TreeMap<String, Rollup> groups = rollups.get(this.levels.get(level));
+				if(groups.get(group)==null)
+				{
+					groups.put(group, new Rollup());
+				}
+				groups.get(group).add(cemOrd, numerator, denominator);
+			}
+		}
+		return rollups;
+	}
+
+	public List<String> getLevels()
+	{
+		return levels;
+	}
+
+	public boolean isStop()
+	{
+		return stop;
+	}
+
+	/**
+	 * Accumulated results of a group of test cases.
+	 */
+	public static class Rollup
+	{
+		private int numTopics = 0;
+		private double sumResults = 0.0d;
+		private double numerator = 0.0d;
+		private double denominator = 0.0d;
+
+		public void add(double cemOrd, double numerator, double denominator)
+		{
+			this.numTopics++;
+			this.sumResults+= cemOrd;
+			this.numerator+= numerator;
+			this.denominator+= denominator;
+		}
+
+		public int getNumTopics()
+		{
+			return numTopics;
+		}
+
+		/**
+		 * Mean of the CEM-Ord of the test cases in the group.
+		 */
+		public double getMacroAverage()
+		{
+			return this.numTopics==0 ? 0.0d : this.sumResults/this.numTopics;
+		}
+
+		/**
+		 * CEM-Ord of the group as a single test case: sum of numerators divided by sum of denominators.
+		 */
+		public double getMicroAverage()
+		{
+			return this.denominator==0.0d ? 0.0d : this.numerator/this.denominator;
+		}
+
+		public double getNumerator()
+		{
+			return numerator;
+		}
+
+		public double getDenominator()
+		{
+			return denominator;
+		}
+	}
+}
@@ -0,0 +1,687 @@
+package es.uned.nlp.cem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class is a persistent cache of the results of each test case, so a system output that only differs from a previous one in a few
+ * test cases only evaluates those test cases. The key of an entry is a digest of the fingerprints of the test case in the gold and in the output
+ * (see OrdinalClassificationFormat.getFingerprint, calculated while parsing and independent of the order of the lines), and the entry contains the
+ * joint counts of the test case (frequencies of the classes of the gold, confusion matrix and items classified as classes not in the gold) and the
+ * numerator and denominator of CEM-Ord.</p>
+ *
+ * <p>The entries are appended to a single log file in the directory of the cache, and their positions are kept in memory from the least to the
+ * most recently used. The positions are written in an index file when the cache is closed, so the log is only read again after a crash. When the
+ * log exceeds the maximum size, the least recently used entries are discarded until the entries take 90% of it, and the log is compacted. The
+ * log is locked while the cache is open, so a directory is used by one process at a time.</p>
+ *
+ * <p>The files are binary (big endian, as DataOutputStream):<br>
+ *
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; log: magic "CEMC", version (int), and for each entry: key (16 bytes), length of the entry (int), CRC-32 of the key and
+ * 			the entry (int) and the entry: numerator and denominator (double), number of classes K (int), K times name of the class (UTF) and frequency
+ * 			in the gold (int), K x K confusion matrix (int), number of classes of the output not in the gold M (int), M times name of the class (UTF)
+ * 			and K times number of items of each class of the gold (int),<br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; index: magic "CEMC", version (int), length of the log (long), number of entries (int), and for each entry from the
+ * 			least recently used: key (16 bytes), position in the log (long) and length of the record (int).</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class TopicResultCache
+{
+	private static final int MAGIC = 0x43454D43;
+	private static final int VERSION = 3;
+	private static final String LOG = "results.log";
+	private static final String INDEX = "results.idx";
+	private static final int HEADER = 8;
+	private static final int KEY_LENGTH = 16;
+	/**
+	 * Key, length and CRC-32 before the entry.
+	 */
+	private static final int RECORD_HEADER = KEY_LENGTH + 8;
+	/**
+	 * Fraction of the maximum size taken by the entries after an eviction, so the log is not compacted again on the next entry.
+	 */
+	private static final double LOW_WATER = 0.9d;
+
+	private File directory;
+	private long maxSize;
+	private RandomAccessFile log;
+	private FileLock lock;
+	private long length = 0;
+	/**
+	 * Position and length of the record of each key in the log, from the least to the most recently used.
+	 */
+	private LinkedHashMap<String, long[]> index = new LinkedHashMap<String, long[]>(16, 0.75f, true);
+	private long liveSize = 0;
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * @param pathDirectory	Directory of the cache (created if it does not exist)
+	 * @param maxSize		Maximum size of the cache in bytes
+	 */
+	public TopicResultCache(String pathDirectory, long maxSize)
+	{
+		this.directory = new File(pathDirectory);
+		this.maxSize = maxSize;
+		if(!this.directory.isDirectory() && !this.directory.mkdirs())
+		{
+			System.out.println("The directory of the cache cannot be created: " + pathDirectory);
+			return;
+		}
+		try
+		{
+			this.log = new RandomAccessFile(new File(this.directory, LOG), "rw");
+			try
+			{
+				this.lock = this.log.getChannel().tryLock();
+			}
+			catch (OverlappingFileLockException e) {}
+			if(this.lock==null)
+			{
+				System.out.println("The cache is being used by another process, it is not used: " + pathDirectory);
+				this.log.close();
+				this.log = null;
+				return;
+			}
+			load();
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: the cache cannot be opened: " + e.getMessage());
+			close();
+		}
+	}
+
+	/**
+	 * Method that calculates the key of a test case from its fingerprints in the gold and in the output.
+	 *
+	 * @param gold		Gold standard
+	 * @param output	System output
+	 * @param topic		Test case of the gold
+	 * @return			Hexadecimal key
+	 */
+	public static String key(OrdinalClassificationFormat gold, OrdinalClassificationFormat output, String topic)
+	{
+		long[] goldFingerprint = gold.getFingerprint(topic);
+		if(goldFingerprint==null)
+		{
+			throw new IllegalArgumentException("The test case is not in the gold: " + topic);
+		}
+		long[] outputFingerprint = output.getFingerprint(topic);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 1 + 6*8);
+		buffer.putInt(VERSION);
+		for(long value: goldFingerprint)
+		{
+			buffer.putLong(value);
+		}
+		//A test case that is not in the output is not the same as an empty one
+		buffer.put((byte) (outputFingerprint!=null ? 1 : 0));
+		for(long value: outputFingerprint!=null ? outputFingerprint : new long[3])
+		{
+			buffer.putLong(value);
+		}
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(buffer.array());
+			StringBuilder key = new StringBuilder();
+			for(int i=0;i<KEY_LENGTH;i++)
+			{
+				key.append(String.format("%02x", digest[i] & 0xff));
+			}
+			return key.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Method that reads an entry of the cache.
+	 *
+	 * @return	The entry, or null if it is not in the cache
+	 */
+	public synchronized Entry get(String key)
+	{
+		long[] position = this.log!=null ? this.index.get(key) : null;
+		Entry entry = position!=null ? read(key, position) : null;
+		if(entry!=null)
+		{
+			this.hits++;
+		}
+		else
+		{
+			//A damaged entry is evaluated again
+			if(position!=null)
+			{
+				this.index.remove(key);
+				this.liveSize-= position[1];
+			}
+			this.misses++;
+		}
+		return entry;
+	}
+
+	private Entry read(String key, long[] position)
+	{
+		try
+		{
+			byte[] record = new byte[(int) position[1]];
+			this.log.seek(position[0]);
+			this.log.readFully(record);
+			if(!Arrays.equals(Arrays.copyOf(record, KEY_LENGTH), toBytes(key)) || !isValid(record))
+			{
+				return null;
+			}
+			return Entry.read(new DataInputStream(new ByteArrayInputStream(record, RECORD_HEADER, record.length-RECORD_HEADER)));
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Method that writes an entry in the cache, discarding the least recently used entries if the cache is full.
+	 */
+	public synchronized void put(String key, Entry entry)
+	{
+		if(this.log==null)
+		{
+			return;
+		}
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(bytes);
+			output.write(toBytes(key));
+			output.writeInt(0);
+			output.writeInt(0);
+			entry.write(output);
+			output.close();
+			byte[] record = bytes.toByteArray();
+			ByteBuffer.wrap(record).putInt(KEY_LENGTH, record.length-RECORD_HEADER).putInt(KEY_LENGTH+4, checksum(record));
+
+			this.log.seek(this.length);
+			this.log.write(record);
+			long[] previous = this.index.put(key, new long[]{this.length, record.length});
+			if(previous!=null)
+			{
+				this.liveSize-= previous[1];
+			}
+			this.liveSize+= record.length;
+			this.length+= record.length;
+			if(this.length>this.maxSize)
+			{
+				evict();
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("IO error: the entry cannot be written in the cache: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Method that discards the least recently used entries until they take LOW_WATER of the maximum size, and compacts the log.
+	 */
+	private void evict() throws IOException
+	{
+		long target = (long) (this.maxSize*LOW_WATER) - HEADER;
+		Iterator<Map.Entry<String, long[]>> iterator = this.index.entrySet().iterator();
+		while(this.liveSize>target && iterator.hasNext())
+		{
+			this.liveSize-= iterator.next().getValue()[1];
+			iterator.remove();
+		}
+
+		//The records are moved to the beginning of the log in the order of the file, so a record is never overwritten before it is copied
+		long[][] positions = this.index.values().toArray(new long[this.index.size()][]);
+		Arrays.sort(positions, new Comparator<long[]>()
+		{
+			public int compare(long[] one, long[] other)
+			{
+				return Long.compare(one[0], other[0]);
+			}
+		});
+		long destination = HEADER;
+		byte[] record = new byte[0];
+		for(long[] position: positions)
+		{
+			if(position[0]!=destination)
+			{
+				if(record.length<position[1])
+				{
+					record = new byte[(int) position[1]];
+				}
+				this.log.seek(position[0]);
+				this.log.readFully(record, 0, (int) position[1]);
+				this.log.seek(destination);
+				this.log.write(record, 0, (int) position[1]);
+				position[0] = destination;
+			}
+			destination+= position[1];
+		}
+		this.log.setLength(destination);
+		this.length = destination;
+	}
+
+	/**
+	 * Method that reads the index written when the cache was closed, and the entries appended to the log after it.
+	 */
+	private void load() throws IOException
+	{
+		File indexFile = new File(this.directory, INDEX);
+		this.length = this.log.length();
+		boolean valid = this.length>=HEADER;
+		if(valid)
+		{
+			this.log.seek(0);
+			valid = this.log.readInt()==MAGIC && this.log.readInt()==VERSION;
+		}
+		if(!valid)
+		{
+			//A new cache, or a cache of another version
+			this.log.setLength(0);
+			this.log.writeInt(MAGIC);
+			this.log.writeInt(VERSION);
+			this.length = HEADER;
+			indexFile.delete();
+			return;
+		}
+
+		long position = readIndex(indexFile);
+		while(position + RECORD_HEADER<=this.length)
+		{
+			this.log.seek(position + KEY_LENGTH);
+			int size = this.log.readInt();
+			if(size<0 || position + RECORD_HEADER + size>this.length)
+			{
+				break;
+			}
+			byte[] record = new byte[RECORD_HEADER + size];
+			this.log.seek(position);
+			this.log.readFully(record);
+			if(!isValid(record))
+			{
+				break;
+			}
+			String key = toHex(record);
+			long[] previous = this.index.put(key, new long[]{position, record.length});
+			if(previous!=null)
+			{
+				this.liveSize-= previous[1];
+			}
+			this.liveSize+= record.length;
+			position+= record.length;
+		}
+		//An entry that was being written when the process stopped
+		if(position<this.length)
+		{
+			this.log.setLength(position);
+			this.length = position;
+		}
+		//The index is written again when the cache is closed; until then the log is read again if the process stops
+		indexFile.delete();
+	}
+
+	/**
+	 * @return	Position of the log after the last entry of the index (after the header if the index cannot be read)
+	 */
+	private long readIndex(File indexFile)
+	{
+		if(!indexFile.isFile())
+		{
+			return HEADER;
+		}
+		try
+		{
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try
+			{
+				if(input.readInt()!=MAGIC || input.readInt()!=VERSION)
+				{
+					return HEADER;
+				}
+				long covered = input.readLong();
+				int numEntries = input.readInt();
+				if(covered<HEADER || covered>this.length)
+				{
+					return HEADER;
+				}
+				byte[] key = new byte[KEY_LENGTH];
+				for(int i=0;i<numEntries;i++)
+				{
+					input.readFully(key);
+					long position = input.readLong();
+					int size = input.readInt();
+					if(position<HEADER || size<RECORD_HEADER || position + size>covered)
+					{
+						this.index.clear();
+						this.liveSize = 0;
+						return HEADER;
+					}
+					this.index.put(toHex(key), new long[]{position, size});
+					this.liveSize+= size;
+				}
+				return covered;
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+		catch (IOException e)
+		{
+			this.index.clear();
+			this.liveSize = 0;
+			return HEADER;
+		}
+	}
+
+	/**
+	 * Method that writes the index and releases the log. The cache cannot be used after it is closed.
+	 */
+	public synchronized void close()
+	{
+		if(this.log==null)
+		{
+			return;
+		}
+		File indexFile = new File(this.directory, INDEX);
+		File temporary = new File(this.directory, INDEX + ".tmp");
+		try
+		{
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			try
+			{
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeLong(this.length);
+				output.writeInt(this.index.size());
+				for(Map.Entry<String, long[]> entry: this.index.entrySet())
+				{
+					output.write(toBytes(entry.getKey()));
+					output.writeLong(entry.getValue()[0]);
+					output.writeInt((int) entry.getValue()[1]);
+				}
+			}
+			finally
+			{
+				output.close();
+			}
+			Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			temporary.delete();
+		}
+		try
+		{
+			if(this.lock!=null)
+			{
+				this.lock.release();
+			}
+			this.log.close();
+		}
+		catch (IOException e) {}
+		this.log = null;
+		this.lock = null;
+	}
+
+	private static boolean isValid(byte[] record)
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		return buffer.getInt(KEY_LENGTH)==record.length-RECORD_HEADER && buffer.getInt(KEY_LENGTH+4)==checksum(record);
+	}
+
+	/**
+	 * CRC-32 of the key and the entry of a record.
+	 */
+	private static int checksum(byte[] record)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, KEY_LENGTH);
+		crc.update(record, RECORD_HEADER, record.length-RECORD_HEADER);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] toBytes(String key)
+	{
+		if(key.length()!=2*KEY_LENGTH)
+		{
+			throw new IllegalArgumentException("The key must have " + 2*KEY_LENGTH + " hexadecimal digits: " + key);
+		}
+		byte[] bytes = new byte[KEY_LENGTH];
+		for(int i=0;i<KEY_LENGTH;i++)
+		{
+			bytes[i] = (byte) Integer.parseInt(key.substring(2*i, 2*i+2), 16);
+		}
+		return bytes;
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder key = new StringBuilder();
+		for(int i=0;i<KEY_LENGTH;i++)
+		{
+			key.append(String.format("%02x", bytes[i] & 0xff));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Size of the log in bytes.
+	 */
+	public synchronized long getSize()
+	{
+		return length;
+	}
+
+	/**
+	 * Number of entries in the cache.
+	 */
+	public synchronized int getNumEntries()
+	{
+		return this.index.size();
+	}
+
+	/**
+	 * Number of entries found by get since the cache was opened.
+	 */
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Number of entries not found (or not readable) by get since the cache was opened.
+	 */
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Cached result of a test case.
+	 */
+	public static class Entry
+	{
+		private double numerator;
+		private double denominator;
+		private String[] classes;
+		private int[] frequencies;
+		private int[][] confusionMatrix;
+		private LinkedHashMap<String, int[]> jointCountsNotInGold;
+
+		private Entry()
+		{
+		}
+
+		/**
+		 * Method that creates the entry of a test case evaluated with the CEMOrd class.
+		 */
+		public Entry(CEMOrd CEMOrd, String topic)
+		{
+			ConfusionMatrix confusionMatrix = CEMOrd.getConfusionMatrix();
+			this.numerator = CEMOrd.getResult().getNumerators().get(topic);
+			this.denominator = CEMOrd.getResult().getDenominators().get(topic);
+			this.confusionMatrix = confusionMatrix.getConfusionMatrix(topic);
+			int numClasses = this.confusionMatrix.length;
+			this.classes = new String[numClasses];
+			this.frequencies = new int[numClasses];
+			for(int i=0;i<numClasses;i++)
+			{
+				this.classes[i] = confusionMatrix.getClassName(topic, i);
+				this.frequencies[i] = confusionMatrix.getNumberInstancesPerClassInGold(topic, i);
+			}
+			this.jointCountsNotInGold = new LinkedHashMap<String, int[]>(confusionMatrix.getJointCountsNotInGold(topic));
+		}
+
+		private void write(DataOutputStream output) throws IOException
+		{
+			output.writeDouble(this.numerator);
+			output.writeDouble(this.denominator);
+			output.writeInt(this.classes.length);
+			for(int i=0;i<this.classes.length;i++)
+			{
+				output.writeUTF(this.classes[i]);
+				output.writeInt(this.frequencies[i]);
+			}
+			for(int[] row: this.confusionMatrix)
+			{
+				for(int occurrences: row)
+				{
+					output.writeInt(occurrences);
+				}
+			}
+			output.writeInt(this.jointCountsNotInGold.size());
+			for(Map.Entry<String, int[]> entry: this.jointCountsNotInGold.entrySet())
+			{
+				output.writeUTF(entry.getKey());
+				for(int occurrences: entry.getValue())
+				{
+					output.writeInt(occurrences);
+				}
+			}
+		}
+
+		private static Entry read(DataInputStream input) throws IOException
+		{
+			Entry entry = new Entry();
+			entry.numerator = input.readDouble();
+			entry.denominator = input.readDouble();
+			int numClasses = input.readInt();
+			entry.classes = new String[numClasses];
+			entry.frequencies = new int[numClasses];
+			for(int i=0;i<numClasses;i++)
+			{
+				entry.classes[i] = input.readUTF();
+				entry.frequencies[i] = input.readInt();
+			}
+			entry.confusionMatrix = new int[numClasses][numClasses];
+			for(int i=0;i<numClasses;i++)
+			{
+				for(int j=0;j<numClasses;j++)
+				{
+					entry.confusionMatrix[i][j] = input.readInt();
+				}
+			}
+			int numNotInGold = input.readInt();
+			entry.jointCountsNotInGold = new LinkedHashMap<String, int[]>();
+			for(int c=0;c<numNotInGold;c++)
+			{
+				String outputClass = input.readUTF();
+				int[] counts = new int[numClasses];
+				for(int i=0;i<numClasses;i++)
+				{
+					counts[i] = input.readInt();
+				}
+				entry.jointCountsNotInGold.put(outputClass, counts);
+			}
+			return entry;
+		}
+
+		public double getNumerator()
+		{
+			return numerator;
+		}
+
+		public double getDenominator()
+		{
+			return denominator;
+		}
+
+		/**
+		 * Classes of the gold, in the order of the confusion matrix.
+		 */
+		public String[] getClasses()
+		{
+			return classes;
+		}
+
+		public int[] getFrequencies()
+		{
+			return frequencies;
+		}
+
+		public int[][] getConfusionMatrix()
+		{
+			return confusionMatrix;
+		}
+
+		/**
+		 * For each class of the output that is not in the gold of the test case, the number of items of each class of the gold (in the order of
+		 * the confusion matrix) classified as it.
+		 */
+		public LinkedHashMap<String, int[]> getJointCountsNotInGold()
+		{
+			return jointCountsNotInGold;
+		}
+
+		/**
+		 * CEM-Ord of the test case, calculated as in the CEMOrd class.
+		 */
+		public double getResult()
+		{
+			return this.denominator!=0.0d ? this.numerator/this.denominator : 0.0d;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package es.uned.nlp.cem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * <p>This source implements the metric CEM-Ord presented in the paper:<br><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp;<strong> An Effectiveness Metric for Ordinal Classification: Formal Properties and Experimental Results</strong><br>
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; Enrique Amigó, Julio Gonzalo, Stefano Mizzaro, Jorge Carrillo-de-Albornoz. In proceedings of ACL'20.</p>
+ *
+ * <p>If you use this resource please cite it.</p>
+ *
+ * <p>This package is also included in the <strong>Evaluation Service EvALL</strong>, along with extended features: pdf and latex reports,
+ * other ordinal metrics, statistical significance test, etc. The code of EvALL project will be released by the end of 2020 (https://github.com/EvALLTEAM/EvALLToolkit).</p>
+ *
+ * <p>This class calculates the CEM-Ord that a system output would obtain if some classes were merged or renamed, in the gold and in the output
+ * (for instance, -1 and 0 collapsed, or a scale of 5 points mapped to 3 points). Each scenario is a mapping from values to classes, and is
+ * evaluated from the confusion matrix of the original evaluation: the frequencies of the classes in the gold and the number of items of each
+ * class of the gold classified as each class of the output are remapped, and the proximities and the results are calculated from them, so the
+ * items are not read again.</p>
+ *
+ * <p>The result of a scenario is the same as the result of the CEMOrd class with the files rewritten with the mapping.</p>
+ *
+ * <p><strong>Author</strong>: Jorge Carrillo-de-Albornoz<br>
+ * <strong>Evaluation Service EvALL</strong>: <a href="http://www.evall.uned.es">www.evall.uned.es</a><br>
+ * <strong>EvALL source code</strong>: <a href="https://github.com/EvALLTEAM/EvALLToolkit">GitHub Repository</a><br>
+ * <strong>Copyright (c) 2020 </strong>- Permission is granted for use and modification of this file for research, non-commercial purposes.<br></p>
+ */
+
+public class WhatIfAnalysis
+{
+	private ConfusionMatrix confusionMatrix;
+	private List<String> topics;
+
+	/**
+	 * @param CEMOrd	Evaluation of the system output (evaluate must have been called)
+	 */
+	public WhatIfAnalysis(CEMOrd CEMOrd)
+	{
+		this.confusionMatrix = CEMOrd.getConfusionMatrix();
+		this.topics = new ArrayList<String>(CEMOrd.getResult().getResults().keySet());
+	}
+
+	/**
+	 * Method that evaluates a scenario.
+	 *
+	 * @param mapping	New class of each value (values not in the mapping keep their class)
+	 * @return			Results of the test cases, with their numerators and denominators
+	 */
+	public EvALLResult evaluate(HashMap<Double, String> mapping)
+	{
+		ConfusionMatrix remapped = this.confusionMatrix.remapClasses(mapping);
+		EvALLResult result = new EvALLResult();
+		for(String topic: this.topics)
+		{
+			int[][] confMat = remapped.getConfusionMatrix(topic);
+			String[] classes = new String[confMat.length];
+			for(int i=0;i<classes.length;i++)
+			{
+				classes[i] = remapped.getClassName(topic, i);
+			}
+
+			double sumNumerator = 0.0d;
+			double sumDenominator = 0.0d;
+			for(int i=0;i<classes.length;i++)
+			{
+				for(int j=0;j<classes.length;j++)
+				{
+					if(confMat[i][j]!=0)
+					{
+						sumNumerator+= confMat[i][j]*remapped.proximityCEM(topic, classes[j], classes[i]);
+					}
+				}
+				sumDenominator+= remapped.getNumberInstancesPerClassInGold(topic, i)*remapped.proximityCEM(topic, classes[i], classes[i]);
+			}
+			for (Map.Entry<String, int[]> entry : remapped.getJointCountsNotInGold(topic).entrySet())
+			{
+				for(int i=0;i<classes.length;i++)
+				{
+					if(entry.getValue()[i]!=0)
+					{
+						sumNumerator+= entry.getValue()[i]*remapped.proximityCEM(topic, entry.getKey(), classes[i]);
+					}
+				}
+			}
+
+			result.getResults().put(topic, sumDenominator!=0.0d ? sumNumerator/sumDenominator : 0.0d);
+			result.getNumerators().put(topic, sumNumerator);
+			result.getDenominators().put(topic, sumDenominator);
+		}
+		return result;
+	}
+
+	/**
+	 * Method that parses a mapping given as a list of value=class (-1=0,0=0 or 1=1,2=1,3=2,4=3,5=3).
+	 *
+	 * @return	The mapping, or null if it is not well formed
+	 */
+	public static HashMap<Double, String> parseMapping(String specification)
+	{
+		HashMap<Double, String> mapping = new HashMap<Double, String>();
+		for(String pair: specification.split(","))
+		{
+			String[] values = pair.split("=");
+			if(values.length!=2)
+			{
+				return null;
+			}
+			try
+			{
+				Double.parseDouble(values[1].trim());
+				mapping.put(Double.parseDouble(values[0].trim()), values[1].trim());
+			}
+			catch (NumberFormatException nfe)
+			{
+				return null;
+			}
+		}
+		return mapping;
+	}
+}
@@ -0,0 +1,99 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks every ordered pair of the agreement matrix of variations of the gold standard of the test resources (with some items missing or
+ * relabelled, also with another spelling of a class) against the reference implementation, and that an interrupted calculation fails.
+ */
+public class AgreementMatrixTest
+{
+	private static final int ANNOTATIONS = 4;
+	private static final String[] CLASSES = {"-1", "0", "1", "1.0"};
+
+	@Test
+	public void everyOrderedPair() throws InterruptedException
+	{
+		List<OrdinalClassificationFormat> annotations = annotations();
+		AgreementMatrix matrix = new AgreementMatrix(annotations);
+		matrix.setThreads(3);
+		matrix.compute();
+		for(int gold=0;gold<ANNOTATIONS;gold++)
+		{
+			for(int output=0;output<ANNOTATIONS;output++)
+			{
+				if(gold==output)
+				{
+					assertTrue(Double.isNaN(matrix.getResult(gold, output)));
+					continue;
+				}
+				EvALLResult expected = DifferentialHarness.reference(annotations.get(gold), annotations.get(output));
+				assertEquals(gold + " " + output, expected.getAggregatedResult(), matrix.getResult(gold, output), DifferentialHarness.TOLERANCE);
+			}
+		}
+	}
+
+	@Test
+	public void interrupted()
+	{
+		AgreementMatrix matrix = new AgreementMatrix(annotations());
+		Thread.currentThread().interrupt();
+		try
+		{
+			matrix.compute();
+			fail("The calculation must fail when the thread is interrupted");
+		}
+		catch (InterruptedException e)
+		{
+			assertFalse(Thread.currentThread().isInterrupted());
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+	}
+
+	private List<OrdinalClassificationFormat> annotations()
+	{
+		OrdinalClassificationFormat original = DifferentialHarness.parse(true, resource("GOLD.tsv"));
+		Random random = new Random(20200705L);
+		List<OrdinalClassificationFormat> annotations = new ArrayList<OrdinalClassificationFormat>();
+		for(int i=0;i<ANNOTATIONS;i++)
+		{
+			OrdinalClassificationFormat annotation = new OrdinalClassificationFormat();
+			annotation.setGold(true);
+			for (Map.Entry<String, HashMap<String, String>> topic : original.getTableOfTopics().entrySet())
+			{
+				for (Map.Entry<String, String> item : topic.getValue().entrySet())
+				{
+					double draw = random.nextDouble();
+					if(draw<0.05d*i)
+					{
+						continue;
+					}
+					String value = draw<0.15d*i ? CLASSES[random.nextInt(CLASSES.length)] : item.getValue();
+					annotation.addRecord(topic.getKey(), item.getKey(), value, 0);
+				}
+			}
+			annotations.add(annotation);
+		}
+		return annotations;
+	}
+
+	private File resource(String name)
+	{
+		return new File(getClass().getClassLoader().getResource(name).getFile());
+	}
+}
@@ -0,0 +1,19 @@
+package es.uned.nlp.cem;
+
+/**
+ * Evaluates the system output with an ApproximateEvaluator with precision 0, which samples every item, so the estimates must be exact.
+ */
+public class ApproximateEngine implements DifferentialHarness.Engine
+{
+	public String getName()
+	{
+		return "approximate";
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		ApproximateEvaluator evaluator = new ApproximateEvaluator(new GoldIndex(gold), 1L);
+		evaluator.evaluate(output, 0.0d, 0);
+		return evaluator.toEvALLResult();
+	}
+}
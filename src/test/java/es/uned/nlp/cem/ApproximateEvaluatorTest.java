@@ -0,0 +1,135 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the confidence interval of the ApproximateEvaluator over repeated draws: with a precision that stops the sampling before every item is
+ * evaluated, the interval of 95% must contain the exact CEM-Ord given by the reference implementation in (at least) 95% of the draws, allowing
+ * for the variability of the number of draws. Also checks that the output read from its file gives the same result as the parsed output, and that
+ * the first round is evaluated when the time budget is exhausted while reading.
+ */
+public class ApproximateEvaluatorTest
+{
+	private static final String[] CLASSES = {"1", "2", "3", "4", "5"};
+	private static final int DRAWS = 400;
+	private static final double PRECISION = 0.01d;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void coverageOfTheInterval()
+	{
+		Random random = new Random(20200705L);
+		OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+		gold.setGold(true);
+		OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+		output.setGold(false);
+		for(int t=0;t<20;t++)
+		{
+			int numItems = 200 + random.nextInt(800);
+			for(int i=0;i<numItems;i++)
+			{
+				int goldClass = Math.min(random.nextInt(CLASSES.length), random.nextInt(CLASSES.length));
+				gold.addRecord("T" + t, "i" + i, CLASSES[goldClass], i);
+				if(random.nextInt(20)==0)
+				{
+					continue;
+				}
+				int outputClass = Math.max(0, Math.min(CLASSES.length-1, goldClass + (int) Math.round(random.nextGaussian()*(1 + t%3))));
+				output.addRecord("T" + t, "i" + i, CLASSES[outputClass], i);
+			}
+		}
+		double exact = DifferentialHarness.reference(gold, output).getAggregatedResult();
+
+		GoldIndex index = new GoldIndex(gold);
+		int covered = 0;
+		double fraction = 0.0d;
+		for(int draw=0;draw<DRAWS;draw++)
+		{
+			ApproximateEvaluator evaluator = new ApproximateEvaluator(index, draw);
+			evaluator.evaluate(output, PRECISION, 0);
+			assertTrue(evaluator.getHalfWidth()<=PRECISION);
+			if(evaluator.getLowerBound()<=exact && exact<=evaluator.getUpperBound())
+			{
+				covered++;
+			}
+			fraction+= evaluator.getFraction()/DRAWS;
+		}
+		assertTrue("The sample must not contain every item: " + fraction, fraction<0.9d);
+		//3 standard deviations of the proportion of a binomial with p=0.95
+		double coverage = (double) covered/DRAWS;
+		assertTrue("Coverage " + coverage, coverage>=0.95d - 3*Math.sqrt(0.95d*0.05d/DRAWS));
+	}
+
+	@Test
+	public void everyItemIsExact()
+	{
+		OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+		gold.setGold(true);
+		OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+		output.setGold(false);
+		for(int i=0;i<50;i++)
+		{
+			gold.addRecord("T", "i" + i, CLASSES[i%CLASSES.length], i);
+			output.addRecord("T", "i" + i, CLASSES[(i/3)%CLASSES.length], i);
+		}
+		ApproximateEvaluator evaluator = new ApproximateEvaluator(new GoldIndex(gold), 1L);
+		evaluator.evaluate(output, 0.0d, 0);
+		assertEquals(DifferentialHarness.reference(gold, output).getAggregatedResult(), evaluator.getEstimate(), DifferentialHarness.TOLERANCE);
+		assertEquals(0.0d, evaluator.getHalfWidth(), 0.0d);
+		assertEquals(1.0d, evaluator.getFraction(), 0.0d);
+	}
+
+	@Test
+	public void outputReadFromTheFile() throws IOException
+	{
+		OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+		gold.setGold(true);
+		StringBuilder lines = new StringBuilder();
+		for(int t=0;t<4;t++)
+		{
+			for(int i=0;i<60;i++)
+			{
+				gold.addRecord("T" + t, "i" + i, CLASSES[(i*i+t)%CLASSES.length], i);
+				//The test case T3 is not in the output, and one item of each test case is not predicted
+				if(t<3 && i!=t)
+				{
+					lines.append("T" + t + "\ti" + i + "\t" + CLASSES[(i/4+t)%CLASSES.length] + "\n");
+				}
+			}
+		}
+		//A class that is not in the gold, a duplicated item (the first one is considered), an item and a test case that are not in the gold
+		lines.append("T0\ti0\t9\nT1\ti5\t1\nT1\tunknown\t2\nT9\ti0\t2\n");
+		lines.insert(0, "T2\ti7\t9\n");
+		File file = folder.newFile("SYS.tsv");
+		Files.write(file.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+
+		ApproximateEvaluator evaluator = new ApproximateEvaluator(new GoldIndex(gold), 1L);
+		assertTrue(evaluator.read(file.getPath()));
+		evaluator.evaluate(0.0d, Long.MAX_VALUE);
+		EvALLResult expected = DifferentialHarness.reference(gold, DifferentialHarness.parse(false, file));
+		assertEquals(expected.getAggregatedResult(), evaluator.getEstimate(), DifferentialHarness.TOLERANCE);
+		for(int t=0;t<4;t++)
+		{
+			assertEquals(expected.getResults().get("T" + t), evaluator.getEstimate(t), DifferentialHarness.TOLERANCE);
+		}
+		assertEquals(1.0d, evaluator.getFraction(), 0.0d);
+
+		//With the budget exhausted only the first round is evaluated
+		evaluator.evaluate(0.0d, System.nanoTime());
+		assertTrue(evaluator.getFraction()<1.0d);
+		assertTrue(evaluator.getSampledItems()<=3*CLASSES.length*8);
+	}
+}
@@ -0,0 +1,135 @@
+package es.uned.nlp.cem;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.csvreader.CsvReader;
+
+/**
+ * Writes the records of the system output (with the rows that are not valid, so the restrictions are checked again) in the binary submission
+ * format, with numeric ids when every id is a number, and evaluates the binary file parsed with OrdinalClassificationFormat or streamed to a
+ * PredictionEvaluator. The streaming evaluation of pairs built in memory and gold standards with errors is done with the reference implementation,
+ * as in PlannerEngine.
+ */
+public class BinarySubmissionEngine implements DifferentialHarness.Engine
+{
+	private boolean streaming;
+
+	public BinarySubmissionEngine(boolean streaming)
+	{
+		this.streaming = streaming;
+	}
+
+	public String getName()
+	{
+		return this.streaming ? "binary streaming" : "binary";
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		if(this.streaming && (output.getPathFile()==null || gold.isStop()))
+		{
+			return DifferentialHarness.reference(gold, output);
+		}
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream()
+		{
+			public void write(int b) {}
+		}));
+		File file = null;
+		try
+		{
+			file = File.createTempFile("submission", ".cemb");
+			write(output, file);
+			if(this.streaming)
+			{
+				return ExecutionPlanner.evaluateStreaming(new GoldIndex(gold), file.getPath(), new ArrayList<String>());
+			}
+			OrdinalClassificationFormat binary = new OrdinalClassificationFormat();
+			binary.parseFile(false, file.getPath());
+			return DifferentialHarness.reference(gold, binary);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		finally
+		{
+			System.setOut(console);
+			if(file!=null)
+			{
+				file.delete();
+			}
+		}
+	}
+
+	private static void write(OrdinalClassificationFormat output, File file) throws IOException
+	{
+		List<String[]> records = new ArrayList<String[]>();
+		if(output.getPathFile()!=null)
+		{
+			CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(output.getPathFile()), StandardCharsets.UTF_8), '\t');
+			reader.setUseTextQualifier(true);
+			reader.setTextQualifier('\"');
+			while(reader.readRecord())
+			{
+				if(reader.getColumnCount()==3)
+				{
+					records.add(reader.getValues());
+				}
+			}
+			reader.close();
+		}
+		else
+		{
+			for(Map.Entry<String, HashMap<String, String>> topic: output.getTableOfTopics().entrySet())
+			{
+				for(Map.Entry<String, String> item: topic.getValue().entrySet())
+				{
+					records.add(new String[]{topic.getKey(), item.getKey(), item.getValue()});
+				}
+			}
+		}
+
+		boolean numericIds = true;
+		for(String[] record: records)
+		{
+			numericIds&= isLong(record[1]);
+		}
+		BinarySubmissionWriter writer = new BinarySubmissionWriter(new FileOutputStream(file), numericIds);
+		for(String[] record: records)
+		{
+			if(numericIds)
+			{
+				writer.add(record[0], Long.parseLong(record[1]), record[2]);
+			}
+			else
+			{
+				writer.add(record[0], record[1], record[2]);
+			}
+		}
+		writer.close();
+	}
+
+	private static boolean isLong(String id)
+	{
+		try
+		{
+			return Long.toString(Long.parseLong(id)).equals(id);
+		}
+		catch (NumberFormatException e)
+		{
+			return false;
+		}
+	}
+}
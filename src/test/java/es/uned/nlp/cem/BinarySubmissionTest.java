@@ -0,0 +1,241 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the records written by the BinarySubmissionWriter are read back as they were written (grouped by test case), with numeric ids
+ * (also negative and decreasing) and with string ids, and that files with a damaged header or damaged blocks are rejected by the reader and by
+ * OrdinalClassificationFormat.
+ */
+public class BinarySubmissionTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void numericIds() throws IOException
+	{
+		File file = folder.newFile("SYS.cemb");
+		BinarySubmissionWriter writer = new BinarySubmissionWriter(new FileOutputStream(file), true);
+		writer.add("T1", 1000000L, "1");
+		writer.add("T2", 7L, "-1");
+		writer.add("T1", -5L, "0");
+		writer.add("T1", Long.MAX_VALUE, "1");
+		writer.add("T1", Long.MIN_VALUE, "-1");
+		writer.close();
+
+		final BinarySubmissionReader reader = new BinarySubmissionReader(file.getPath());
+		assertTrue(BinarySubmissionReader.isBinary(file.getPath()));
+		assertTrue(reader.isNumericIds());
+		assertEquals(5, reader.getNumRecords());
+		assertEquals(Arrays.asList("T1\t1000000\t1\t1", "T1\t-5\t0\t2", "T1\t" + Long.MAX_VALUE + "\t1\t3", "T1\t" + Long.MIN_VALUE + "\t-1\t4",
+				"T2\t7\t-1\t5"), records(reader));
+
+		final List<String> numeric = new ArrayList<String>();
+		reader.read(new BinarySubmissionReader.NumericRecordHandler()
+		{
+			public boolean record(int topic, long id, int value, int position)
+			{
+				numeric.add(reader.getTopic(topic) + "\t" + id + "\t" + reader.getClassName(value));
+				return true;
+			}
+		});
+		assertEquals(Arrays.asList("T1\t1000000\t1", "T1\t-5\t0", "T1\t" + Long.MAX_VALUE + "\t1", "T1\t" + Long.MIN_VALUE + "\t-1", "T2\t7\t-1"),
+				numeric);
+	}
+
+	@Test
+	public void stringIds() throws IOException
+	{
+		File file = folder.newFile("SYS.cemb");
+		BinarySubmissionWriter writer = new BinarySubmissionWriter(new FileOutputStream(file), false);
+		writer.add("T1", "a", "2");
+		writer.add("Tópico", "ñ", "1");
+		writer.add("T1", "", "");
+		writer.close();
+
+		final BinarySubmissionReader reader = new BinarySubmissionReader(file.getPath());
+		assertEquals(Arrays.asList("T1\ta\t2\t1", "T1\t\t\t2", "Tópico\tñ\t1\t3"), records(reader));
+		try
+		{
+			reader.read(new BinarySubmissionReader.NumericRecordHandler()
+			{
+				public boolean record(int topic, long id, int value, int position)
+				{
+					return true;
+				}
+			});
+			fail("The ids are not numeric");
+		}
+		catch (IllegalStateException e) {}
+
+		//The handler stops the reading
+		final List<String> first = new ArrayList<String>();
+		reader.read(new BinarySubmissionReader.RecordHandler()
+		{
+			public boolean record(String topic, String id, String value, int position)
+			{
+				first.add(id);
+				return false;
+			}
+		});
+		assertEquals(Arrays.asList("a"), first);
+	}
+
+	@Test
+	public void damagedHeader() throws IOException
+	{
+		assertNotWellFormed(file("magic.cemb", 0x43454D41, 1, 0, 1, "1", "T"), "Not a binary submission");
+		assertNotWellFormed(file("version.cemb", BinarySubmissionReader.MAGIC, 2, 0, 1, "1", "T"), "Version not supported");
+		assertNotWellFormed(file("ids.cemb", BinarySubmissionReader.MAGIC, 1, 2, 1, "1", "T"), "Not well formed");
+
+		//The header ends inside the dictionary of test cases
+		File truncated = file("truncated.cemb", BinarySubmissionReader.MAGIC, 1, 0, 1, "1", "T");
+		byte[] bytes = Files.readAllBytes(truncated.toPath());
+		Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length-1));
+		assertNotWellFormed(truncated, "Not well formed");
+
+		File tsv = folder.newFile("SYS.tsv");
+		Files.write(tsv.toPath(), "T\t1\t1\n".getBytes(StandardCharsets.UTF_8));
+		assertFalse(BinarySubmissionReader.isBinary(tsv.getPath()));
+	}
+
+	@Test
+	public void damagedBlocks() throws IOException
+	{
+		//Test case and class out of the dictionaries
+		assertNotWellFormed(file("topic.cemb", BinarySubmissionReader.MAGIC, 1, 0, 1, "1", "T", 1, 1, 2, 0), "0 records");
+		assertNotWellFormed(file("class.cemb", BinarySubmissionReader.MAGIC, 1, 0, 2, "1", "T", 0, 2, 2, 2, 0, 1), "1 records");
+		//More and less records than in the header
+		assertNotWellFormed(file("more.cemb", BinarySubmissionReader.MAGIC, 1, 0, 1, "1", "T", 0, 2, 2, 2, 0, 0), "0 records");
+		assertNotWellFormed(file("less.cemb", BinarySubmissionReader.MAGIC, 1, 0, 3, "1", "T", 0, 2, 2, 2, 0, 0), "2 records");
+		//A varint that does not end
+		File varint = file("varint.cemb", BinarySubmissionReader.MAGIC, 1, 0, 1, "1", "T", 0, 1);
+		byte[] bytes = Files.readAllBytes(varint.toPath());
+		bytes = Arrays.copyOf(bytes, bytes.length + 10);
+		Arrays.fill(bytes, bytes.length-10, bytes.length, (byte) 0xFF);
+		Files.write(varint.toPath(), bytes);
+		assertNotWellFormed(varint, "0 records");
+
+		//A file without records is empty
+		OrdinalClassificationFormat format = parse(file("empty.cemb", BinarySubmissionReader.MAGIC, 1, 0, 0, "1", "T"), "The file is empty");
+		assertTrue(format.isStop());
+	}
+
+	/**
+	 * Method that checks that a file is rejected by the reader (when it is opened, or when it is read, after giving the number of records of the
+	 * message) and by OrdinalClassificationFormat.
+	 */
+	private void assertNotWellFormed(File file, String message) throws IOException
+	{
+		BinarySubmissionReader reader;
+		try
+		{
+			reader = new BinarySubmissionReader(file.getPath());
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+			if(BinarySubmissionReader.isBinary(file.getPath()))
+			{
+				assertTrue(parse(file, "IO error: input file not well formed").isStop());
+			}
+			return;
+		}
+		final int[] records = new int[1];
+		try
+		{
+			reader.read(new BinarySubmissionReader.RecordHandler()
+			{
+				public boolean record(String topic, String id, String value, int position)
+				{
+					records[0]++;
+					return true;
+				}
+			});
+			fail("The file is not well formed: " + file.getName());
+		}
+		catch (IOException e)
+		{
+			assertEquals(message, records[0] + " records");
+		}
+		assertTrue(parse(file, "IO error: input file not well formed").isStop());
+	}
+
+	private static OrdinalClassificationFormat parse(File file, String message) throws IOException
+	{
+		PrintStream console = System.out;
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(messages, true, "UTF-8"));
+		OrdinalClassificationFormat format = new OrdinalClassificationFormat();
+		try
+		{
+			format.parseFile(false, file.getPath());
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+		assertTrue(messages.toString("UTF-8"), messages.toString("UTF-8").contains(message));
+		return format;
+	}
+
+	private static List<String> records(BinarySubmissionReader reader) throws IOException
+	{
+		final List<String> records = new ArrayList<String>();
+		reader.read(new BinarySubmissionReader.RecordHandler()
+		{
+			public boolean record(String topic, String id, String value, int position)
+			{
+				records.add(topic + "\t" + id + "\t" + value + "\t" + position);
+				return true;
+			}
+		});
+		return records;
+	}
+
+	/**
+	 * Method that writes a file with one class and one test case: magic number, version, ids, number of records, class, test case and the
+	 * varints of the blocks.
+	 */
+	private File file(String name, int magic, int version, int ids, int numRecords, String value, String topic, int... blocks) throws IOException
+	{
+		File file = new File(this.folder.getRoot(), name);
+		DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+		output.writeInt(magic);
+		output.writeByte(version);
+		output.writeByte(ids);
+		output.writeByte(numRecords);
+		output.writeByte(1);
+		output.writeByte(value.length());
+		output.write(value.getBytes(StandardCharsets.UTF_8));
+		output.writeByte(1);
+		output.writeByte(topic.length());
+		output.write(topic.getBytes(StandardCharsets.UTF_8));
+		for(int b: blocks)
+		{
+			output.writeByte(b);
+		}
+		output.close();
+		return file;
+	}
+}
@@ -0,0 +1,49 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+ * Checks that the evaluation of the files in the test resources, once the confusion matrix has been generated, only allocates the results of
+ * the test cases and not objects per item.
+ */
+public class CEMOrdAllocationTest
+{
+	/**
+	 * The results of the 61 test cases of the resources (three boxed values and three entries of a HashMap each) are about 16 KB. The 70000
+	 * items of the gold would exceed the budget with a single allocation per item.
+	 */
+	private static final long ALLOCATION_BUDGET = 64*1024;
+
+	@Test
+	public void evaluateDoesNotAllocatePerItem()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		OrdinalClassificationFormat gold = DifferentialHarness.parse(true, resource("GOLD.tsv"));
+		OrdinalClassificationFormat output = DifferentialHarness.parse(false, resource("SYS.tsv"));
+		//The first evaluation loads and compiles the classes
+		new CEMOrd(gold, output).evaluate();
+
+		CEMOrd CEMOrd = new CEMOrd(gold, output);
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		CEMOrd.evaluate();
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		assertTrue("Allocated " + allocated + " bytes", allocated<ALLOCATION_BUDGET);
+	}
+
+	private File resource(String name)
+	{
+		return new File(getClass().getClassLoader().getResource(name).getFile());
+	}
+}
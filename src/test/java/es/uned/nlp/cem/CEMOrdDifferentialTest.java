@@ -0,0 +1,136 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares every engine of the DifferentialHarness with the reference implementation on random datasets, adversarial datasets and the
+ * files in the test resources.
+ */
+public class CEMOrdDifferentialTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<DifferentialHarness.Engine> engines = DifferentialHarness.engines();
+
+	@Test
+	public void randomDatasets() throws IOException
+	{
+		DifferentialHarness harness = new DifferentialHarness(folder.getRoot(), 20200705L);
+		for(int i=0;i<300;i++)
+		{
+			DifferentialHarness.assertSameResults(harness.generate("random" + i), engines);
+		}
+	}
+
+	@Test
+	public void outputClassesNotInGold() throws IOException
+	{
+		DifferentialHarness harness = new DifferentialHarness(folder.getRoot(), 1L);
+		DifferentialHarness.assertSameResults(harness.generate("foreign",
+				"T\t1\t-1\nT\t2\t0\nT\t3\t1\nT\t4\t1\n",
+				"T\t1\t-2\nT\t2\t0.5\nT\t3\t3\nT\t4\t-1\n"), engines);
+	}
+
+	@Test
+	public void differentSpellingsOfTheSameClass() throws IOException
+	{
+		DifferentialHarness harness = new DifferentialHarness(folder.getRoot(), 1L);
+		DifferentialHarness.assertSameResults(harness.generate("spelling",
+				"T\t1\t1\nT\t2\t2\nT\t3\t3\nT\t4\t1\n",
+				"T\t1\t1.0\nT\t2\t2.0\nT\t3\t+3\nT\t4\t01\n"), engines);
+		DifferentialHarness.assertSameResults(harness.generate("spellingInGold",
+				"T\t1\t1\nT\t2\t1.0\nT\t3\t2\nT\t4\t3\nT\t5\t3.0\nT\t6\t2\n",
+				"T\t1\t1.0\nT\t2\t1\nT\t3\t3\nT\t4\t1\nT\t5\t3.0\nT\t6\t1e0\n"), engines);
+	}
+
+	@Test
+	public void missingAndEmptyTopics() throws IOException
+	{
+		DifferentialHarness harness = new DifferentialHarness(folder.getRoot(), 1L);
+		//A has no output, B only has items not in the gold, C is only in the output
+		DifferentialHarness.assertSameResults(harness.generate("missing",
+				"A\t1\t0\nA\t2\t1\nB\t1\t0\nB\t2\t1\n",
+				"B\t3\t0\nB\t4\t1\nC\t1\t1\n"), engines);
+		//Invalid rows leave the test case of the output empty
+		DifferentialHarness.assertSameResults(harness.generate("empty",
+				"A\t1\t0\nA\t2\t1\n",
+				"A\t1\tx\nA\t2\t\nA\t3\n"), engines);
+	}
+
+	@Test
+	public void singleClassAndSingleItem() throws IOException
+	{
+		DifferentialHarness harness = new DifferentialHarness(folder.getRoot(), 1L);
+		DifferentialHarness.assertSameResults(harness.generate("single",
+				"A\t1\t2\nA\t2\t2\nA\t3\t2\nB\t1\t5\n",
+				"A\t1\t2\nA\t2\t1\nA\t3\t3\nB\t1\t4\n"), engines);
+	}
+
+	@Test
+	public void zeroDenominator()
+	{
+		/**
+		 * The proximity of a class with itself is at least 1 bit (n(c)/2 is at most half of the items), so the denominator is never 0
+		 * for a test case with items. It can only be reached with a test case without items, built in memory.
+		 * */
+		OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+		gold.getTableOfTopics().put("A", new HashMap<String, String>());
+		OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+		EvALLResult expected = DifferentialHarness.reference(gold, output);
+		assertEquals(0.0d, expected.getResults().get("A"), 0.0d);
+		for(DifferentialHarness.Engine engine: engines)
+		{
+			DifferentialHarness.assertSameResults(engine.getName(), expected, engine.evaluate(gold, output));
+		}
+	}
+
+	@Test
+	public void whatIfScenarios() throws IOException
+	{
+		/**
+		 * Each scenario must give the same results as the reference implementation with both files rewritten with the mapping.
+		 * */
+		String[] specifications = {"-1=0", "-1=0,1=0", "1=2", "2=1,3=1,4=5", "0.5=1.5,2.5=1.5", "0=1,-2=2", "1=7"};
+		DifferentialHarness harness = new DifferentialHarness(folder.getRoot(), 20201019L);
+		for(int i=0;i<60;i++)
+		{
+			File[] files = harness.generate("whatif" + i);
+			OrdinalClassificationFormat gold = DifferentialHarness.parse(true, files[0]);
+			OrdinalClassificationFormat output = DifferentialHarness.parse(false, files[1]);
+			CEMOrd CEMOrd = new CEMOrd(gold, output);
+			CEMOrd.evaluate();
+			WhatIfAnalysis analysis = new WhatIfAnalysis(CEMOrd);
+			for(String specification: specifications)
+			{
+				HashMap<Double, String> mapping = WhatIfAnalysis.parseMapping(specification);
+				File[] rewritten = harness.generate("whatif" + i + "_" + specification, DifferentialHarness.rewrite(gold, mapping), 
+						DifferentialHarness.rewrite(output, mapping));
+				EvALLResult expected = DifferentialHarness.reference(DifferentialHarness.parse(true, rewritten[0]), 
+						DifferentialHarness.parse(false, rewritten[1]));
+				DifferentialHarness.assertSameResults("whatif " + specification + " " + files[1].getName(), expected, analysis.evaluate(mapping));
+			}
+		}
+	}
+
+	@Test
+	public void resourceFiles()
+	{
+		File[] files = {resource("GOLD.tsv"), resource("SYS.tsv")};
+		DifferentialHarness.assertSameResults(files, engines);
+	}
+
+	private File resource(String name)
+	{
+		return new File(getClass().getClassLoader().getResource(name).getFile());
+	}
+}
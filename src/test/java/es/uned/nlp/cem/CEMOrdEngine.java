@@ -0,0 +1,19 @@
+package es.uned.nlp.cem;
+
+/**
+ * Evaluates the pair with the CEMOrd class, as the command line does.
+ */
+public class CEMOrdEngine implements DifferentialHarness.Engine
+{
+	public String getName()
+	{
+		return "cemord";
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		CEMOrd CEMOrd = new CEMOrd(gold, output);
+		CEMOrd.evaluate();
+		return CEMOrd.getResult();
+	}
+}
@@ -0,0 +1,39 @@
+package es.uned.nlp.cem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Evaluates the system output twice with a TopicResultCache in a new directory, and returns the results of the second evaluation, taken from
+ * the cache.
+ */
+public class CacheEngine implements DifferentialHarness.Engine
+{
+	public String getName()
+	{
+		return "cache";
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		try
+		{
+			File directory = Files.createTempDirectory("cache").toFile();
+			TopicResultCache cache = new TopicResultCache(directory.getPath(), Long.MAX_VALUE);
+			Evaluate.evaluateWithCache(gold, output, cache);
+			EvALLResult result = Evaluate.evaluateWithCache(gold, output, cache).getResult();
+			cache.close();
+			for(File file: directory.listFiles())
+			{
+				file.delete();
+			}
+			directory.delete();
+			return result;
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package es.uned.nlp.cem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Independent implementation of CEM-Ord written from the definition of the proximity:<br>
+ *
+ * 			&nbsp;&nbsp;&nbsp;&nbsp; prox(ci, cj) = -log2((n(ci)/2 + sum of n(ck) for ck between ci (excluded) and cj (included)) / N)</p>
+ *
+ * <p>It is the reference implementation of the DifferentialHarness, and it follows the conventions of the CEMOrd class: classes are identified
+ * by their spelling, ordered by their numeric value, and when several classes of the gold have the same value only the first one in the index
+ * of classes is counted in the sum.</p>
+ */
+public class DefinitionEngine implements DifferentialHarness.Engine
+{
+	public String getName()
+	{
+		return "definition";
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		EvALLResult result = new EvALLResult();
+		for(Map.Entry<String, HashMap<String, String>> entry: gold.getTableOfTopics().entrySet())
+		{
+			String topic = entry.getKey();
+			HashMap<String, String> valuesGold = entry.getValue();
+			HashMap<String, String> valuesOutput = output.getTableOfTopics().get(topic);
+
+			//Same insertion order as the index of classes of the confusion matrix, so the iteration order is the same
+			HashMap<String, Integer> frequencies = new HashMap<String, Integer>();
+			for(String value: valuesGold.values())
+			{
+				frequencies.put(value, frequencies.get(value)==null ? 1 : frequencies.get(value)+1);
+			}
+			List<String> classes = new ArrayList<String>(frequencies.keySet());
+
+			double numerator = 0.0d;
+			double denominator = 0.0d;
+			for(Map.Entry<String, String> item: valuesGold.entrySet())
+			{
+				String classGold = item.getValue();
+				if(valuesOutput!=null && valuesOutput.get(item.getKey())!=null)
+				{
+					numerator+= proximity(classes, frequencies, valuesGold.size(), valuesOutput.get(item.getKey()), classGold);
+				}
+				denominator+= proximity(classes, frequencies, valuesGold.size(), classGold, classGold);
+			}
+			result.getResults().put(topic, denominator!=0.0d ? numerator/denominator : 0.0d);
+			result.getNumerators().put(topic, numerator);
+			result.getDenominators().put(topic, denominator);
+		}
+		return result;
+	}
+
+	private double proximity(List<String> classes, HashMap<String, Integer> frequencies, int total, String ci, String cj)
+	{
+		double frequencyCi = 0.0d;
+		for(String c: classes)
+		{
+			if(c.equalsIgnoreCase(ci))
+			{
+				frequencyCi = frequencies.get(c);
+				break;
+			}
+		}
+		double sum = 0.0d;
+		if(!ci.equalsIgnoreCase(cj))
+		{
+			double valueCi = Double.parseDouble(ci);
+			double valueCj = Double.parseDouble(cj);
+			List<Double> counted = new ArrayList<Double>();
+			for(String c: classes)
+			{
+				double value = Double.parseDouble(c);
+				if(counted.contains(value))
+				{
+					continue;
+				}
+				counted.add(value);
+				boolean between = valueCi<valueCj ? (value>valueCi && value<=valueCj) : (value>=valueCj && value<valueCi);
+				if(between)
+				{
+					sum+= frequencies.get(c);
+				}
+			}
+		}
+		double proximity = ((frequencyCi/2) + sum)/total;
+		return proximity>0.0d ? -1*Math.log10(proximity)/Math.log10(2) : 0.0d;
+	}
+}
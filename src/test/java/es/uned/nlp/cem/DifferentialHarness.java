@@ -0,0 +1,271 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p>Reference oracle for the evaluation engines: generates random and adversarial pairs of gold standard/system output, evaluates
+ * them with the reference implementation (DefinitionEngine, written from the definition of the proximity and independent of the optimizations
+ * of CEMOrd and ConfusionMatrix) and with an alternative engine, and asserts that the results of each test case and the aggregated result are
+ * equal.</p>
+ *
+ * <p>The generated files are written as tsv and parsed with OrdinalClassificationFormat, so the engines see exactly what the command
+ * line sees. Class values such as NaN or -0 are not generated, since the reference implementation cannot order them.</p>
+ */
+public class DifferentialHarness
+{
+	public static final double TOLERANCE = 1e-9;
+
+	/**
+	 * An alternative implementation of the evaluation.
+	 */
+	public interface Engine
+	{
+		String getName();
+
+		EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output);
+	}
+
+	/**
+	 * Scales of classes used to generate the datasets. The last one mixes spellings of the same values.
+	 */
+	private static final String[][] SCALES = {
+		{"-1", "0", "1"},
+		{"1", "2", "3", "4", "5"},
+		{"0.5", "1.5", "2.5"},
+		{"0", "1"},
+		{"-2", "-1", "0", "1", "2"},
+		{"1", "1.0", "2", "2.00", "3"}
+	};
+
+	/**
+	 * Values that can appear in an output but not in the gold, and spellings of values of the gold.
+	 */
+	private static final String[] FOREIGN_VALUES = {"-3", "0.75", "1.0", "1.00", "+1", "01", "7", "2.0", "-1.0", "1e0", "3.5"};
+
+	private File directory;
+	private Random random;
+
+	public DifferentialHarness(File directory, long seed)
+	{
+		this.directory = directory;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Method that generates a random pair gold standard/system output. The output may miss test cases and items, contain test cases and
+	 * items not in the gold, classes not in the gold, other spellings of the classes of the gold, and invalid rows.
+	 *
+	 * @return	Paths of the gold standard and the system output
+	 */
+	public File[] generate(String name) throws IOException
+	{
+		StringBuilder gold = new StringBuilder();
+		StringBuilder output = new StringBuilder();
+		int numTopics = 1 + random.nextInt(6);
+		for(int t=0;t<numTopics;t++)
+		{
+			String topic = "T" + t;
+			String[] scale = SCALES[random.nextInt(SCALES.length)];
+			//Some test cases have a single class, or very few items.
+			int numClasses = random.nextInt(5)==0 ? 1 : scale.length;
+			int numItems = random.nextInt(4)==0 ? 1 + random.nextInt(3) : 1 + random.nextInt(80);
+			boolean topicInOutput = random.nextInt(6)!=0;
+			//Skewed distribution of classes
+			double skew = random.nextDouble()*3;
+			for(int i=0;i<numItems;i++)
+			{
+				String id = String.valueOf(random.nextInt(1000000));
+				String classGold = scale[Math.min(numClasses-1, (int) (Math.pow(random.nextDouble(), skew)*numClasses))];
+				gold.append(topic).append('\t').append(id).append('\t').append(classGold).append('\n');
+				if(!topicInOutput || random.nextInt(8)==0)
+				{
+					continue;
+				}
+				String classOutput = scale[random.nextInt(numClasses)];
+				if(random.nextInt(3)==0)
+				{
+					classOutput = classGold;
+				}
+				else if(random.nextInt(6)==0)
+				{
+					classOutput = FOREIGN_VALUES[random.nextInt(FOREIGN_VALUES.length)];
+				}
+				output.append(topic).append('\t').append(id).append('\t').append(classOutput).append('\n');
+				if(random.nextInt(20)==0)
+				{
+					//Duplicated id: only the first instance is considered
+					output.append(topic).append('\t').append(id).append('\t').append(scale[random.nextInt(scale.length)]).append('\n');
+				}
+			}
+			if(topicInOutput && random.nextInt(4)==0)
+			{
+				//Items not in the gold
+				output.append(topic).append('\t').append("extra").append(t).append('\t').append(scale[0]).append('\n');
+			}
+		}
+		if(random.nextInt(3)==0)
+		{
+			//Test case not in the gold
+			output.append("OUT").append('\t').append("1").append('\t').append("1").append('\n');
+		}
+		if(random.nextInt(4)==0)
+		{
+			//Invalid rows are ignored with a warning
+			output.append("T0").append('\t').append("bad").append('\t').append("abc").append('\n');
+			output.append("T0").append('\t').append("").append('\t').append("1").append('\n');
+			output.append("T0").append('\t').append("cols").append('\n');
+		}
+		if(output.length()==0)
+		{
+			output.append("OUT").append('\t').append("1").append('\t').append("1").append('\n');
+		}
+		return new File[]{write(name + "_GOLD.tsv", gold), write(name + "_SYS.tsv", output)};
+	}
+
+	/**
+	 * Method that writes a pair gold standard/system output given as tsv text.
+	 */
+	public File[] generate(String name, String gold, String output) throws IOException
+	{
+		return new File[]{write(name + "_GOLD.tsv", new StringBuilder(gold)), write(name + "_SYS.tsv", new StringBuilder(output))};
+	}
+
+	private File write(String name, StringBuilder content) throws IOException
+	{
+		File file = new File(this.directory, name);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		writer.write(content.toString());
+		writer.close();
+		return file;
+	}
+
+	/**
+	 * Method that writes a parsed file as tsv text, replacing the classes as in a mapping of the WhatIfAnalysis.
+	 */
+	public static String rewrite(OrdinalClassificationFormat format, HashMap<Double, String> mapping)
+	{
+		StringBuilder text = new StringBuilder();
+		for(Map.Entry<String, HashMap<String, String>> entry: format.getTableOfTopics().entrySet())
+		{
+			for(Map.Entry<String, String> entry2: entry.getValue().entrySet())
+			{
+				String mapped = mapping.get(Double.parseDouble(entry2.getValue()));
+				text.append(entry.getKey()).append('\t').append(entry2.getKey()).append('\t').append(mapped!=null ? mapped : entry2.getValue()).append('\n');
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Method that parses a file without writing the warnings in the console.
+	 */
+	public static OrdinalClassificationFormat parse(boolean isGold, File file)
+	{
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream()
+		{
+			public void write(int b) {}
+		}));
+		try
+		{
+			OrdinalClassificationFormat format = new OrdinalClassificationFormat();
+			format.parseFile(isGold, file.getPath());
+			return format;
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+
+	/**
+	 * Method that evaluates a pair with the reference implementation.
+	 */
+	public static EvALLResult reference(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		EvALLResult result = new DefinitionEngine().evaluate(gold, output);
+		result.normalizeResult();
+		return result;
+	}
+
+	/**
+	 * Method that evaluates a pair of files with the reference implementation and every engine, and checks that the results are equal.
+	 */
+	public static void assertSameResults(File[] files, List<Engine> engines)
+	{
+		OrdinalClassificationFormat gold = parse(true, files[0]);
+		OrdinalClassificationFormat output = parse(false, files[1]);
+		EvALLResult expected = reference(gold, output);
+		for(Engine engine: engines)
+		{
+			assertSameResults(engine.getName() + " " + files[1].getName(), expected, engine.evaluate(gold, output));
+		}
+	}
+
+	/**
+	 * Method that checks that two results have the same test cases with the same results, and the same aggregated result. The partial sums
+	 * are compared when the engine calculates them.
+	 */
+	public static void assertSameResults(String message, EvALLResult expected, EvALLResult actual)
+	{
+		assertEquals(message + ": test cases", expected.getResults().keySet(), actual.getResults().keySet());
+		for(Map.Entry<String, Double> entry: expected.getResults().entrySet())
+		{
+			String topic = entry.getKey();
+			assertNotNull(message + ": result of " + topic, actual.getResults().get(topic));
+			assertEquals(message + ": result of " + topic, entry.getValue(), actual.getResults().get(topic), TOLERANCE);
+			if(actual.getNumerators().get(topic)!=null)
+			{
+				assertEquals(message + ": numerator of " + topic, expected.getNumerators().get(topic), actual.getNumerators().get(topic), TOLERANCE);
+			}
+			if(actual.getDenominators().get(topic)!=null)
+			{
+				assertEquals(message + ": denominator of " + topic, expected.getDenominators().get(topic), actual.getDenominators().get(topic), TOLERANCE);
+			}
+		}
+		actual.normalizeResult();
+		if(expected.getAggregatedResult()==null)
+		{
+			assertTrue(message + ": aggregated result", actual.getAggregatedResult()==null);
+		}
+		else
+		{
+			assertEquals(message + ": aggregated result", expected.getAggregatedResult(), actual.getAggregatedResult(), TOLERANCE);
+		}
+	}
+
+	/**
+	 * Engines compared with the reference implementation.
+	 */
+	public static List<Engine> engines()
+	{
+		List<Engine> engines = new ArrayList<Engine>();
+		engines.add(new CEMOrdEngine());
+		engines.add(new PredictionEvaluatorEngine());
+		engines.add(new CacheEngine());
+		engines.add(new ShardEngine());
+		engines.add(new ApproximateEngine());
+		engines.add(new PlannerEngine(ExecutionPlanner.Strategy.STREAMING));
+		engines.add(new PlannerEngine(ExecutionPlanner.Strategy.OUT_OF_CORE));
+		engines.add(new BinarySubmissionEngine(false));
+		engines.add(new BinarySubmissionEngine(true));
+		engines.add(new SoftPredictionEngine());
+		return engines;
+	}
+}
@@ -0,0 +1,137 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Checks the errors kept by the error analysis of the test resources against all the losses of the items calculated one by one and sorted, and
+ * that the analyses of the buckets of the out of core evaluation merge into the analysis of the evaluation in memory.
+ */
+public class ErrorAnalysisTest
+{
+	private static final int K = 7;
+
+	@Test
+	public void worstErrors()
+	{
+		OrdinalClassificationFormat gold = DifferentialHarness.parse(true, resource("GOLD.tsv"));
+		OrdinalClassificationFormat output = DifferentialHarness.parse(false, resource("SYS.tsv"));
+		CEMOrd cemOrd = new CEMOrd(gold, output);
+		ErrorAnalysis analysis = new ErrorAnalysis(K);
+		cemOrd.setErrorAnalysis(analysis);
+		cemOrd.evaluate();
+
+		EvALLResult result = cemOrd.getResult();
+		ConfusionMatrix matrix = cemOrd.getConfusionMatrix();
+		List<Double> all = new ArrayList<Double>();
+		List<Double> topics = new ArrayList<Double>();
+		for (Map.Entry<String, HashMap<String, String>> topic : gold.getTableOfTopics().entrySet())
+		{
+			HashMap<String, String> valuesOutput = output.getTableOfTopics().get(topic.getKey());
+			List<Double> losses = new ArrayList<Double>();
+			double total = 0.0d;
+			for (Map.Entry<String, String> item : topic.getValue().entrySet())
+			{
+				String classOutput = valuesOutput!=null ? valuesOutput.get(item.getKey()) : null;
+				double loss = matrix.proximityCEM(topic.getKey(), item.getValue(), item.getValue());
+				if(classOutput!=null)
+				{
+					loss-= matrix.proximityCEM(topic.getKey(), classOutput, item.getValue());
+				}
+				total+= loss;
+				if(loss>0.0d)
+				{
+					losses.add(loss);
+				}
+			}
+			double expected = result.getDenominators().get(topic.getKey()) - result.getNumerators().get(topic.getKey());
+			assertEquals(topic.getKey(), expected, total, DifferentialHarness.TOLERANCE);
+			assertLosses(topic.getKey(), losses, analysis.getWorstItems(topic.getKey()));
+			all.addAll(losses);
+			if(result.getDenominators().get(topic.getKey())!=0.0d)
+			{
+				topics.add(1.0d - result.getResults().get(topic.getKey()));
+			}
+
+			double confusions = 0.0d;
+			for(ErrorAnalysis.Error confusion: analysis.getWorstConfusions(topic.getKey()))
+			{
+				confusions+= confusion.getLoss();
+			}
+			if(analysis.getWorstConfusions(topic.getKey()).size()<K)
+			{
+				assertEquals(topic.getKey(), total, confusions, DifferentialHarness.TOLERANCE);
+			}
+		}
+		assertLosses("all", all, analysis.getWorstItems());
+		assertLosses("test cases", topics, analysis.getWorstTopics());
+	}
+
+	@Test
+	public void bucketsMergeAsInMemory()
+	{
+		File gold = resource("GOLD.tsv");
+		File output = resource("SYS.tsv");
+		for(int k: new int[]{1, 3, K})
+		{
+			OrdinalClassificationFormat goldFormat = DifferentialHarness.parse(true, gold);
+			OrdinalClassificationFormat outputFormat = DifferentialHarness.parse(false, output);
+			CEMOrd cemOrd = new CEMOrd(goldFormat, outputFormat);
+			ErrorAnalysis inMemory = new ErrorAnalysis(k);
+			cemOrd.setErrorAnalysis(inMemory);
+			cemOrd.evaluate();
+
+			ErrorAnalysis outOfCore = new ErrorAnalysis(k);
+			List<String> goldTopics = new ArrayList<String>();
+			EvALLResult result = ExecutionPlanner.evaluateOutOfCore(gold.getPath(), output.getPath(), 5, 2, goldTopics, new ArrayList<String>(), 
+					outOfCore);
+			DifferentialHarness.assertSameResults("buckets", DifferentialHarness.reference(goldFormat, outputFormat), result);
+
+			assertEquals(inMemory.getTopics(), outOfCore.getTopics());
+			assertErrors("items", inMemory.getWorstItems(), outOfCore.getWorstItems());
+			assertErrors("confusions", inMemory.getWorstConfusions(), outOfCore.getWorstConfusions());
+			assertErrors("test cases", inMemory.getWorstTopics(), outOfCore.getWorstTopics());
+			for(String topic: inMemory.getTopics())
+			{
+				assertErrors(topic, inMemory.getWorstItems(topic), outOfCore.getWorstItems(topic));
+				assertErrors(topic, inMemory.getWorstConfusions(topic), outOfCore.getWorstConfusions(topic));
+			}
+		}
+	}
+
+	private static void assertErrors(String message, List<ErrorAnalysis.Error> expected, List<ErrorAnalysis.Error> errors)
+	{
+		assertEquals(message, expected.size(), errors.size());
+		for(int i=0;i<errors.size();i++)
+		{
+			ErrorAnalysis.Error e = expected.get(i);
+			ErrorAnalysis.Error error = errors.get(i);
+			assertEquals(message, e.getTopic() + "\t" + e.getId() + "\t" + e.getClassGold() + "\t" + e.getClassOutput() + "\t" + e.getCount(), 
+					error.getTopic() + "\t" + error.getId() + "\t" + error.getClassGold() + "\t" + error.getClassOutput() + "\t" + error.getCount());
+			assertEquals(message, e.getLoss(), error.getLoss(), DifferentialHarness.TOLERANCE);
+		}
+	}
+
+	private static void assertLosses(String message, List<Double> losses, List<ErrorAnalysis.Error> errors)
+	{
+		Collections.sort(losses, Collections.reverseOrder());
+		assertEquals(message, Math.min(K, losses.size()), errors.size());
+		for(int i=0;i<errors.size();i++)
+		{
+			assertEquals(message, losses.get(i), errors.get(i).getLoss(), DifferentialHarness.TOLERANCE);
+		}
+	}
+
+	private File resource(String name)
+	{
+		return new File(getClass().getClassLoader().getResource(name).getFile());
+	}
+}
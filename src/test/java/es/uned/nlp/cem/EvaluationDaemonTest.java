@@ -0,0 +1,269 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the daemon on a temporary directory: a system output present at start and another one written in two steps (within the quiet
+ * period) must be evaluated once each, with the same results as the reference implementation in their reports. The quiet periods end when
+ * the test runs them and the evaluations are done in the same thread, so the result does not depend on the load of the machine; only the
+ * events of the file system are waited for.
+ */
+public class EvaluationDaemonTest
+{
+	private static final long TIMEOUT = 20000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reportsOfDroppedFiles() throws Exception
+	{
+		DifferentialHarness harness = new DifferentialHarness(folder.getRoot(), 20200705L);
+		File[] first = harness.generate("first");
+		File[] second = harness.generate("second", new String(Files.readAllBytes(first[0].toPath()), StandardCharsets.UTF_8),
+				new String(Files.readAllBytes(harness.generate("other")[1].toPath()), StandardCharsets.UTF_8));
+		OrdinalClassificationFormat gold = DifferentialHarness.parse(true, first[0]);
+		File directory = folder.newFolder("runs");
+		File existing = new File(directory, "existing.tsv");
+		File dropped = new File(directory, "dropped.tsv");
+		Files.copy(first[1].toPath(), existing.toPath());
+
+		PrintStream console = System.out;
+		final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(messages, true, "UTF-8"));
+		final ManualScheduler scheduler = new ManualScheduler();
+		final EvaluationDaemon daemon = new EvaluationDaemon(gold, directory.getPath());
+		daemon.setExecutors(new CurrentThreadExecutor(), scheduler);
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				daemon.run();
+			}
+		});
+		try
+		{
+			thread.start();
+			//The directory is watched before the files present at start are scheduled
+			scheduler.awaitPending();
+			scheduler.runPending();
+			assertReport(gold, first[1], existing);
+
+			//The quiet period of the first half ends after the second half is written, so only the complete file is evaluated
+			byte[] content = Files.readAllBytes(second[1].toPath());
+			int half = content.length/2;
+			OutputStream out = new FileOutputStream(dropped);
+			out.write(content, 0, half);
+			out.flush();
+			scheduler.awaitPending();
+			out.write(content, half, content.length-half);
+			out.close();
+			File report = new File(dropped.getPath() + EvaluationDaemon.REPORT_SUFFIX);
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while(!report.exists() && System.currentTimeMillis()<deadline)
+			{
+				scheduler.awaitPending();
+				scheduler.runPending();
+			}
+			assertReport(gold, second[1], dropped);
+
+			//Late events of the file do not evaluate it again
+			scheduler.runPending();
+		}
+		finally
+		{
+			thread.interrupt();
+			thread.join(TIMEOUT);
+			System.setOut(console);
+		}
+		String log = messages.toString("UTF-8");
+		assertEquals(log, 1, count(log, "Evaluated " + existing.getPath() + " in"));
+		assertEquals(log, 1, count(log, "Evaluated " + dropped.getPath() + " in"));
+	}
+
+	/**
+	 * Checks that the report of the file has the results of the reference implementation.
+	 */
+	private void assertReport(OrdinalClassificationFormat gold, File original, File file) throws Exception
+	{
+		EvALLResult expected = DifferentialHarness.reference(gold, DifferentialHarness.parse(false, original));
+		HashMap<String, String> results = readReport(new File(file.getPath() + EvaluationDaemon.REPORT_SUFFIX));
+		assertTrue("No report for " + file, results!=null);
+		for(Map.Entry<String, Double> entry: expected.getResults().entrySet())
+		{
+			assertEquals(entry.getKey(), String.format("%.4f", entry.getValue()), results.get(entry.getKey()));
+		}
+	}
+
+	/**
+	 * Scheduler whose tasks are run when the test calls runPending, whatever their delay.
+	 */
+	private static class ManualScheduler extends ScheduledThreadPoolExecutor
+	{
+		private final List<Task> pending = new ArrayList<Task>();
+
+		ManualScheduler()
+		{
+			super(1);
+		}
+
+		public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+		{
+			Task task = new Task(command);
+			this.pending.add(task);
+			notifyAll();
+			return task;
+		}
+
+		/**
+		 * Waits until a task is scheduled (or the timeout expires).
+		 */
+		synchronized void awaitPending() throws InterruptedException
+		{
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while(this.pending.isEmpty() && System.currentTimeMillis()<deadline)
+			{
+				wait(deadline-System.currentTimeMillis());
+			}
+		}
+
+		/**
+		 * Runs the tasks scheduled so far, except the cancelled ones. Tasks scheduled by them wait for the next call.
+		 */
+		void runPending()
+		{
+			List<Task> tasks;
+			synchronized(this)
+			{
+				tasks = new ArrayList<Task>(this.pending);
+				this.pending.clear();
+			}
+			for(Task task: tasks)
+			{
+				task.run();
+			}
+		}
+	}
+
+	private static class Task extends FutureTask<Object> implements ScheduledFuture<Object>
+	{
+		Task(Runnable command)
+		{
+			super(command, null);
+		}
+
+		public long getDelay(TimeUnit unit)
+		{
+			return 0;
+		}
+
+		public int compareTo(Delayed other)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Executor that runs each evaluation in the thread that submits it.
+	 */
+	private static class CurrentThreadExecutor extends AbstractExecutorService
+	{
+		private volatile boolean shutdown = false;
+
+		public void execute(Runnable command)
+		{
+			command.run();
+		}
+
+		public void shutdown()
+		{
+			this.shutdown = true;
+		}
+
+		public List<Runnable> shutdownNow()
+		{
+			this.shutdown = true;
+			return new ArrayList<Runnable>();
+		}
+
+		public boolean isShutdown()
+		{
+			return this.shutdown;
+		}
+
+		public boolean isTerminated()
+		{
+			return this.shutdown;
+		}
+
+		public boolean awaitTermination(long timeout, TimeUnit unit)
+		{
+			return this.shutdown;
+		}
+	}
+
+	/**
+	 * Method that reads the result of each test case of a report, or returns null if the report is not complete yet.
+	 */
+	private static HashMap<String, String> readReport(File report) throws IOException
+	{
+		if(!report.exists())
+		{
+			return null;
+		}
+		HashMap<String, String> results = new HashMap<String, String>();
+		boolean title = true;
+		for(String line: Files.readAllLines(report.toPath(), StandardCharsets.UTF_8))
+		{
+			if(line.startsWith("#") || line.isEmpty())
+			{
+				continue;
+			}
+			String[] columns = line.replace("\"", "").split("\t");
+			if(columns.length!=2)
+			{
+				return null;
+			}
+			if(!title)
+			{
+				results.put(columns[0], columns[1]);
+			}
+			title = false;
+		}
+		return results;
+	}
+
+	private static int count(String text, String pattern)
+	{
+		int count = 0;
+		for(int i=text.indexOf(pattern);i!=-1;i=text.indexOf(pattern, i+1))
+		{
+			count++;
+		}
+		return count;
+	}
+}
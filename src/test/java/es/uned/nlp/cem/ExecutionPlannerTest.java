@@ -0,0 +1,115 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the strategy chosen by the ExecutionPlanner at the limits of the memory budget (only 75% of the budget is used), also without
+ * STREAMING, the buckets and
+ * threads of the OUT_OF_CORE strategy, and the estimates of the files from their first 20000 lines.
+ */
+public class ExecutionPlannerTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void strategyForTheBudget() throws IOException
+	{
+		String gold = write("GOLD.tsv", 20, 100, true);
+		String output = write("SYS.tsv", 20, 100, true);
+		ExecutionPlanner.Plan estimates = new ExecutionPlanner(Long.MAX_VALUE, 4).plan(gold, output);
+		long inMemory = estimates.getInMemory();
+		long streaming = estimates.getStreaming();
+		assertTrue(streaming<inMemory);
+
+		assertEquals(ExecutionPlanner.Strategy.IN_MEMORY, new ExecutionPlanner(fits(inMemory), 4).plan(gold, output).getStrategy());
+		assertEquals(ExecutionPlanner.Strategy.STREAMING, new ExecutionPlanner(doesNotFit(inMemory), 4).plan(gold, output).getStrategy());
+		assertEquals(ExecutionPlanner.Strategy.STREAMING, new ExecutionPlanner(fits(streaming), 4).plan(gold, output).getStrategy());
+		ExecutionPlanner withoutStreaming = new ExecutionPlanner(fits(streaming), 4);
+		withoutStreaming.setStreaming(false);
+		assertEquals(ExecutionPlanner.Strategy.OUT_OF_CORE, withoutStreaming.plan(gold, output).getStrategy());
+		ExecutionPlanner.Plan plan = new ExecutionPlanner(doesNotFit(streaming), 4).plan(gold, output);
+		assertEquals(ExecutionPlanner.Strategy.OUT_OF_CORE, plan.getStrategy());
+		assertTrue(plan.getThreads()>=1 && plan.getThreads()<=4);
+		assertTrue(plan.getThreads()<=plan.getBuckets() && plan.getBuckets()<=20);
+
+		//With a tiny budget there is a bucket per test case at most
+		plan = new ExecutionPlanner(1024, 4).plan(gold, output);
+		assertEquals(ExecutionPlanner.Strategy.OUT_OF_CORE, plan.getStrategy());
+		assertEquals(20, plan.getBuckets());
+
+		String summary = plan.getSummary();
+		assertTrue(summary, summary.startsWith("Execution plan: OUT_OF_CORE (20 buckets, "));
+		assertFalse(summary.contains("\n"));
+		assertTrue(plan.toString().startsWith(summary + "\n"));
+	}
+
+	@Test
+	public void completeFile() throws IOException
+	{
+		ExecutionPlanner.FileScan scan = ExecutionPlanner.scan(write("GOLD.tsv", 30, 100, true));
+		assertTrue(scan.isComplete());
+		assertEquals(3000, scan.getLines());
+		assertEquals(30, scan.getTopics());
+		assertEquals(3, scan.getClasses());
+		assertTrue(scan.isContiguous());
+	}
+
+	@Test
+	public void firstLinesOfLargeFiles() throws IOException
+	{
+		//Only the first 20000 lines are scanned: 40 of the 100 test cases of 500 items, which keep appearing
+		ExecutionPlanner.FileScan contiguous = ExecutionPlanner.scan(write("contiguous.tsv", 100, 500, true));
+		assertFalse(contiguous.isComplete());
+		assertEquals(50000, contiguous.getLines(), 1000);
+		assertEquals(100, contiguous.getTopics(), 5);
+
+		//Every test case appears in the first half of the scanned lines, so no more test cases are expected
+		ExecutionPlanner.FileScan interleaved = ExecutionPlanner.scan(write("interleaved.tsv", 100, 500, false));
+		assertFalse(interleaved.isComplete());
+		assertFalse(interleaved.isContiguous());
+		assertEquals(50000, interleaved.getLines(), 1000);
+		assertEquals(100, interleaved.getTopics());
+	}
+
+	/**
+	 * Budget whose usable part (75%) is at least the given memory, and budget whose usable part is lower.
+	 */
+	private static long fits(long memory)
+	{
+		return 4*((memory + 2)/3);
+	}
+
+	private static long doesNotFit(long memory)
+	{
+		return 4*((memory - 1)/3);
+	}
+
+	/**
+	 * File with the items of each test case together (contiguous) or one item of each test case in turn.
+	 */
+	private String write(String name, int topics, int items, boolean contiguous) throws IOException
+	{
+		StringBuilder lines = new StringBuilder();
+		for(int n=0;n<topics*items;n++)
+		{
+			int t = contiguous ? n/items : n%topics;
+			int i = contiguous ? n%items : n/topics;
+			lines.append("topic").append(t).append("\titem").append(i).append("\t").append(i%3).append("\n");
+		}
+		File file = new File(this.folder.getRoot(), name);
+		Files.write(file.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+		return file.getPath();
+	}
+}
@@ -0,0 +1,98 @@
+package es.uned.nlp.cem;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Evaluates variations of the system output of the test resources from several threads that share a single GoldIndex, each with its own
+ * PredictionEvaluator, and compares the results with the reference implementation.
+ */
+public class GoldIndexConcurrencyTest
+{
+	private static final int OUTPUTS = 12;
+	private static final int THREADS = 8;
+	private static final int ROUNDS = 3;
+	private static final String[] CLASSES = {"-1", "0", "1", "2", "1.0"};
+
+	@Test
+	public void sharedIndex() throws Exception
+	{
+		OrdinalClassificationFormat gold = DifferentialHarness.parse(true, resource("GOLD.tsv"));
+		OrdinalClassificationFormat system = DifferentialHarness.parse(false, resource("SYS.tsv"));
+		Random random = new Random(20200705L);
+		final List<OrdinalClassificationFormat> outputs = new ArrayList<OrdinalClassificationFormat>();
+		final List<EvALLResult> expected = new ArrayList<EvALLResult>();
+		for(int i=0;i<OUTPUTS;i++)
+		{
+			OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+			output.setGold(false);
+			double changed = (double) i/OUTPUTS;
+			for (Map.Entry<String, HashMap<String, String>> topic : system.getTableOfTopics().entrySet())
+			{
+				for (Map.Entry<String, String> item : topic.getValue().entrySet())
+				{
+					String value = random.nextDouble()<changed ? CLASSES[random.nextInt(CLASSES.length)] : item.getValue();
+					output.addRecord(topic.getKey(), item.getKey(), value, 0);
+				}
+			}
+			outputs.add(output);
+			expected.add(DifferentialHarness.reference(gold, output));
+		}
+
+		final GoldIndex index = new GoldIndex(gold);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try
+		{
+			List<Future<EvALLResult[]>> futures = new ArrayList<Future<EvALLResult[]>>();
+			for(int thread=0;thread<THREADS;thread++)
+			{
+				final int offset = thread;
+				futures.add(pool.submit(new Callable<EvALLResult[]>()
+				{
+					public EvALLResult[] call()
+					{
+						PredictionEvaluator evaluator = new PredictionEvaluator(index);
+						EvALLResult[] results = new EvALLResult[OUTPUTS];
+						for(int round=0;round<ROUNDS;round++)
+						{
+							//Each thread visits the outputs in a different order
+							for(int i=0;i<OUTPUTS;i++)
+							{
+								int output = (i + offset) % OUTPUTS;
+								results[output] = evaluator.evaluate(outputs.get(output)).toEvALLResult();
+							}
+						}
+						return results;
+					}
+				}));
+			}
+			for(Future<EvALLResult[]> future: futures)
+			{
+				EvALLResult[] results = future.get();
+				for(int i=0;i<OUTPUTS;i++)
+				{
+					DifferentialHarness.assertSameResults("output " + i, expected.get(i), results[i]);
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	private File resource(String name)
+	{
+		return new File(getClass().getClassLoader().getResource(name).getFile());
+	}
+}
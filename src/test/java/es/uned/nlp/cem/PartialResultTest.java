@@ -0,0 +1,196 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the partial results of the shards, written and read again in any order, merge into the result and the order of test cases of a
+ * single process, that partial results of different evaluations are not merged, that damaged or unsupported files are rejected, and that a file
+ * parsed with a shard only keeps its test cases.
+ */
+public class PartialResultTest
+{
+	private static final String[] CLASSES = {"-1", "0", "1"};
+	private static final int NUM_SHARDS = 3;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+
+	@Test
+	public void shardsMergeAsSingleProcess() throws IOException
+	{
+		OrdinalClassificationFormat gold = format(true);
+		OrdinalClassificationFormat output = format(false);
+		List<PartialResult> partials = new ArrayList<PartialResult>();
+		for(int shard=0;shard<NUM_SHARDS;shard++)
+		{
+			File file = folder.newFile("PARTIAL_" + shard + ".cemp");
+			PartialResult.evaluate(gold, output, shard, NUM_SHARDS).write(file);
+			partials.add(PartialResult.read(file));
+		}
+		Collections.reverse(partials);
+		PartialResult merged = PartialResult.merge(partials);
+		assertNotNull(merged);
+		DifferentialHarness.assertSameResults("merged", DifferentialHarness.reference(gold, output), merged.toEvALLResult());
+		assertEquals(new ArrayList<String>(gold.getTopicsOfFile()), new ArrayList<String>(merged.getTopics().keySet()));
+		List<String> outputTopics = new ArrayList<String>();
+		for(String topic: output.getTopicsOfFile())
+		{
+			if(!gold.getTopicsOfFile().contains(topic))
+			{
+				outputTopics.add(topic);
+			}
+		}
+		assertEquals(outputTopics, merged.getOutputTopics());
+	}
+
+	@Test
+	public void partialResultsThatCannotBeMerged() throws IOException
+	{
+		OrdinalClassificationFormat gold = format(true);
+		OrdinalClassificationFormat output = format(false);
+		PartialResult first = PartialResult.evaluate(gold, output, 0, NUM_SHARDS);
+		PartialResult second = PartialResult.evaluate(gold, output, 1, NUM_SHARDS);
+		PartialResult third = PartialResult.evaluate(gold, output, 2, NUM_SHARDS);
+
+		PrintStream console = capture();
+		try
+		{
+			assertNull(PartialResult.merge(Arrays.asList(first, PartialResult.evaluate(gold, output, 1, NUM_SHARDS+1))));
+			assertTrue(messages.toString("UTF-8").contains("different number of shards"));
+			assertNull(PartialResult.merge(Arrays.asList(first, second, PartialResult.evaluate(gold, output, 1, NUM_SHARDS))));
+			assertTrue(messages.toString("UTF-8").contains("the shard 1 is repeated"));
+			assertNull(PartialResult.merge(new ArrayList<PartialResult>()));
+
+			//A missing shard is a warning, and its test cases are not in the result
+			PartialResult merged = PartialResult.merge(Arrays.asList(first, third));
+			assertTrue(messages.toString("UTF-8").contains("the shard 1 of 3 is missing"));
+			for(String topic: gold.getTopicsOfFile())
+			{
+				assertEquals(topic, PartialResult.getShard(topic, NUM_SHARDS)!=1, merged.getTopics().containsKey(topic));
+			}
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+
+	@Test
+	public void filesThatAreNotPartialResults() throws IOException
+	{
+		File written = folder.newFile("PARTIAL_0.cemp");
+		PartialResult.evaluate(format(true), format(false), 0, NUM_SHARDS).write(written);
+		byte[] content = Files.readAllBytes(written.toPath());
+
+		File other = folder.newFile("other.cemp");
+		Files.write(other.toPath(), "T0\t1\t0\n".getBytes(StandardCharsets.UTF_8));
+		File version = folder.newFile("version.cemp");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(version));
+		out.writeInt(0x43454D50);
+		out.writeInt(1);
+		out.close();
+		File truncated = folder.newFile("truncated.cemp");
+		Files.write(truncated.toPath(), Arrays.copyOf(content, content.length/2));
+
+		PrintStream console = capture();
+		try
+		{
+			assertNull(PartialResult.read(other));
+			assertTrue(messages.toString("UTF-8").contains("is not a partial result"));
+			assertNull(PartialResult.read(version));
+			assertTrue(messages.toString("UTF-8").contains("the version 1 of the partial result is not supported"));
+			assertNull(PartialResult.read(truncated));
+			assertTrue(messages.toString("UTF-8").contains("partial result not well formed"));
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+
+	@Test
+	public void parsingOneShard() throws IOException
+	{
+		StringBuilder lines = new StringBuilder();
+		for(String topic: format(true).getTopicsOfFile())
+		{
+			lines.append(topic).append("\ti0\t0\n");
+		}
+		File file = folder.newFile("GOLD.tsv");
+		Files.write(file.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+		OrdinalClassificationFormat all = DifferentialHarness.parse(true, file);
+		for(int shard=0;shard<NUM_SHARDS;shard++)
+		{
+			OrdinalClassificationFormat format = new OrdinalClassificationFormat();
+			format.setShard(shard, NUM_SHARDS);
+			PrintStream console = capture();
+			try
+			{
+				format.parseFile(true, file.getPath());
+			}
+			finally
+			{
+				System.setOut(console);
+			}
+			assertFalse(format.isStop());
+			assertEquals(all.getTopicsOfFile(), format.getTopicsOfFile());
+			for(String topic: all.getTopicsOfFile())
+			{
+				assertEquals(topic, PartialResult.getShard(topic, NUM_SHARDS)==shard, format.getTableOfTopics().containsKey(topic));
+			}
+		}
+	}
+
+	private PrintStream capture() throws IOException
+	{
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(this.messages, true, "UTF-8"));
+		return console;
+	}
+
+	/**
+	 * Twelve test cases; the output also has two test cases that are not in the gold and a class that is not in the gold.
+	 */
+	private static OrdinalClassificationFormat format(boolean isGold)
+	{
+		OrdinalClassificationFormat format = new OrdinalClassificationFormat();
+		format.setGold(isGold);
+		for(int t=0;t<12;t++)
+		{
+			for(int i=0;i<20;i++)
+			{
+				String value = isGold ? CLASSES[(i*i+t)%CLASSES.length] : (i==t ? "2" : CLASSES[(i+t/2)%CLASSES.length]);
+				format.addRecord("topic" + t, "i" + i, value, i);
+			}
+		}
+		if(!isGold)
+		{
+			format.addRecord("extra0", "i0", "0", 0);
+			format.addRecord("extra1", "i0", "1", 0);
+		}
+		return format;
+	}
+}
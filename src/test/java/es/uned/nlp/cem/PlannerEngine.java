@@ -0,0 +1,50 @@
+package es.uned.nlp.cem;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Evaluates the files of the pair with the STREAMING or the OUT_OF_CORE strategy of the ExecutionPlanner (3 buckets, 2 threads), without
+ * writing the warnings in the console. Pairs built in memory and gold standards with errors (which the command line does not evaluate) are
+ * evaluated with the reference implementation.
+ */
+public class PlannerEngine implements DifferentialHarness.Engine
+{
+	private ExecutionPlanner.Strategy strategy;
+
+	public PlannerEngine(ExecutionPlanner.Strategy strategy)
+	{
+		this.strategy = strategy;
+	}
+
+	public String getName()
+	{
+		return this.strategy.toString().toLowerCase();
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		if(gold.getPathFile()==null || output.getPathFile()==null || gold.isStop())
+		{
+			return DifferentialHarness.reference(gold, output);
+		}
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream()
+		{
+			public void write(int b) {}
+		}));
+		try
+		{
+			if(this.strategy==ExecutionPlanner.Strategy.STREAMING)
+			{
+				return ExecutionPlanner.evaluateStreaming(new GoldIndex(gold), output.getPathFile(), new ArrayList<String>());
+			}
+			return ExecutionPlanner.evaluateOutOfCore(gold.getPathFile(), output.getPathFile(), 3, 2, new ArrayList<String>(), new ArrayList<String>());
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+}
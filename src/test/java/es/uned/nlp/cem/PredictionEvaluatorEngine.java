@@ -0,0 +1,33 @@
+package es.uned.nlp.cem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates the system output with a GoldIndex and a PredictionEvaluator, giving the predictions as records (test case, id, value).
+ */
+public class PredictionEvaluatorEngine implements DifferentialHarness.Engine
+{
+	public String getName()
+	{
+		return "prediction evaluator";
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		List<String[]> records = new ArrayList<String[]>();
+		for(Map.Entry<String, HashMap<String, String>> entry: output.getTableOfTopics().entrySet())
+		{
+			for(Map.Entry<String, String> entry2: entry.getValue().entrySet())
+			{
+				records.add(new String[]{entry.getKey(), entry2.getKey(), entry2.getValue()});
+			}
+		}
+		PredictionEvaluator evaluator = new PredictionEvaluator(new GoldIndex(gold));
+		//The evaluator is reused, so a first evaluation must not change the second one
+		evaluator.evaluate(output);
+		return evaluator.evaluate(records.iterator()).toEvALLResult();
+	}
+}
@@ -0,0 +1,111 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks the ways of giving the predictions to the PredictionEvaluator against the reference implementation, the predictions that are ignored,
+ * and that an evaluator can be reused without the previous predictions changing the result.
+ */
+public class PredictionEvaluatorTest
+{
+	private static final String[] CLASSES = {"1", "2", "3"};
+
+	@Test
+	public void arrayOfPredictions()
+	{
+		OrdinalClassificationFormat gold = gold();
+		OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+		output.setGold(false);
+		GoldIndex index = new GoldIndex(gold);
+		double[] predictions = new double[index.getNumItems()];
+		for(int t=0;t<2;t++)
+		{
+			for(int i=0;i<30;i++)
+			{
+				int item = index.getItem(index.getTopic("T" + t), "i" + i);
+				//Every fifth item is not predicted
+				predictions[item] = i%5==4 ? Double.NaN : Double.parseDouble(CLASSES[(i*(t+2))%CLASSES.length]);
+				if(i%5!=4)
+				{
+					output.addRecord("T" + t, "i" + i, CLASSES[(i*(t+2))%CLASSES.length], i);
+				}
+			}
+		}
+		PredictionEvaluator evaluator = new PredictionEvaluator(index);
+		DifferentialHarness.assertSameResults("array", DifferentialHarness.reference(gold, output), evaluator.evaluate(predictions).toEvALLResult());
+		assertEquals(0, evaluator.getIgnored());
+	}
+
+	@Test
+	public void ignoredRecords()
+	{
+		OrdinalClassificationFormat gold = gold();
+		List<String[]> records = new ArrayList<String[]>();
+		records.add(new String[]{"T0", "i0", "2"});
+		records.add(new String[]{"T1", "i1", "3"});
+		records.add(new String[]{"T9", "i0", "2"});
+		records.add(new String[]{"T0", "unknown", "2"});
+		records.add(new String[]{"T0", "i0", "1"});
+		records.add(new String[]{"T0", "i2", "high"});
+		records.add(new String[]{"T0", "i3"});
+		OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+		output.setGold(false);
+		output.addRecord("T0", "i0", "2", 1);
+		output.addRecord("T1", "i1", "3", 2);
+
+		PredictionEvaluator evaluator = new PredictionEvaluator(new GoldIndex(gold));
+		EvALLResult result = evaluator.evaluate(records.iterator()).toEvALLResult();
+		assertEquals(5, evaluator.getIgnored());
+		DifferentialHarness.assertSameResults("records", DifferentialHarness.reference(gold, output), result);
+	}
+
+	@Test
+	public void reusedEvaluator()
+	{
+		OrdinalClassificationFormat gold = gold();
+		GoldIndex index = new GoldIndex(gold);
+		double[] good = new double[index.getNumItems()];
+		double[] bad = new double[index.getNumItems()];
+		for(int item=0;item<index.getNumItems();item++)
+		{
+			good[item] = index.getClassValue(0, 0);
+			bad[item] = 3.0d;
+		}
+		PredictionEvaluator evaluator = new PredictionEvaluator(index);
+		double first = evaluator.evaluate(good).getAggregatedResult();
+		PredictionScores scores = evaluator.evaluate(bad);
+		assertSame(scores, evaluator.evaluate(good));
+		assertEquals(first, scores.getAggregatedResult(), 0.0d);
+
+		evaluator.add(0, 3.0d);
+		evaluator.reset();
+		assertEquals(0.0d, evaluator.scores().getAggregatedResult(), 0.0d);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void wrongNumberOfPredictions()
+	{
+		GoldIndex index = new GoldIndex(gold());
+		new PredictionEvaluator(index).evaluate(new double[index.getNumItems()-1]);
+	}
+
+	private static OrdinalClassificationFormat gold()
+	{
+		OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+		gold.setGold(true);
+		for(int t=0;t<2;t++)
+		{
+			for(int i=0;i<30;i++)
+			{
+				gold.addRecord("T" + t, "i" + i, CLASSES[(i*i+t)%CLASSES.length], i);
+			}
+		}
+		return gold;
+	}
+}
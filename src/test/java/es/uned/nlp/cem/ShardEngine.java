@@ -0,0 +1,100 @@
+package es.uned.nlp.cem;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates the system output in three shards, writes and reads each partial result in a new directory, and returns the merged result. The
+ * files of the pair are parsed again for each shard with only its test cases, as in the command line; pairs built in memory and gold standards
+ * with errors are evaluated with all the test cases parsed. The confusion matrices, including the items classified as classes not in the gold,
+ * must be the same after reading the partial result.
+ */
+public class ShardEngine implements DifferentialHarness.Engine
+{
+	private static final int NUM_SHARDS = 3;
+
+	public String getName()
+	{
+		return "shards";
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		boolean fromFiles = gold.getPathFile()!=null && output.getPathFile()!=null && !gold.isStop();
+		try
+		{
+			File directory = Files.createTempDirectory("shards").toFile();
+			List<PartialResult> partials = new ArrayList<PartialResult>();
+			for(int shard=NUM_SHARDS-1;shard>=0;shard--)
+			{
+				File file = new File(directory, "PARTIAL_" + shard + ".cemp");
+				PartialResult partial = fromFiles ? PartialResult.evaluate(parse(true, gold.getPathFile(), shard), parse(false, output.getPathFile(), shard),
+						shard, NUM_SHARDS) : PartialResult.evaluate(gold, output, shard, NUM_SHARDS);
+				partial.write(file);
+				PartialResult read = PartialResult.read(file);
+				assertSameTopics(partial, read);
+				partials.add(read);
+				file.delete();
+			}
+			directory.delete();
+			return PartialResult.merge(partials).toEvALLResult();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static OrdinalClassificationFormat parse(boolean isGold, String pathFile, int shard)
+	{
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream()
+		{
+			public void write(int b) {}
+		}));
+		try
+		{
+			OrdinalClassificationFormat format = new OrdinalClassificationFormat();
+			format.setShard(shard, NUM_SHARDS);
+			format.parseFile(isGold, pathFile);
+			for(String topic: format.getTableOfTopics().keySet())
+			{
+				if(PartialResult.getShard(topic, NUM_SHARDS)!=shard)
+				{
+					throw new IllegalStateException("The test case " + topic + " is not in the shard " + shard);
+				}
+			}
+			return format;
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+
+	private static void assertSameTopics(PartialResult written, PartialResult read)
+	{
+		for(Map.Entry<String, PartialResult.Topic> entry: written.getTopics().entrySet())
+		{
+			PartialResult.Topic expected = entry.getValue();
+			PartialResult.Topic topic = read.getTopics().get(entry.getKey());
+			boolean same = topic!=null && Arrays.deepEquals(expected.getConfusionMatrix(), topic.getConfusionMatrix())
+					&& expected.getJointCountsNotInGold().keySet().equals(topic.getJointCountsNotInGold().keySet());
+			for(String outputClass: expected.getJointCountsNotInGold().keySet())
+			{
+				same&= topic!=null && Arrays.equals(expected.getJointCountsNotInGold().get(outputClass), topic.getJointCountsNotInGold().get(outputClass));
+			}
+			if(!same)
+			{
+				throw new IllegalStateException("The confusion matrix of " + entry.getKey() + " is not the same after reading the partial result");
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package es.uned.nlp.cem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates the system output as soft predictions: each value of the output is a distribution with probability 1 for its class, over the
+ * classes present in the output.
+ */
+public class SoftPredictionEngine implements DifferentialHarness.Engine
+{
+	public String getName()
+	{
+		return "soft";
+	}
+
+	public EvALLResult evaluate(OrdinalClassificationFormat gold, OrdinalClassificationFormat output)
+	{
+		GoldIndex index = new GoldIndex(gold);
+		HashMap<String, Integer> classes = new HashMap<String, Integer>();
+		List<String> names = new ArrayList<String>();
+		List<Integer> items = new ArrayList<Integer>();
+		List<Integer> predictions = new ArrayList<Integer>();
+		for (Map.Entry<String, HashMap<String, String>> topic : output.getTableOfTopics().entrySet())
+		{
+			int t = index.getTopic(topic.getKey());
+			if(t==-1)
+			{
+				continue;
+			}
+			for (Map.Entry<String, String> item : topic.getValue().entrySet())
+			{
+				Integer j = classes.get(item.getValue());
+				if(j==null)
+				{
+					j = names.size();
+					classes.put(item.getValue(), j);
+					names.add(item.getValue());
+				}
+				items.add(index.getItem(t, item.getKey()));
+				predictions.add(j);
+			}
+		}
+
+		int k = Math.max(1, names.size());
+		int[] itemArray = new int[items.size()];
+		double[] probabilities = new double[items.size()*k];
+		for(int i=0;i<itemArray.length;i++)
+		{
+			itemArray[i] = items.get(i);
+			probabilities[i*k + predictions.get(i)] = 1.0d;
+		}
+		if(names.isEmpty())
+		{
+			names.add("0");
+		}
+		SoftPredictionEvaluator evaluator = new SoftPredictionEvaluator(index, names.toArray(new String[names.size()]));
+		return evaluator.evaluate(itemArray, probabilities).toEvALLResult();
+	}
+}
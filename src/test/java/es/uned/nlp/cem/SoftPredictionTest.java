@@ -0,0 +1,246 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the expected CEM-Ord is linear in the distributions (a mixture of two hard outputs obtains the mixture of their numerators),
+ * that a file of soft predictions obtains the same result as the distributions given in memory, and that the distributions that do not add up
+ * to 1 (within the tolerance), given in memory or in the rows of a file, are only accepted when they are normalized.
+ */
+public class SoftPredictionTest
+{
+	private static final String[] CLASSES = {"-1", "0", "1"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void mixtureOfHardOutputs()
+	{
+		GoldIndex gold = new GoldIndex(DifferentialHarness.parse(true, resource("GOLD.tsv")));
+		Random random = new Random(20200705L);
+		int n = gold.getNumItems();
+		int k = CLASSES.length;
+		double p = 0.3d;
+		double[] first = new double[n];
+		double[] second = new double[n];
+		double[] mixture = new double[n*k];
+		for(int item=0;item<n;item++)
+		{
+			int a = random.nextInt(k);
+			int b = random.nextInt(k);
+			first[item] = Double.parseDouble(CLASSES[a]);
+			second[item] = Double.parseDouble(CLASSES[b]);
+			mixture[item*k + a]+= p;
+			mixture[item*k + b]+= 1.0d - p;
+		}
+
+		PredictionEvaluator hard = new PredictionEvaluator(gold);
+		double[] expected = new double[gold.getNumTopics()];
+		PredictionScores scores = hard.evaluate(first);
+		for(int t=0;t<gold.getNumTopics();t++)
+		{
+			expected[t] = p*scores.getNumerator(t);
+		}
+		scores = hard.evaluate(second);
+		for(int t=0;t<gold.getNumTopics();t++)
+		{
+			expected[t]+= (1.0d - p)*scores.getNumerator(t);
+		}
+		scores = new SoftPredictionEvaluator(gold, CLASSES).evaluate(mixture);
+		for(int t=0;t<gold.getNumTopics();t++)
+		{
+			assertEquals(gold.getTopic(t), expected[t], scores.getNumerator(t), 1e-6);
+		}
+	}
+
+	@Test
+	public void fileOfSoftPredictions() throws IOException
+	{
+		GoldIndex gold = new GoldIndex(DifferentialHarness.parse(true, resource("GOLD.tsv")));
+		Random random = new Random(7L);
+		int k = CLASSES.length;
+		double[] probabilities = new double[gold.getNumItems()*k];
+		List<String> lines = new ArrayList<String>();
+		for(int item=gold.getNumItems()-1;item>=0;item--)
+		{
+			StringBuilder line = new StringBuilder(gold.getTopic(topicOf(gold, item)) + "\t" + gold.getId(item));
+			double sum = 0.0d;
+			for(int j=0;j<k;j++)
+			{
+				probabilities[item*k + j] = random.nextInt(100);
+				sum+= probabilities[item*k + j];
+				line.append("\t").append((int) probabilities[item*k + j]);
+			}
+			if(sum==0.0d)
+			{
+				probabilities[item*k] = 1.0d;
+				line = new StringBuilder(gold.getTopic(topicOf(gold, item)) + "\t" + gold.getId(item) + "\t1\t0\t0");
+			}
+			lines.add(line.toString());
+		}
+		//Rows that are not valid are discarded
+		lines.add(gold.getTopic(0) + "\t" + gold.getId(0) + "\t0\t1\t0");
+		lines.add(gold.getTopic(0) + "\tunknown\t0\t-1\t0");
+		lines.add(gold.getTopic(0) + "\tunknown\t0\t1");
+		lines.add(gold.getTopic(0) + "\tunknown\t0\tx\t0");
+		lines.add("unknown\tunknown\t0\t1\t0");
+		File file = folder.newFile("SOFT.tsv");
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream()
+		{
+			public void write(int b) {}
+		}));
+		try
+		{
+			SoftPredictionEvaluator evaluator = new SoftPredictionEvaluator(gold, CLASSES);
+			evaluator.setNormalize(true);
+			double[] expected = new double[gold.getNumTopics()];
+			PredictionScores scores = evaluator.evaluate(probabilities);
+			for(int t=0;t<gold.getNumTopics();t++)
+			{
+				expected[t] = scores.getResult(t);
+			}
+			List<String> outputTopics = new ArrayList<String>();
+			scores = evaluator.evaluate(file.getPath(), outputTopics);
+			for(int t=0;t<gold.getNumTopics();t++)
+			{
+				assertEquals(gold.getTopic(t), expected[t], scores.getResult(t), 1e-9);
+			}
+			assertEquals(Arrays.asList("unknown"), outputTopics);
+
+			assertNull(evaluator.evaluate(folder.newFile("EMPTY.tsv").getPath(), outputTopics));
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+
+	@Test
+	public void distributionsThatDoNotAddUpToOne()
+	{
+		GoldIndex gold = new GoldIndex(DifferentialHarness.parse(true, resource("GOLD.tsv")));
+		SoftPredictionEvaluator evaluator = new SoftPredictionEvaluator(gold, CLASSES);
+		double[] weights = {1.0d, 3.0d, 0.0d};
+		double[] distribution = {0.25d, 0.75d + SoftPredictionEvaluator.TOLERANCE/2, 0.0d};
+		double[] other = {0.25d, 0.75d + 2*SoftPredictionEvaluator.TOLERANCE, 0.0d};
+		evaluator.evaluate(new int[]{0, 1, 2}, concat(weights, distribution, other));
+		assertEquals(2, evaluator.getIgnored());
+
+		evaluator.setNormalize(true);
+		double normalized = evaluator.evaluate(new int[]{0}, weights).getNumerator(0);
+		assertEquals(0, evaluator.getIgnored());
+		assertEquals(normalized, evaluator.evaluate(new int[]{0}, new double[]{0.25d, 0.75d, 0.0d}).getNumerator(0), 1e-12);
+		evaluator.evaluate(new int[]{0, 1}, new double[]{0.0d, 0.0d, 0.0d, 1.0d, -1.0d, 1.0d});
+		assertEquals(2, evaluator.getIgnored());
+	}
+
+	@Test
+	public void rowsThatDoNotAddUpToOne() throws IOException
+	{
+		GoldIndex gold = new GoldIndex(DifferentialHarness.parse(true, resource("GOLD.tsv")));
+		String[] rows = {"0.25\t0.7500005\t0", "0.25\t0.750002\t0", "-0.5\t1.5\t0", "NaN\t1\t0", "0\t0\t0", "Infinity\t0\t0"};
+		List<String> lines = new ArrayList<String>();
+		for(int item=0;item<rows.length;item++)
+		{
+			lines.add(gold.getTopic(topicOf(gold, item)) + "\t" + gold.getId(item) + "\t" + rows[item]);
+		}
+		File file = folder.newFile("SOFT.tsv");
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+		SoftPredictionEvaluator evaluator = new SoftPredictionEvaluator(gold, CLASSES);
+		for(boolean normalize: new boolean[]{false, true})
+		{
+			evaluator.setNormalize(normalize);
+			//Only the first row is within the tolerance, and the second one is accepted when it is normalized
+			int accepted = normalize ? 2 : 1;
+			double[] expected = new double[gold.getNumTopics()];
+			PredictionScores scores = evaluator.evaluate(Arrays.copyOf(new int[]{0, 1}, accepted),
+					Arrays.copyOf(new double[]{0.25d, 0.7500005d, 0.0d, 0.25d, 0.750002d, 0.0d}, accepted*CLASSES.length));
+			for(int t=0;t<gold.getNumTopics();t++)
+			{
+				expected[t] = scores.getNumerator(t);
+			}
+
+			PrintStream console = System.out;
+			ByteArrayOutputStream messages = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(messages, true, "UTF-8"));
+			try
+			{
+				scores = evaluator.evaluate(file.getPath(), new ArrayList<String>());
+			}
+			finally
+			{
+				System.setOut(console);
+			}
+			for(int t=0;t<gold.getNumTopics();t++)
+			{
+				assertEquals(gold.getTopic(t), expected[t], scores.getNumerator(t), 1e-12);
+			}
+			String warning = "Format warning: the probabilities must be non negative and " + (normalize ? "not all zero" : "add up to 1") + ". Line ";
+			for(int line=1;line<=rows.length;line++)
+			{
+				assertEquals(messages.toString("UTF-8"), line>accepted, messages.toString("UTF-8").contains(warning + line + System.lineSeparator()));
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void classesThatAreNotNumbers()
+	{
+		new SoftPredictionEvaluator(new GoldIndex(DifferentialHarness.parse(true, resource("GOLD.tsv"))), new String[]{"low", "high"});
+	}
+
+	private static double[] concat(double[]... arrays)
+	{
+		List<Double> values = new ArrayList<Double>();
+		for(double[] array: arrays)
+		{
+			for(double value: array)
+			{
+				values.add(value);
+			}
+		}
+		double[] result = new double[values.size()];
+		for(int i=0;i<result.length;i++)
+		{
+			result[i] = values.get(i);
+		}
+		return result;
+	}
+
+	private static int topicOf(GoldIndex gold, int item)
+	{
+		int t = 0;
+		while(gold.getFirstItem(t+1)<=item)
+		{
+			t++;
+		}
+		return t;
+	}
+
+	private File resource(String name)
+	{
+		return new File(getClass().getClassLoader().getResource(name).getFile());
+	}
+}
@@ -0,0 +1,194 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks every combination of thresholds of the sweep against the reference implementation: the scores are written as classes with the
+ * thresholds of the combination, and that output is evaluated with CEMOrd. Some scores are equal to values of the grid, so the bounds of the
+ * intervals are also checked. The best combinations kept with a smaller top must be the first ones of the whole ranking, and the items with
+ * a NaN score must be left out.
+ */
+public class ThresholdSweepTest
+{
+	private static final String[][] SCALES = {{"-1", "0", "1"}, {"1", "2", "3", "4"}, {"0", "1"}, {"0.5", "1.5", "2.5", "3.5", "4.5"}};
+	private static final String GRID = "0:1:0.125";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void everyCombination() throws IOException
+	{
+		DifferentialHarness harness = new DifferentialHarness(folder.getRoot(), 1L);
+		Random random = new Random(20200705L);
+		double[] grid = ThresholdSweep.parseGrid(GRID);
+		for(int dataset=0;dataset<24;dataset++)
+		{
+			String[] labels = SCALES[dataset%SCALES.length];
+			StringBuilder gold = new StringBuilder();
+			StringBuilder scores = new StringBuilder();
+			int numTopics = 1 + random.nextInt(4);
+			for(int t=0;t<numTopics;t++)
+			{
+				int numItems = 1 + random.nextInt(60);
+				for(int i=0;i<numItems;i++)
+				{
+					gold.append("T").append(t).append('\t').append(i).append('\t').append(labels[random.nextInt(labels.length)]).append('\n');
+					if(random.nextInt(10)==0)
+					{
+						continue;
+					}
+					double score = random.nextInt(4)==0 ? grid[random.nextInt(grid.length)] : random.nextDouble()*1.2d - 0.1d;
+					scores.append("T").append(t).append('\t').append(i).append('\t').append(score).append('\n');
+				}
+			}
+			scores.append("T0\textra\t0.5\n");
+			File[] files = harness.generate("sweep" + dataset, gold.toString(), scores.toString());
+			OrdinalClassificationFormat goldFormat = DifferentialHarness.parse(true, files[0]);
+			OrdinalClassificationFormat scoresFormat = DifferentialHarness.parse(false, files[1]);
+			assertArrayEquals(labels, ThresholdSweep.getLabels(goldFormat));
+
+			ThresholdSweep sweep = new ThresholdSweep(new GoldIndex(goldFormat), scoresFormat, labels, grid);
+			long numCombinations = binomial(grid.length, labels.length-1);
+			sweep.setTop((int) numCombinations);
+			sweep.run();
+			assertEquals(numCombinations, sweep.getNumCandidates());
+			assertEquals(numCombinations, sweep.getNumBest());
+			HashSet<String> combinations = new HashSet<String>();
+			for(int rank=0;rank<sweep.getNumBest();rank++)
+			{
+				double[] thresholds = sweep.getThresholds(rank);
+				assertTrue(combinations.add(Arrays.toString(thresholds)));
+				OrdinalClassificationFormat output = classify(scoresFormat, labels, thresholds);
+				EvALLResult expected = DifferentialHarness.reference(goldFormat, output);
+				assertEquals("sweep" + dataset + " " + Arrays.toString(thresholds), expected.getAggregatedResult(),
+						sweep.getResult(rank), DifferentialHarness.TOLERANCE);
+				assertTrue(rank==0 || sweep.getResult(rank-1)>=sweep.getResult(rank));
+			}
+		}
+	}
+
+	@Test
+	public void bestCombinations() throws IOException
+	{
+		OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+		gold.setGold(true);
+		OrdinalClassificationFormat scores = new OrdinalClassificationFormat();
+		scores.setGold(false);
+		Random random = new Random(20200705L);
+		String[] labels = SCALES[1];
+		for(int i=0;i<200;i++)
+		{
+			int label = random.nextInt(labels.length);
+			gold.addRecord("T" + (i%3), "i" + i, labels[label], i);
+			scores.addRecord("T" + (i%3), "i" + i, String.valueOf(label*0.25d + random.nextGaussian()*0.1d), i);
+		}
+		double[] grid = ThresholdSweep.parseGrid(GRID);
+		ThresholdSweep all = new ThresholdSweep(new GoldIndex(gold), scores, labels, grid);
+		all.setTop(Integer.MAX_VALUE);
+		all.run();
+		ThresholdSweep best = new ThresholdSweep(new GoldIndex(gold), scores, labels, grid);
+		best.setTop(5);
+		best.run();
+		assertEquals(all.getNumCandidates(), best.getNumCandidates());
+		assertEquals(5, best.getNumBest());
+		for(int rank=0;rank<5;rank++)
+		{
+			assertArrayEquals(all.getThresholds(rank), best.getThresholds(rank), 0.0d);
+			assertEquals(all.getResult(rank), best.getResult(rank), 0.0d);
+		}
+	}
+
+	@Test
+	public void scoresThatAreNaN()
+	{
+		OrdinalClassificationFormat gold = new OrdinalClassificationFormat();
+		gold.setGold(true);
+		OrdinalClassificationFormat scores = new OrdinalClassificationFormat();
+		scores.setGold(false);
+		OrdinalClassificationFormat withoutNaN = new OrdinalClassificationFormat();
+		withoutNaN.setGold(false);
+		String[] labels = SCALES[0];
+		for(int i=0;i<30;i++)
+		{
+			gold.addRecord("T", "i" + i, labels[i%labels.length], i);
+			String score = i%7==0 ? "NaN" : String.valueOf((i%10)/10.0d);
+			scores.addRecord("T", "i" + i, score, i);
+			if(i%7!=0)
+			{
+				withoutNaN.addRecord("T", "i" + i, score, i);
+			}
+		}
+		double[] grid = ThresholdSweep.parseGrid(GRID);
+		ThresholdSweep sweep = new ThresholdSweep(new GoldIndex(gold), scores, labels, grid);
+		sweep.run();
+		assertEquals(5, sweep.getNumNaN());
+		ThresholdSweep expected = new ThresholdSweep(new GoldIndex(gold), withoutNaN, labels, grid);
+		expected.run();
+		assertEquals(0, expected.getNumNaN());
+		assertEquals(expected.getResult(0), sweep.getResult(0), 0.0d);
+		assertArrayEquals(expected.getThresholds(0), sweep.getThresholds(0), 0.0d);
+	}
+
+	@Test
+	public void gridsAndLabels()
+	{
+		assertArrayEquals(new double[]{0.2d, 0.4d}, ThresholdSweep.parseGrid("0.4,0.2,0.2,0.4"), 0.0d);
+		assertArrayEquals(new double[]{0.0d, 0.25d, 0.5d}, ThresholdSweep.parseGrid("0:0.5:0.25"), 0.0d);
+		assertEquals(null, ThresholdSweep.parseGrid("0.2,x"));
+		assertEquals(null, ThresholdSweep.parseGrid("0:1:0"));
+		assertEquals(null, ThresholdSweep.parseGrid("0.2,NaN"));
+		assertTrue(ThresholdSweep.isAscending(new String[]{"-1", "0", "1"}));
+		assertFalse(ThresholdSweep.isAscending(new String[]{"1", "0", "-1"}));
+		assertFalse(ThresholdSweep.isAscending(new String[]{"1", "1.0", "2"}));
+		assertFalse(ThresholdSweep.isAscending(new String[]{"1", "x"}));
+	}
+
+	/**
+	 * Method that classifies the scores with the thresholds: the label j if threshold j &lt;= score &lt; threshold j+1.
+	 */
+	private static OrdinalClassificationFormat classify(OrdinalClassificationFormat scores, String[] labels, double[] thresholds)
+	{
+		OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+		output.setGold(false);
+		for(Map.Entry<String, HashMap<String, String>> topic: scores.getTableOfTopics().entrySet())
+		{
+			for(Map.Entry<String, String> item: topic.getValue().entrySet())
+			{
+				double score = Double.parseDouble(item.getValue());
+				int j = 0;
+				while(j<thresholds.length && thresholds[j]<=score)
+				{
+					j++;
+				}
+				output.addRecord(topic.getKey(), item.getKey(), labels[j], 0);
+			}
+		}
+		return output;
+	}
+
+	private static long binomial(int n, int k)
+	{
+		long result = 1;
+		for(int i=1;i<=k;i++)
+		{
+			result = result*(n-k+i)/i;
+		}
+		return result;
+	}
+}
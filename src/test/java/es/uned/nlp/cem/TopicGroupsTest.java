@@ -0,0 +1,167 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the groups of each kind of level (prefix, regex and file) and their macro and micro averages against the results, numerators and
+ * denominators of the test cases given by the reference implementation for the test resources.
+ */
+public class TopicGroupsTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void levelsAndAverages() throws IOException
+	{
+		OrdinalClassificationFormat gold = DifferentialHarness.parse(true, resource("GOLD.tsv"));
+		OrdinalClassificationFormat output = DifferentialHarness.parse(false, resource("SYS.tsv"));
+		EvALLResult result = DifferentialHarness.reference(gold, output);
+
+		//Every other test case is in the file, in two groups
+		List<String> topics = new ArrayList<String>(result.getResults().keySet());
+		List<String> lines = new ArrayList<String>();
+		HashMap<String, String> mapping = new HashMap<String, String>();
+		for(int i=0;i<topics.size();i+=2)
+		{
+			String group = i%4==0 ? "even" : "odd";
+			lines.add(topics.get(i) + "\t" + group);
+			mapping.put(topics.get(i), group);
+		}
+		File file = folder.newFile("groups.tsv");
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+		TopicGroups groups = new TopicGroups();
+		groups.addLevel("prefix:9");
+		groups.addLevel("regex:D0(\\d)");
+		groups.addLevel("regex:E0[0-4]");
+		groups.addLevel("file:" + file.getPath());
+		groups.addLevel("prefix:100");
+		assertFalse(groups.isStop());
+		LinkedHashMap<String, TreeMap<String, TopicGroups.Rollup>> rollups = groups.rollup(result);
+		assertEquals(Arrays.asList(TopicGroups.ALL, "prefix:9", "regex:D0(\\d)", "regex:E0[0-4]", "file:" + file.getPath(), "prefix:100"),
+				new ArrayList<String>(rollups.keySet()));
+
+		HashMap<String, String> all = new HashMap<String, String>();
+		HashMap<String, String> prefix = new HashMap<String, String>();
+		HashMap<String, String> capture = new HashMap<String, String>();
+		HashMap<String, String> match = new HashMap<String, String>();
+		for(String topic: topics)
+		{
+			all.put(topic, TopicGroups.ALL);
+			prefix.put(topic, topic.substring(0, 9));
+			capture.put(topic, topic.substring(8, 9));
+			String id = topic.substring(topic.indexOf('E'), topic.indexOf('E')+3);
+			if(id.compareTo("E00")>=0 && id.compareTo("E04")<=0)
+			{
+				match.put(topic, id);
+			}
+		}
+		assertFalse(match.isEmpty());
+		assertRollups(result, all, rollups.get(TopicGroups.ALL));
+		assertRollups(result, prefix, rollups.get("prefix:9"));
+		assertRollups(result, capture, rollups.get("regex:D0(\\d)"));
+		assertRollups(result, match, rollups.get("regex:E0[0-4]"));
+		assertRollups(result, mapping, rollups.get("file:" + file.getPath()));
+		assertTrue(rollups.get("prefix:100").isEmpty());
+	}
+
+	@Test
+	public void duplicatedTestCaseInFile() throws IOException
+	{
+		File file = folder.newFile("groups.tsv");
+		Files.write(file.toPath(), Arrays.asList("A\tfirst", "B\tfirst", "A\tsecond"), StandardCharsets.UTF_8);
+		PrintStream console = System.out;
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(messages, true, "UTF-8"));
+		TopicGroups groups = new TopicGroups();
+		try
+		{
+			groups.addLevel("file:" + file.getPath());
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+		assertFalse(groups.isStop());
+		assertEquals("first", groups.getGroup(0, "A"));
+		assertTrue(messages.toString("UTF-8"), messages.toString("UTF-8").contains("Format warning") && messages.toString("UTF-8").contains("Line 3"));
+	}
+
+	@Test
+	public void invalidLevels()
+	{
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new ByteArrayOutputStream()));
+		try
+		{
+			for(String specification: new String[]{"prefix:x", "prefix:0", "prefix:-1", "regex:(", "file:" + new File(folder.getRoot(), "missing.tsv").getPath(), "suffix:2"})
+			{
+				TopicGroups groups = new TopicGroups();
+				groups.addLevel(specification);
+				assertTrue(specification, groups.isStop());
+			}
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+
+	/**
+	 * Checks the groups of a level against the expected group of each test case (test cases without group are not in the level).
+	 */
+	private static void assertRollups(EvALLResult result, HashMap<String, String> expected, TreeMap<String, TopicGroups.Rollup> rollups)
+	{
+		HashMap<String, double[]> sums = new HashMap<String, double[]>();
+		for(Map.Entry<String, String> entry: expected.entrySet())
+		{
+			double[] sum = sums.get(entry.getValue());
+			if(sum==null)
+			{
+				sum = new double[4];
+				sums.put(entry.getValue(), sum);
+			}
+			sum[0]++;
+			sum[1]+= result.getResults().get(entry.getKey());
+			sum[2]+= result.getNumerators().get(entry.getKey());
+			sum[3]+= result.getDenominators().get(entry.getKey());
+		}
+		assertEquals(sums.keySet(), rollups.keySet());
+		for(Map.Entry<String, double[]> entry: sums.entrySet())
+		{
+			TopicGroups.Rollup rollup = rollups.get(entry.getKey());
+			double[] sum = entry.getValue();
+			assertEquals(entry.getKey(), (int) sum[0], rollup.getNumTopics());
+			assertEquals(entry.getKey(), sum[1]/sum[0], rollup.getMacroAverage(), DifferentialHarness.TOLERANCE);
+			assertEquals(entry.getKey(), sum[2]/sum[3], rollup.getMicroAverage(), DifferentialHarness.TOLERANCE);
+			assertEquals(entry.getKey(), sum[2], rollup.getNumerator(), DifferentialHarness.TOLERANCE);
+			assertEquals(entry.getKey(), sum[3], rollup.getDenominator(), DifferentialHarness.TOLERANCE);
+		}
+	}
+
+	private File resource(String name)
+	{
+		return new File(getClass().getClassLoader().getResource(name).getFile());
+	}
+}
@@ -0,0 +1,209 @@
+package es.uned.nlp.cem;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a resubmission that changes one test case only evaluates that test case, that the entries are kept with their joint counts when
+ * the cache is opened again (also after a damaged write), and that the least recently used entries are discarded first.
+ */
+public class TopicResultCacheTest
+{
+	private static final String[] CLASSES = {"1", "2", "3"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void oneChangedTestCase() throws IOException
+	{
+		OrdinalClassificationFormat gold = format(true, -1, false);
+		TopicResultCache cache = new TopicResultCache(folder.newFolder("cache").getPath(), Long.MAX_VALUE);
+		Evaluate.evaluateWithCache(gold, format(false, -1, false), cache);
+		assertEquals(0, cache.getHits());
+		assertEquals(5, cache.getMisses());
+
+		//The same records in another order are the same test cases
+		Evaluate.evaluateWithCache(gold, format(false, -1, true), cache);
+		assertEquals(5, cache.getHits());
+
+		OrdinalClassificationFormat changed = format(false, 2, false);
+		CEMOrd CEMOrd = Evaluate.evaluateWithCache(gold, changed, cache);
+		assertEquals(9, cache.getHits());
+		assertEquals(6, cache.getMisses());
+		for(int t=0;t<5;t++)
+		{
+			assertEquals("T" + t, t==2, CEMOrd.getConfusionMatrix().getConfusionMatrix("T" + t)!=null);
+		}
+		DifferentialHarness.assertSameResults("changed", DifferentialHarness.reference(gold, changed), CEMOrd.getResult());
+		cache.close();
+	}
+
+	@Test
+	public void persistence() throws IOException
+	{
+		OrdinalClassificationFormat gold = format(true, -1, false);
+		//An item classified as a class that is not in the gold
+		OrdinalClassificationFormat output = new OrdinalClassificationFormat();
+		output.setGold(false);
+		for(Map.Entry<String, HashMap<String, String>> topic: format(false, 2, false).getTableOfTopics().entrySet())
+		{
+			for(Map.Entry<String, String> item: topic.getValue().entrySet())
+			{
+				output.addRecord(topic.getKey(), item.getKey(), topic.getKey().equals("T1") && item.getKey().equals("i0") ? "7" : item.getValue(), 0);
+			}
+		}
+		CEMOrd CEMOrd = new CEMOrd(gold, output);
+		CEMOrd.evaluate();
+		String path = folder.newFolder("cache").getPath();
+		TopicResultCache cache = new TopicResultCache(path, Long.MAX_VALUE);
+		for(int t=0;t<5;t++)
+		{
+			cache.put(TopicResultCache.key(gold, output, "T" + t), new TopicResultCache.Entry(CEMOrd, "T" + t));
+		}
+		cache.close();
+		//An entry that was being written when the process stopped
+		OutputStream log = new FileOutputStream(new File(path, "results.log"), true);
+		log.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 0, 0, 0, 100});
+		log.close();
+
+		for(int reopen=0;reopen<2;reopen++)
+		{
+			cache = new TopicResultCache(path, Long.MAX_VALUE);
+			assertEquals(5, cache.getNumEntries());
+			for(int t=0;t<5;t++)
+			{
+				String topic = "T" + t;
+				TopicResultCache.Entry entry = cache.get(TopicResultCache.key(gold, output, topic));
+				assertNotNull(topic, entry);
+				assertEquals(CEMOrd.getResult().getNumerators().get(topic), entry.getNumerator(), 0.0d);
+				assertEquals(CEMOrd.getResult().getDenominators().get(topic), entry.getDenominator(), 0.0d);
+				ConfusionMatrix matrix = CEMOrd.getConfusionMatrix();
+				assertArrayEquals(matrix.getConfusionMatrix(topic), entry.getConfusionMatrix());
+				for(int i=0;i<entry.getClasses().length;i++)
+				{
+					assertEquals(matrix.getClassName(topic, i), entry.getClasses()[i]);
+					assertEquals(matrix.getNumberInstancesPerClassInGold(topic, i), entry.getFrequencies()[i]);
+				}
+				assertEquals(matrix.getJointCountsNotInGold(topic).keySet(), entry.getJointCountsNotInGold().keySet());
+				for(String outputClass: entry.getJointCountsNotInGold().keySet())
+				{
+					assertArrayEquals(matrix.getJointCountsNotInGold(topic).get(outputClass), entry.getJointCountsNotInGold().get(outputClass));
+				}
+			}
+			assertEquals(5, cache.getHits());
+			assertEquals(0, cache.getMisses());
+			cache.close();
+		}
+	}
+
+	@Test
+	public void leastRecentlyUsedFirst() throws IOException
+	{
+		OrdinalClassificationFormat gold = format(true, -1, false);
+		CEMOrd CEMOrd = new CEMOrd(gold, format(false, -1, false));
+		CEMOrd.evaluate();
+		TopicResultCache.Entry entry = new TopicResultCache.Entry(CEMOrd, "T0");
+		String path = folder.newFolder("cache").getPath();
+
+		//Size of the log with one entry, to fit three entries and a half
+		TopicResultCache cache = new TopicResultCache(path, Long.MAX_VALUE);
+		long empty = cache.getSize();
+		cache.put(key(0), entry);
+		long record = cache.getSize() - empty;
+		cache.close();
+		new File(path, "results.log").delete();
+		new File(path, "results.idx").delete();
+		long maxSize = empty + 3*record + record/2;
+
+		cache = new TopicResultCache(path, maxSize);
+		cache.put(key(0), entry);
+		cache.put(key(1), entry);
+		cache.put(key(2), entry);
+		assertNotNull(cache.get(key(0)));
+		cache.put(key(3), entry);
+		assertTrue(cache.getSize()<=maxSize);
+		assertEquals(3, cache.getNumEntries());
+		assertNull(cache.get(key(1)));
+		cache.close();
+
+		//The order of use is kept when the cache is opened again: 2, 0, 3
+		cache = new TopicResultCache(path, maxSize);
+		cache.put(key(4), entry);
+		assertTrue(cache.getSize()<=maxSize);
+		assertNull(cache.get(key(2)));
+		for(int i: new int[]{0, 3, 4})
+		{
+			assertNotNull(String.valueOf(i), cache.get(key(i)));
+		}
+		cache.close();
+	}
+
+	@Test
+	public void usedByAnotherInstance() throws IOException
+	{
+		String path = folder.newFolder("cache").getPath();
+		TopicResultCache cache = new TopicResultCache(path, Long.MAX_VALUE);
+		PrintStream console = System.out;
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(messages, true, "UTF-8"));
+		TopicResultCache other;
+		try
+		{
+			other = new TopicResultCache(path, Long.MAX_VALUE);
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+		assertTrue(messages.toString("UTF-8"), messages.toString("UTF-8").contains("being used by another process"));
+		OrdinalClassificationFormat gold = format(true, -1, false);
+		CEMOrd CEMOrd = new CEMOrd(gold, format(false, -1, false));
+		CEMOrd.evaluate();
+		other.put(key(0), new TopicResultCache.Entry(CEMOrd, "T0"));
+		assertNull(other.get(key(0)));
+		assertEquals(1, other.getMisses());
+		other.close();
+		assertNull(cache.get(key(0)));
+		cache.close();
+	}
+
+	private static String key(int i)
+	{
+		return String.format("%032x", i);
+	}
+
+	/**
+	 * Five test cases of 40 items; the output changes the classes of the test case changed (-1 for none), and can be added in reverse order.
+	 */
+	private static OrdinalClassificationFormat format(boolean isGold, int changed, boolean reverse)
+	{
+		OrdinalClassificationFormat format = new OrdinalClassificationFormat();
+		format.setGold(isGold);
+		for(int n=0;n<200;n++)
+		{
+			int record = reverse ? 199-n : n;
+			int t = record/40;
+			int i = record%40;
+			int value = isGold ? (i*i + i/(t+1))%CLASSES.length : (i + (t==changed ? 1 : 0))%CLASSES.length;
+			format.addRecord("T" + t, "i" + i, CLASSES[value], n);
+		}
+		return format;
+	}
+}